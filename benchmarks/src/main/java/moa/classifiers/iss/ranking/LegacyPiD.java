@@ -0,0 +1,174 @@
+/*
+ *    LegacyPiD.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package moa.classifiers.iss.ranking;
+
+import java.util.Arrays;
+
+import moa.core.Utils;
+
+/**
+ * Insert and remove of PiD as it was before its counts were flattened, with an array per interval
+ * that is allocated on every split. Only kept as the baseline of PiDBenchmark.
+ */
+public class LegacyPiD
+{
+	private final int size;
+	private final double alpha;
+
+	private double min = Double.MAX_VALUE;
+	private double max = Double.MIN_VALUE;
+	private double[] breaks;
+	private double[][] counts;
+	private double tempBreak;
+	private double numObservations;
+	private int summarySize;
+	private int nbClasses;
+
+	public LegacyPiD(final int size, final double alpha)
+	{
+		this.size = size;
+		this.alpha = alpha;
+	}
+
+	public void remove(final double value, final int classValue, final double weight)
+	{
+		if (value > max)
+			max = value;
+		if (value < min)
+			min = value;
+
+		final int pos = findPosCounts(value);
+		counts[pos][classValue] -= weight;
+		numObservations -= weight;
+	}
+
+	public void insert(final double value, final int classValue, final double weight)
+	{
+		if (value > max)
+			max = value;
+		if (value < min)
+			min = value;
+
+		if (breaks == null)
+		{
+			breaks = new double[size];
+			counts = new double[size+1][classValue+1];
+			nbClasses = 1;
+		}
+
+		if (classValue >= nbClasses)
+		{
+			nbClasses = classValue + 1;
+			for (int i=0; i!= size; ++i)
+			{
+				final double newCount[] = new double[nbClasses];
+				System.arraycopy(counts[i], 0, newCount, 0, counts[i].length);
+				counts[i] = newCount;
+			}
+		}
+
+		final int pos = findPosCounts(value);
+		if (summarySize < size)
+		{
+			insertInterval(value, pos);
+			summarySize++;
+		}
+		counts[pos][classValue] += weight;
+
+		if (summarySize == size && Utils.sum(counts[pos])+1 >((numObservations + 2)* alpha)/size)
+		{
+			tempBreak = breaks[breaks.length-1];
+			split(pos);
+			mergeBestInterval();
+			breaks[breaks.length-1] = tempBreak;
+			counts[counts.length-1] = new double[nbClasses];
+		}
+		numObservations += weight;
+	}
+
+	private void split(final int pos)
+	{
+		double breaK;
+		if (pos == size-1)
+		{
+			breaks[size-1] = breaks[size-2] + (max-min)/size;
+			counts[size] = new double[nbClasses];
+			splitCounts(counts[size-1], counts[size]);
+		}
+		else
+		{
+			if (pos == 0)
+				breaK = breaks[0] - (max-min)/size;
+			else
+				breaK = breaks[pos-1] + (breaks[pos] - breaks[pos-1])/2;
+			insertInterval(breaK, pos);
+			splitCounts(counts[pos+1], counts[pos]);
+		}
+	}
+
+	private void insertInterval(final double breaK, final int pos)
+	{
+		System.arraycopy(breaks, pos, breaks, pos+1, breaks.length-pos-1);
+		breaks[pos] = breaK;
+		System.arraycopy(counts, pos, counts, pos+1, counts.length-pos-1);
+		counts[pos] = new double[nbClasses];
+	}
+
+	private void splitCounts(final double toSplit[], final double split1[])
+	{
+		for (int i=0; i!=nbClasses ; ++i)
+		{
+			split1[i] = toSplit[i] / 2;
+			toSplit[i] -= split1[i];
+		}
+	}
+
+	private int findPosCounts(final double value)
+	{
+		int pos = Arrays.binarySearch(breaks, 0, Math.min(summarySize, size-1), value);
+		if (pos < 0)
+			pos = -pos-1;
+		return pos;
+	}
+
+	private void mergeBestInterval()
+	{
+		double smallestCount = Double.MAX_VALUE;
+		int bestPosToMerge = 1;
+		double previousCount = Utils.sum(counts[0]);
+		double nextCount;
+		for (int i=1; i != counts.length; ++i)
+		{
+			nextCount = Utils.sum(counts[i]);
+			final double total = previousCount + nextCount;
+			if (total < smallestCount)
+			{
+				smallestCount = total;
+				bestPosToMerge = i;
+			}
+			previousCount = nextCount;
+		}
+		for (int k=0; k!=nbClasses; ++k)
+		{
+			counts[bestPosToMerge-1][k] += counts[bestPosToMerge][k];
+		}
+		System.arraycopy(counts, bestPosToMerge+1, counts, bestPosToMerge, counts.length-bestPosToMerge-1);
+		System.arraycopy(breaks, bestPosToMerge, breaks, bestPosToMerge-1, breaks.length-bestPosToMerge);
+	}
+}
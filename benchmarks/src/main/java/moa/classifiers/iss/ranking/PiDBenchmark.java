@@ -0,0 +1,110 @@
+/*
+ *    PiDBenchmark.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package moa.classifiers.iss.ranking;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of PiD insert and remove over a sliding window, as used by the IG and SU rankings,
+ * against the implementation with an array per interval.
+ * Every operation inserts the newest value and removes the one that leaves the window.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PiDBenchmark
+{
+	// values are reused cyclically, a multiple of the window size so removals match earlier insertions
+	private static final int NUM_VALUES = 1 << 16;
+
+	@Param({"10", "100", "1000"})
+	public int bins;
+
+	@Param({"1000"})
+	public int windowSize;
+
+	@Param({"3"})
+	public int numClasses;
+
+	private double[] values;
+	private int[] classes;
+	private int next;
+
+	private PiD piD;
+	private LegacyPiD legacyPiD;
+
+	@Setup
+	public void setup()
+	{
+		Random random = new Random(1);
+		values = new double[NUM_VALUES];
+		classes = new int[NUM_VALUES];
+		for (int i = 0; i < NUM_VALUES; i++)
+		{
+			classes[i] = random.nextInt(numClasses);
+			values[i] = random.nextGaussian() + classes[i];
+		}
+
+		piD = new PiD();
+		piD.sizeOption.setValue(bins);
+		legacyPiD = new LegacyPiD(bins, piD.alphaOption.getValue());
+		// fill the window
+		for (next = 0; next < windowSize; next++)
+		{
+			piD.insert(values[next], classes[next], 1);
+			legacyPiD.insert(values[next], classes[next], 1);
+		}
+	}
+
+	@Benchmark
+	public PiD flat()
+	{
+		int old = (next - windowSize) & (NUM_VALUES - 1);
+		piD.insert(values[next], classes[next], 1);
+		piD.remove(values[old], classes[old], 1);
+		next = (next + 1) & (NUM_VALUES - 1);
+		return piD;
+	}
+
+	@Benchmark
+	public LegacyPiD legacy()
+	{
+		int old = (next - windowSize) & (NUM_VALUES - 1);
+		legacyPiD.insert(values[next], classes[next], 1);
+		legacyPiD.remove(values[old], classes[old], 1);
+		next = (next + 1) & (NUM_VALUES - 1);
+		return legacyPiD;
+	}
+}
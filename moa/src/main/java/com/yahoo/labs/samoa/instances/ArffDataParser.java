@@ -0,0 +1,468 @@
+/*
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific
+ * language governing permissions and limitations under the
+ * License.
+ */
+package com.yahoo.labs.samoa.instances;
+
+import java.util.Arrays;
+
+/**
+ * The Class ArffDataParser. Parses the lines of the data section of an Arff
+ * file straight from a char buffer, with the syntax of the tokenizer of
+ * ArffLoader: values are separated by whitespace or commas, can be quoted
+ * with " or ', and % starts a comment. Values are parsed without building a
+ * String for them, except for numbers the fast path cannot parse exactly.
+ *
+ * A parser keeps buffers between lines, so each thread needs its own.
+ */
+public class ArffDataParser {
+
+    protected static final int END = -1;
+
+    protected static final int WORD = -2;
+
+    protected static final int QUOTE = -3;
+
+    /**
+     * The powers of ten that are exact doubles.
+     */
+    protected static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        }
+    }
+
+    /**
+     * The loader the instances are built with.
+     */
+    protected ArffLoader loader;
+
+    /**
+     * The indices of the values of the nominal attributes, null for numeric
+     * ones.
+     */
+    protected NominalIndex[] nominalIndices;
+
+    /**
+     * The line being parsed and the position in it.
+     */
+    protected char[] line;
+
+    protected int position;
+
+    protected int lineEnd;
+
+    /**
+     * The chars of the current token.
+     */
+    protected char[] token;
+
+    protected int tokenStart;
+
+    protected int tokenEnd;
+
+    /**
+     * The buffer of quoted tokens with escapes.
+     */
+    protected char[] quoted = new char[64];
+
+    /**
+     * The buffers of the values of sparse instances.
+     */
+    protected int[] sparseIndices = new int[16];
+
+    protected double[] sparseValues = new double[16];
+
+    /**
+     * Instantiates a new arff data parser.
+     *
+     * @param loader the loader the instances are built with
+     * @param nominalIndices the indices of the values of the nominal
+     * attributes, shared by the parsers of a loader
+     */
+    public ArffDataParser(ArffLoader loader, NominalIndex[] nominalIndices) {
+        this.loader = loader;
+        this.nominalIndices = nominalIndices;
+    }
+
+    /**
+     * Builds the indices of the values of the nominal attributes.
+     *
+     * @param instanceInformation the instance information
+     * @return the indices, null for numeric attributes
+     */
+    public static NominalIndex[] nominalIndices(InstanceInformation instanceInformation) {
+        NominalIndex[] indices = new NominalIndex[instanceInformation.numAttributes()];
+        for (int i = 0; i < indices.length; i++) {
+            Attribute attribute = instanceInformation.attribute(i);
+            if (attribute.isNominal()) {
+                indices[i] = new NominalIndex(attribute);
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Parses a line. It detects if it is dense or sparse.
+     *
+     * @param chars the buffer of the line
+     * @param start the start of the line
+     * @param end the end of the line, before its line break
+     * @return the instance, or null if the line has no values
+     */
+    public Instance parseLine(char[] chars, int start, int end) {
+        this.line = chars;
+        this.position = start;
+        this.lineEnd = end;
+        int type = nextToken();
+        if (type == '{') {
+            return parseSparse();
+        }
+        Instance instance = null;
+        int numAttribute = 0;
+        for (; type != END; type = nextToken()) {
+            if (type == WORD || type == QUOTE) {
+                if (instance == null) {
+                    instance = this.loader.newDenseInstance(this.nominalIndices.length);
+                }
+                boolean isNumeric = this.nominalIndices[numAttribute] == null;
+                this.loader.setValue(instance, numAttribute, tokenValue(numAttribute), isNumeric);
+                numAttribute++;
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Parses the index and value pairs of a sparse instance, after the '{'
+     * char.
+     *
+     * @return the instance
+     */
+    protected Instance parseSparse() {
+        Instance instance = this.loader.newSparseInstance(1.0);
+        int numValues = 0;
+        int type = nextToken();
+        while (type == WORD || type == QUOTE) {
+            int numAttribute = parseInt(this.token, this.tokenStart, this.tokenEnd);
+            type = nextToken();
+            if (type != WORD && type != QUOTE) {
+                break;
+            }
+            if (numValues == this.sparseIndices.length) {
+                this.sparseIndices = Arrays.copyOf(this.sparseIndices, 2 * numValues);
+                this.sparseValues = Arrays.copyOf(this.sparseValues, 2 * numValues);
+            }
+            this.sparseIndices[numValues] = numAttribute;
+            this.sparseValues[numValues] = tokenValue(numAttribute);
+            numValues++;
+            type = nextToken();
+        }
+        instance.addSparseValues(Arrays.copyOf(this.sparseIndices, numValues),
+                Arrays.copyOf(this.sparseValues, numValues), this.nominalIndices.length);
+        return instance;
+    }
+
+    /**
+     * Gets the value of the current token for an attribute.
+     *
+     * @param numAttribute the index of the attribute
+     * @return the value
+     */
+    protected double tokenValue(int numAttribute) {
+        if (this.tokenEnd - this.tokenStart == 1 && this.token[this.tokenStart] == '?') {
+            return Double.NaN;
+        }
+        NominalIndex nominalIndex = this.nominalIndices[numAttribute];
+        if (nominalIndex == null) {
+            return parseDouble(this.token, this.tokenStart, this.tokenEnd);
+        }
+        return nominalIndex.indexOf(this.token, this.tokenStart, this.tokenEnd);
+    }
+
+    /**
+     * Moves to the next token of the line.
+     *
+     * @return WORD or QUOTE, the char of '{' and '}', or END at the end of
+     * the line
+     */
+    protected int nextToken() {
+        char[] chars = this.line;
+        int i = this.position;
+        while (i < this.lineEnd && (chars[i] <= ' ' || chars[i] == ',')) {
+            i++;
+        }
+        if (i == this.lineEnd || chars[i] == '%') {
+            this.position = this.lineEnd;
+            return END;
+        }
+        char c = chars[i];
+        if (c == '{' || c == '}') {
+            this.position = i + 1;
+            return c;
+        }
+        if (c == '"' || c == '\'') {
+            readQuoted(i + 1, c);
+            return QUOTE;
+        }
+        int start = i;
+        while (i < this.lineEnd && isWordChar(chars[i])) {
+            i++;
+        }
+        this.token = chars;
+        this.tokenStart = start;
+        this.tokenEnd = i;
+        this.position = i;
+        return WORD;
+    }
+
+    protected static boolean isWordChar(char c) {
+        return c > ' ' && c != ',' && c != '%' && c != '"' && c != '\''
+                && c != '{' && c != '}';
+    }
+
+    /**
+     * Reads a quoted token, which ends at the closing quote or the end of the
+     * line, with the escapes of StreamTokenizer.
+     *
+     * @param start the position after the opening quote
+     * @param quote the quote char
+     */
+    protected void readQuoted(int start, char quote) {
+        char[] chars = this.line;
+        int i = start;
+        while (i < this.lineEnd && chars[i] != quote && chars[i] != '\\') {
+            i++;
+        }
+        if (i == this.lineEnd || chars[i] == quote) {
+            this.token = chars;
+            this.tokenStart = start;
+            this.tokenEnd = i;
+            this.position = i < this.lineEnd ? i + 1 : i;
+            return;
+        }
+        int length = i - start;
+        if (this.quoted.length < this.lineEnd - start) {
+            this.quoted = new char[this.lineEnd - start];
+        }
+        System.arraycopy(chars, start, this.quoted, 0, length);
+        while (i < this.lineEnd && chars[i] != quote) {
+            char c = chars[i++];
+            if (c == '\\' && i < this.lineEnd) {
+                c = chars[i++];
+                switch (c) {
+                    case 'a':
+                        c = 0x7;
+                        break;
+                    case 'b':
+                        c = '\b';
+                        break;
+                    case 'f':
+                        c = 0xC;
+                        break;
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                    case 'v':
+                        c = 0xB;
+                        break;
+                    default:
+                        if (c >= '0' && c <= '7') {
+                            int octal = c - '0';
+                            int maxDigits = c <= '3' ? 2 : 1;
+                            while (maxDigits-- > 0 && i < this.lineEnd
+                                    && chars[i] >= '0' && chars[i] <= '7') {
+                                octal = octal * 8 + (chars[i++] - '0');
+                            }
+                            c = (char) octal;
+                        }
+                }
+            }
+            this.quoted[length++] = c;
+        }
+        this.token = this.quoted;
+        this.tokenStart = 0;
+        this.tokenEnd = length;
+        this.position = i < this.lineEnd ? i + 1 : i;
+    }
+
+    /**
+     * Parses a double. Numbers of up to 15 significant digits with a small
+     * exponent are computed with a single exact operation, which rounds as
+     * Double.parseDouble does, and the rest are left to Double.parseDouble.
+     *
+     * @param chars the buffer
+     * @param start the start of the number
+     * @param end the end of the number
+     * @return the value
+     * @throws NumberFormatException if it is not a number
+     */
+    public static double parseDouble(char[] chars, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+            negative = chars[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int numDigits = 0;
+        int exponent = 0;
+        boolean hasDigits = false;
+        for (; i < end && chars[i] >= '0' && chars[i] <= '9'; i++) {
+            hasDigits = true;
+            if (mantissa != 0 || chars[i] != '0') {
+                mantissa = mantissa * 10 + (chars[i] - '0');
+                numDigits++;
+            }
+        }
+        if (i < end && chars[i] == '.') {
+            for (i++; i < end && chars[i] >= '0' && chars[i] <= '9'; i++) {
+                hasDigits = true;
+                if (mantissa != 0 || chars[i] != '0') {
+                    mantissa = mantissa * 10 + (chars[i] - '0');
+                    numDigits++;
+                }
+                exponent--;
+                if (numDigits > 15) {
+                    break;
+                }
+            }
+        }
+        if (hasDigits && numDigits <= 15 && i < end && (chars[i] == 'e' || chars[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+                negativeExponent = chars[i] == '-';
+                i++;
+            }
+            int exponentValue = 0;
+            int exponentStart = i;
+            for (; i < end && chars[i] >= '0' && chars[i] <= '9' && exponentValue < 1000; i++) {
+                exponentValue = exponentValue * 10 + (chars[i] - '0');
+            }
+            if (i == exponentStart) {
+                hasDigits = false;
+            }
+            exponent += negativeExponent ? -exponentValue : exponentValue;
+        }
+        if (i == end && hasDigits && numDigits <= 15) {
+            double value;
+            if (mantissa == 0) {
+                value = 0.0;
+            } else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+                value = mantissa * POWERS_OF_TEN[exponent];
+            } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+                value = mantissa / POWERS_OF_TEN[-exponent];
+            } else {
+                return Double.parseDouble(new String(chars, start, end - start));
+            }
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(new String(chars, start, end - start));
+    }
+
+    /**
+     * Parses an int.
+     *
+     * @param chars the buffer
+     * @param start the start of the number
+     * @param end the end of the number
+     * @return the value
+     * @throws NumberFormatException if it is not an int
+     */
+    public static int parseInt(char[] chars, int start, int end) {
+        if (end > start && end - start < 10) {
+            int value = 0;
+            int i = start;
+            for (; i < end && chars[i] >= '0' && chars[i] <= '9'; i++) {
+                value = value * 10 + (chars[i] - '0');
+            }
+            if (i == end) {
+                return value;
+            }
+        }
+        return Integer.parseInt(new String(chars, start, end - start));
+    }
+
+    /**
+     * The Class NominalIndex. Finds the index of a value of a nominal
+     * attribute from its chars, as Attribute.indexOfValue does from a String.
+     */
+    public static class NominalIndex {
+
+        protected String[] keys;
+
+        protected int[] values;
+
+        protected int mask;
+
+        public NominalIndex(Attribute attribute) {
+            int size = Integer.highestOneBit(Math.max(1, attribute.numValues()) * 2) * 2;
+            this.keys = new String[size];
+            this.values = new int[size];
+            this.mask = size - 1;
+            for (int i = 0; i < attribute.numValues(); i++) {
+                String key = attribute.value(i);
+                int slot = key.hashCode() & this.mask;
+                while (this.keys[slot] != null && !this.keys[slot].equals(key)) {
+                    slot = (slot + 1) & this.mask;
+                }
+                // as in indexOfValue, the last of repeated values is found
+                this.keys[slot] = key;
+                this.values[slot] = i;
+            }
+        }
+
+        /**
+         * Gets the index of a value.
+         *
+         * @param chars the buffer
+         * @param start the start of the value
+         * @param end the end of the value
+         * @return the index, or -1 if it is not a value of the attribute
+         */
+        public int indexOf(char[] chars, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + chars[i];
+            }
+            int length = end - start;
+            for (int slot = hash & this.mask; this.keys[slot] != null; slot = (slot + 1) & this.mask) {
+                String key = this.keys[slot];
+                if (key.length() == length && matches(key, chars, start)) {
+                    return this.values[slot];
+                }
+            }
+            return -1;
+        }
+
+        protected static boolean matches(String key, char[] chars, int start) {
+            for (int i = 0; i < key.length(); i++) {
+                if (key.charAt(i) != chars[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -20,12 +20,26 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.StreamTokenizer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * The Class ArffLoader. Loads an Arff file with sparse or dense format.
+ * The header is read with a StreamTokenizer and the data with an
+ * ArffDataParser, which parses the lines straight from a char buffer.
  */
 public class ArffLoader {
 
@@ -41,6 +55,76 @@ public class ArffLoader {
      */
     protected StreamTokenizer streamTokenizer;
 
+    /**
+     * The reader of the data, after the header.
+     */
+    protected Reader dataReader;
+
+    /**
+     * The buffer of the data: the whole lines up to blockEnd, of which the
+     * next to parse starts at lineStart, and a partial line up to
+     * blockLength.
+     */
+    protected char[] block = new char[1 << 16];
+
+    protected int lineStart;
+
+    protected int blockEnd;
+
+    protected int blockLength;
+
+    protected boolean endOfData;
+
+    protected ArffDataParser.NominalIndex[] nominalIndices;
+
+    protected ArffDataParser dataParser;
+
+    /**
+     * Marks the end of the parsed blocks.
+     */
+    protected static final Future<Instance[]> END_OF_DATA = new FutureTask<Instance[]>(new Callable<Instance[]>() {
+
+        @Override
+        public Instance[] call() {
+            return null;
+        }
+    });
+
+    /**
+     * The parsed blocks in the order of the file, when parsing on other
+     * threads.
+     */
+    protected BlockingQueue<Future<Instance[]>> parsedBlocks;
+
+    protected Instance[] parsedInstances;
+
+    protected int nextParsedInstance;
+
+    protected ExecutorService parseExecutor;
+
+    protected Thread readerThread;
+
+    protected volatile boolean closed;
+
+    /**
+     * How long the reader thread waits for the parsed blocks to be read
+     * before it stops with the threads parsing, so the threads do not outlive
+     * a consumer that stopped reading. They start again when reading goes on.
+     */
+    protected long idleTimeoutMillis = 10000;
+
+    protected int numParseThreads;
+
+    protected ThreadLocal<ArffDataParser> parsers;
+
+    /**
+     * The block the reader thread could not queue before it stopped, queued
+     * after the others.
+     */
+    protected Future<Instance[]> idleBlock;
+
+    protected volatile boolean idle;
+
     /**
      * Instantiates a new arff loader.
      *
@@ -84,6 +168,7 @@ public class ArffLoader {
     public ArffLoader(Reader reader, Range range) {
         this.range = range;
         BufferedReader br = new BufferedReader(reader);
+        this.dataReader = br;
 
         //Init streamTokenizer
         streamTokenizer = new StreamTokenizer(br);
@@ -121,68 +206,41 @@ public class ArffLoader {
      * @return the instance
      */
     public Instance readInstance() {
-        while (streamTokenizer.ttype == StreamTokenizer.TT_EOL) {
-            try {
-                streamTokenizer.nextToken();
-            } catch (IOException ex) {
-                Logger.getLogger(ArffLoader.class.getName()).log(Level.SEVERE, null, ex);
-            }
+        if (this.parsedInstances != null) {
+            return readParsedInstance();
         }
-        if (streamTokenizer.ttype == '{') {
-            return readInstanceSparse();
-            // return readDenseInstanceSparse();
-        } else {
-            return readInstanceDense();
+        if (this.dataParser == null) {
+            this.dataParser = new ArffDataParser(this, nominalIndices());
         }
-
+        try {
+            do {
+                while (this.lineStart < this.blockEnd) {
+                    int lineEnd = this.lineStart;
+                    while (lineEnd < this.blockEnd && this.block[lineEnd] != '\n' && this.block[lineEnd] != '\r') {
+                        lineEnd++;
+                    }
+                    Instance instance = this.dataParser.parseLine(this.block, this.lineStart, lineEnd);
+                    this.lineStart = lineEnd + 1;
+                    if (instance != null) {
+                        return instance;
+                    }
+                }
+            } while (readBlock());
+        } catch (IOException ex) {
+            Logger.getLogger(ArffLoader.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        return null;
     }
 
     /**
-     * Reads a dense instance from the file.
+     * Reads the next instance. The lines are parsed by readInstance, which
+     * detects dense and sparse lines, so a sparse line still gives a sparse
+     * instance.
      *
      * @return the instance
      */
     public Instance readInstanceDense() {
-        Instance instance = newDenseInstance(this.instanceInformation.numAttributes());
-        //System.out.println(this.instanceInformation.numAttributes());
-        int numAttribute = 0;
-        try {
-            while (numAttribute == 0 && streamTokenizer.ttype != StreamTokenizer.TT_EOF) {
-                //For each line
-                while (streamTokenizer.ttype != StreamTokenizer.TT_EOL
-                        && streamTokenizer.ttype != StreamTokenizer.TT_EOF) {
-                    //For each item
-                    if (streamTokenizer.ttype == StreamTokenizer.TT_NUMBER) {
-                        //System.out.println(streamTokenizer.nval + "Num ");
-                        this.setValue(instance, numAttribute, streamTokenizer.nval, true);
-                        numAttribute++;
-
-                    } else if (streamTokenizer.sval != null && (streamTokenizer.ttype == StreamTokenizer.TT_WORD
-                            || streamTokenizer.ttype == 34)) {
-                        //System.out.println(streamTokenizer.sval + "Str");
-                        boolean isNumeric = this.instanceInformation.attribute(numAttribute).isNumeric();
-                        double value;
-                        if ("?".equals(streamTokenizer.sval)) {
-                            value = Double.NaN; //Utils.missingValue();
-                        } else if (isNumeric == true) {
-                            value = Double.valueOf(streamTokenizer.sval).doubleValue();
-                        } else {
-                            value = this.instanceInformation.attribute(numAttribute).indexOfValue(streamTokenizer.sval);
-                        }
-
-                        this.setValue(instance, numAttribute, value, isNumeric);
-                        numAttribute++;
-                    }
-                    streamTokenizer.nextToken();
-                }
-                streamTokenizer.nextToken();
-                //System.out.println("EOL");
-            }
-
-        } catch (IOException ex) {
-            Logger.getLogger(ArffLoader.class.getName()).log(Level.SEVERE, null, ex);
-        }
-        return (numAttribute > 0) ? instance : null;
+        return readInstance();
     }
 
     protected void setValue(Instance instance, int numAttribute, double value, boolean isNumber) {
@@ -207,140 +265,233 @@ public class ArffLoader {
     }
 
     /**
-     * Reads a sparse instance.
+     * Reads the next block of whole lines of the data into the buffer. The
+     * partial line at the end of the buffer is moved to its start first.
      *
-     * @return the instance
+     * @return true, if there are lines in the buffer
+     * @throws IOException if reading fails
      */
-    private Instance readInstanceSparse() {
-        //Return a Sparse Instance
-        Instance instance = newSparseInstance(1.0); //, null); //(this.instanceInformation.numAttributes() + 1);
-        //System.out.println(this.instanceInformation.numAttributes());
-        int numAttribute;
-        ArrayList<Double> attributeValues = new ArrayList<Double>();
-        List<Integer> indexValues = new ArrayList<Integer>();
+    protected boolean readBlock() throws IOException {
+        int partial = this.blockLength - this.blockEnd;
+        System.arraycopy(this.block, this.blockEnd, this.block, 0, partial);
+        this.blockLength = partial;
+        this.blockEnd = 0;
+        this.lineStart = 0;
+        while (true) {
+            if (this.endOfData) {
+                // the last line may have no line break
+                this.blockEnd = this.blockLength;
+                return this.blockLength > 0;
+            }
+            if (this.blockLength == this.block.length) {
+                this.block = Arrays.copyOf(this.block, 2 * this.block.length);
+            }
+            int numRead = this.dataReader.read(this.block, this.blockLength, this.block.length - this.blockLength);
+            if (numRead < 0) {
+                this.endOfData = true;
+                continue;
+            }
+            int scanStart = this.blockLength;
+            this.blockLength += numRead;
+            for (int i = this.blockLength - 1; i >= scanStart; i--) {
+                if (this.block[i] == '\n' || this.block[i] == '\r') {
+                    this.blockEnd = i + 1;
+                    return true;
+                }
+            }
+        }
+    }
+
+    protected ArffDataParser.NominalIndex[] nominalIndices() {
+        if (this.nominalIndices == null) {
+            this.nominalIndices = ArffDataParser.nominalIndices(this.instanceInformation);
+        }
+        return this.nominalIndices;
+    }
+
+    /**
+     * Parses the instances on other threads from now on. A reader thread
+     * splits the data in blocks of lines, which are parsed by the parsing
+     * threads, and the parsed blocks are queued in the order of the file.
+     *
+     * @param numThreads the number of parsing threads
+     */
+    public void setParseThreads(int numThreads) {
+        if (numThreads <= 0 || this.parsedInstances != null) {
+            return;
+        }
+        final ArffDataParser.NominalIndex[] indices = nominalIndices();
+        this.parsers = new ThreadLocal<ArffDataParser>() {
+
+            @Override
+            protected ArffDataParser initialValue() {
+                return new ArffDataParser(ArffLoader.this, indices);
+            }
+        };
+        this.numParseThreads = numThreads;
+        this.parsedBlocks = new ArrayBlockingQueue<Future<Instance[]>>(2 * numThreads + 2);
+        this.parsedInstances = new Instance[0];
+        startReading();
+    }
+
+    /**
+     * Starts the reader and parsing threads, reading on from where the
+     * reader thread stopped.
+     */
+    protected void startReading() {
+        this.idle = false;
+        this.parseExecutor = Executors.newFixedThreadPool(this.numParseThreads, new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ARFF parser");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.readerThread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                readBlocks(parsers);
+            }
+        }, "ARFF reader");
+        this.readerThread.setDaemon(true);
+        this.readerThread.start();
+    }
+
+    /**
+     * Reads the blocks of lines and queues them for parsing, then queues
+     * END_OF_DATA. Stops once a block could not be queued for
+     * idleTimeoutMillis, keeping it in idleBlock.
+     *
+     * @param parsers the parsers of the parsing threads
+     */
+    protected void readBlocks(final ThreadLocal<ArffDataParser> parsers) {
         try {
-            //while (streamTokenizer.ttype != StreamTokenizer.TT_EOF) {
-            streamTokenizer.nextToken(); // Remove the '{' char
-            //For each line
-            while (streamTokenizer.ttype != StreamTokenizer.TT_EOL
-                    && streamTokenizer.ttype != StreamTokenizer.TT_EOF) {
-                while (streamTokenizer.ttype != '}') {
-                    //For each item
-                    //streamTokenizer.nextToken();
-                    //while (streamTokenizer.ttype != '}'){
-                    //System.out.println(streamTokenizer.nval +"-"+ streamTokenizer.sval);
-                    //numAttribute = (int) streamTokenizer.nval;
-                    if (streamTokenizer.ttype == StreamTokenizer.TT_NUMBER) {
-                        numAttribute = (int) streamTokenizer.nval;
-                    } else {
-                        numAttribute = Integer.parseInt(streamTokenizer.sval);
-                    }
-                    streamTokenizer.nextToken();
-
-                    if (streamTokenizer.ttype == StreamTokenizer.TT_NUMBER) {
-                        //System.out.print(streamTokenizer.nval + " ");
-                        this.setSparseValue(instance, indexValues, attributeValues, numAttribute, streamTokenizer.nval, true);
-                        //numAttribute++;
-
-                    } else if (streamTokenizer.sval != null && (streamTokenizer.ttype == StreamTokenizer.TT_WORD
-                            || streamTokenizer.ttype == 34)) {
-                        //System.out.print(streamTokenizer.sval + "-");
-                        if (this.auxAttributes.get(numAttribute).isNumeric()) {
-                            this.setSparseValue(instance, indexValues, attributeValues, numAttribute, Double.valueOf(streamTokenizer.sval).doubleValue(), true);
-                        } else {
-                            this.setSparseValue(instance, indexValues, attributeValues, numAttribute, this.instanceInformation.attribute(numAttribute).indexOfValue(streamTokenizer.sval), false);
+            try {
+                // the lines left from reading on the calling thread come first
+                do {
+                    final char[] lines = Arrays.copyOfRange(this.block, this.lineStart, this.blockEnd);
+                    this.lineStart = this.blockEnd;
+                    if (lines.length > 0) {
+                        Future<Instance[]> parsedBlock = this.parseExecutor.submit(new Callable<Instance[]>() {
+
+                            @Override
+                            public Instance[] call() {
+                                return parseLines(parsers.get(), lines);
+                            }
+                        });
+                        if (!queueParsedBlock(parsedBlock)) {
+                            return;
                         }
                     }
-                    streamTokenizer.nextToken();
+                } while (readBlock());
+            } catch (IOException ex) {
+                if (!this.closed) {
+                    Logger.getLogger(ArffLoader.class.getName()).log(Level.SEVERE, null, ex);
                 }
-                streamTokenizer.nextToken(); //Remove the '}' char
+            } catch (RejectedExecutionException ex) {
+                // closed
             }
-            streamTokenizer.nextToken();
-            //System.out.println("EOL");
-            //}
-
-        } catch (IOException ex) {
-            Logger.getLogger(ArffLoader.class.getName()).log(Level.SEVERE, null, ex);
-        }
-        int[] arrayIndexValues = new int[attributeValues.size()];
-        double[] arrayAttributeValues = new double[attributeValues.size()];
-        for (int i = 0; i < arrayIndexValues.length; i++) {
-            arrayIndexValues[i] = indexValues.get(i).intValue();
-            arrayAttributeValues[i] = attributeValues.get(i).doubleValue();
+            this.parseExecutor.shutdown();
+            queueParsedBlock(END_OF_DATA);
+        } catch (InterruptedException ex) {
+            // closed
         }
-        instance.addSparseValues(arrayIndexValues, arrayAttributeValues, this.instanceInformation.numAttributes());
-        return instance;
+    }
 
+    /**
+     * Queues a parsed block, or stops the parsing threads and keeps the block
+     * if it could not be queued for idleTimeoutMillis.
+     *
+     * @param parsedBlock the block
+     * @return true, if the block was queued
+     * @throws InterruptedException if the loader was closed
+     */
+    protected boolean queueParsedBlock(Future<Instance[]> parsedBlock) throws InterruptedException {
+        if (this.parsedBlocks.offer(parsedBlock, this.idleTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            return true;
+        }
+        this.parseExecutor.shutdown();
+        this.idleBlock = parsedBlock;
+        this.idle = true;
+        return false;
     }
 
-    private void setSparseValue(Instance instance, List<Integer> indexValues, List<Double> attributeValues, int numAttribute, double value, boolean isNumber) {
-        double valueAttribute;
-        if (isNumber && this.instanceInformation.attribute(numAttribute).isNominal) {
-            valueAttribute = this.instanceInformation.attribute(numAttribute).indexOfValue(Double.toString(value));
-        } else {
-            valueAttribute = value;
+    protected static Instance[] parseLines(ArffDataParser parser, char[] lines) {
+        List<Instance> instances = new ArrayList<Instance>();
+        int lineStart = 0;
+        while (lineStart < lines.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < lines.length && lines[lineEnd] != '\n' && lines[lineEnd] != '\r') {
+                lineEnd++;
+            }
+            Instance instance = parser.parseLine(lines, lineStart, lineEnd);
+            if (instance != null) {
+                instances.add(instance);
+            }
+            lineStart = lineEnd + 1;
         }
-        //if (this.instanceInformation.classIndex() == numAttribute) {
-        //    setClassValue(instance, valueAttribute);
-        //} else {
-            //instance.setValue(numAttribute, valueAttribute);
-            indexValues.add(numAttribute);
-            attributeValues.add(valueAttribute);
-        //}
-        //System.out.println(numAttribute+":"+valueAttribute+","+this.instanceInformation.classIndex()+","+value);
+        return instances.toArray(new Instance[instances.size()]);
     }
 
     /**
-     * Reads an instance sparse and returns a dense one.
+     * Reads the next instance parsed by the parsing threads.
      *
      * @return the instance
      */
-    private Instance readDenseInstanceSparse() {
-        //Returns a dense instance
-        Instance instance = newDenseInstance(this.instanceInformation.numAttributes());
-        //System.out.println(this.instanceInformation.numAttributes());
-        int numAttribute;
-        try {
-            //while (streamTokenizer.ttype != StreamTokenizer.TT_EOF) {
-            streamTokenizer.nextToken(); // Remove the '{' char
-            //For each line
-            while (streamTokenizer.ttype != StreamTokenizer.TT_EOL
-                    && streamTokenizer.ttype != StreamTokenizer.TT_EOF) {
-                while (streamTokenizer.ttype != '}') {
-                    //For each item
-                    //streamTokenizer.nextToken();
-                    //while (streamTokenizer.ttype != '}'){
-                    //System.out.print(streamTokenizer.nval+":");
-                    numAttribute = (int) streamTokenizer.nval;
-                    streamTokenizer.nextToken();
-
-                    if (streamTokenizer.ttype == StreamTokenizer.TT_NUMBER) {
-                        //System.out.print(streamTokenizer.nval + " ");
-                        this.setValue(instance, numAttribute, streamTokenizer.nval, true);
-                        //numAttribute++;
-
-                    } else if (streamTokenizer.sval != null && (streamTokenizer.ttype == StreamTokenizer.TT_WORD
-                            || streamTokenizer.ttype == 34)) {
-                        //System.out.print(streamTokenizer.sval + "/"+this.instanceInformation.attribute(numAttribute).indexOfValue(streamTokenizer.sval)+" ");
-                        if (this.auxAttributes.get(numAttribute).isNumeric()) {
-                            this.setValue(instance, numAttribute, Double.valueOf(streamTokenizer.sval).doubleValue(), true);
-                        } else {
-                            this.setValue(instance, numAttribute, this.instanceInformation.attribute(numAttribute).indexOfValue(streamTokenizer.sval), false);
-                            //numAttribute++;
+    protected Instance readParsedInstance() {
+        while (this.nextParsedInstance == this.parsedInstances.length) {
+            if (this.parsedBlocks.isEmpty() && this.readerThread == null) {
+                return null;
+            }
+            try {
+                Future<Instance[]> parsedBlock;
+                while ((parsedBlock = this.parsedBlocks.poll(100, TimeUnit.MILLISECONDS)) == null) {
+                    if (this.idle) {
+                        // the reader thread stopped while nothing was read
+                        this.readerThread.join();
+                        parsedBlock = this.idleBlock;
+                        this.idleBlock = null;
+                        if (parsedBlock != END_OF_DATA) {
+                            startReading();
                         }
+                        break;
                     }
-                    streamTokenizer.nextToken();
                 }
-                streamTokenizer.nextToken(); //Remove the '}' char
+                if (parsedBlock == END_OF_DATA) {
+                    this.readerThread = null;
+                    return null;
+                }
+                this.parsedInstances = parsedBlock.get();
+                this.nextParsedInstance = 0;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(ex);
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                throw new RuntimeException(ex.getCause());
             }
-            streamTokenizer.nextToken();
-            //System.out.println("EOL");
-            //}
+        }
+        return this.parsedInstances[this.nextParsedInstance++];
+    }
 
-        } catch (IOException ex) {
-            Logger.getLogger(ArffLoader.class.getName()).log(Level.SEVERE, null, ex);
+    /**
+     * Stops the reader and parsing threads. The instances are no longer
+     * read once the loader is closed. Threads left running by a consumer that
+     * stops reading without closing the loader stop by themselves after
+     * idleTimeoutMillis.
+     */
+    public void close() {
+        this.closed = true;
+        if (this.readerThread != null) {
+            this.readerThread.interrupt();
+            this.parseExecutor.shutdownNow();
+            this.readerThread = null;
         }
-        return instance;
     }
 
     //protected List<Attribute> inputAttributes;
@@ -419,7 +570,7 @@ public class ArffLoader {
 
                     } else if (token.startsWith("@DATA")) {
                         //System.out.print("END");
-                        streamTokenizer.nextToken();
+                        // the data is read from dataReader
                         break;
                     }
                 }
@@ -421,6 +421,27 @@ public class Instances implements Serializable {
         throw new UnsupportedOperationException("Not yet implemented"); //CobWeb
     }
 
+    /**
+     * Parses the instances read from the file on other threads. Does nothing
+     * for instances that are not read from a file.
+     *
+     * @param numThreads the number of parsing threads
+     */
+    public void setParseThreads(int numThreads) {
+        if (this.arff != null) {
+            this.arff.setParseThreads(numThreads);
+        }
+    }
+
+    /**
+     * Stops reading instances from the file.
+     */
+    public void closeReader() {
+        if (this.arff != null) {
+            this.arff.close();
+        }
+    }
+
     /**
      * Read instance.
      *
@@ -19,6 +19,7 @@
  */
 package moa;
 
+import moa.core.ByteSizeEstimator;
 import moa.core.SerializeUtils;
 import moa.core.SizeOf;
 
@@ -76,4 +77,18 @@ public abstract class AbstractMOAObject implements MOAObject {
     public static int measureByteSize(MOAObject obj) {
         return (int) SizeOf.fullSizeOf(obj);
     }
+
+    /**
+     * Gets the estimated memory size of an object.
+     *
+     * @param obj object to estimate the memory size of
+     * @return the estimated memory size of the object, or -1 if it keeps no
+     * estimate
+     */
+    public static int estimateByteSize(Object obj) {
+        if (obj instanceof ByteSizeEstimator) {
+            return ((ByteSizeEstimator) obj).estimateByteSize();
+        }
+        return -1;
+    }
 }
@@ -1,11 +1,21 @@
 package moa;
 
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
 import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import moa.classifiers.Classifier;
 import moa.classifiers.bayes.NaiveBayes;
 import moa.classifiers.iss.NaiveBayesISS;
@@ -25,6 +35,13 @@ import moa.streams.generators.SEAFD;
 import moa.tasks.EvaluatePrequential;
 
 /**
+ * Runs every classifier on every stream and writes a summary of the runs.
+ *
+ * Arguments: [-threads n] [-resume]. The runs are spread over n threads, all
+ * available processors by default, each run on its own copy of the stream and
+ * the classifier. The summary lists the runs in the same order however many
+ * threads are used. With -resume the runs already in summary.csv are skipped
+ * and the others are appended to it.
  *
  * @author Jean Paul Barddal
  */
@@ -34,8 +51,20 @@ public class ISSExperiments {
     private static int EVALUATION_FREQUENCY = 10000;
     private static int DRIFT_POSITION_SINGLE_DRIFT = 250000;
     private static int DRIFT_POSITION_TWO_DRIFTS = 200000;
-
-    public static void main(String args[]) throws FileNotFoundException, UnsupportedEncodingException {
+    private static String SUMMARY_FILE = "./summary.csv";
+
+    public static void main(String args[]) throws IOException, InterruptedException, ExecutionException {
+
+        // Reads the number of threads and whether to resume a partial run
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        boolean resume = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-threads")) {
+                numThreads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-resume")) {
+                resume = true;
+            }
+        }
 
         // Instantiates all classifiers and hyper-parameter combinations
         HashMap<String, Classifier> classifiers = new HashMap<>();
@@ -54,22 +83,56 @@ public class ISSExperiments {
         streams.putAll(instantiateLEDDrift()); // LED w/ DRIFT
         streams.putAll(instantiateSEA()); // SEA w/ FEATURE DRIFT
 
-        // Prepares the folder that will contain all the results
-        prepareFolder();
+        // Runs already in the summary are kept when resuming, otherwise
+        // the folder that will contain all the results is prepared
+        resume = resume && new File(SUMMARY_FILE).exists();
+        Set<String> finishedRuns = new HashSet<>();
+        if (resume) {
+            finishedRuns = readFinishedRuns();
+            new File("./results/").mkdir();
+        } else {
+            prepareFolder();
+        }
 
         // Prepares a buffer to output the summary file
-        PrintWriter writer = new PrintWriter(new FileOutputStream("./summary.csv", false));
-        writer.println("Stream,Classifier,Avg Accuracy, CPU Time, RAM-Hours");
-
-        // Loops over all streams and classifiers to run the experiments
-        for (String strStream : streams.keySet()) {
-            ExampleStream s = streams.get(strStream);
-            for (String strClassifier : classifiers.keySet()) {
-                Classifier c = classifiers.get(strClassifier);
-                appendResults(writer, runExperiment(strClassifier, c, strStream, s));
+        PrintWriter writer = new PrintWriter(new FileOutputStream(SUMMARY_FILE, resume));
+        if (!resume) {
+            writer.println("Stream,Classifier,Avg Accuracy, CPU Time, RAM-Hours");
+            writer.flush();
+        }
+
+        // Submits every stream and classifier pair not run yet, each run
+        // works on its own copies as the streams and classifiers are shared
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        List<Future<String>> results = new ArrayList<>();
+        for (final String strStream : streams.keySet()) {
+            final ExampleStream s = streams.get(strStream);
+            for (final String strClassifier : classifiers.keySet()) {
+                if (finishedRuns.contains(strStream + "," + strClassifier)) {
+                    continue;
+                }
+                final Classifier c = classifiers.get(strClassifier);
+                results.add(pool.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return runExperiment(strClassifier, c.copy(),
+                                strStream, (ExampleStream) s.copy());
+                    }
+                }));
             }
         }
-        writer.close();
+        pool.shutdown();
+
+        // Writes the results in the order the runs were submitted, each
+        // as soon as the runs before it are done
+        try {
+            for (Future<String> result : results) {
+                appendResults(writer, result.get());
+            }
+        } finally {
+            pool.shutdownNow();
+            writer.close();
+        }
     }
 
     private static String runExperiment(String strClassifier, Classifier c,
@@ -652,6 +715,24 @@ public class ISSExperiments {
     /////////////////////////////////////////////
     // AUXILIAR METHODS TO SET UP OUTPUT FILES //
     /////////////////////////////////////////////
+    private static Set<String> readFinishedRuns() throws IOException {
+        Set<String> finishedRuns = new HashSet<>();
+        BufferedReader reader = new BufferedReader(new FileReader(SUMMARY_FILE));
+        try {
+            // skips the header, the stream and classifier are the first two columns
+            String line = reader.readLine();
+            while ((line = reader.readLine()) != null) {
+                String columns[] = line.split(",");
+                if (columns.length >= 5) {
+                    finishedRuns.add(columns[0] + "," + columns[1]);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return finishedRuns;
+    }
+
     private static void prepareFolder() {
         File folder = new File("./results/");
         File listOfFiles[];
@@ -25,12 +25,14 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 
+import moa.AbstractMOAObject;
 import moa.MOAObject;
 import moa.core.Example;
 
 import com.yahoo.labs.samoa.instances.InstancesHeader;
 
 import moa.core.Measurement;
+import moa.core.ModelByteSizeTracker;
 import moa.core.ObjectRepository;
 import moa.core.StringUtils;
 import moa.gui.AWTRenderer;
@@ -51,7 +53,7 @@ import com.yahoo.labs.samoa.instances.Prediction;
 import moa.core.Utils;
 
 public abstract class AbstractClassifier extends AbstractOptionHandler
-        implements Classifier { //Learner<Example<Instance>> {
+        implements BlockClassifier, ReusableVotesClassifier { //Learner<Example<Instance>> {
 
     @Override
     public String getPurposeString() {
@@ -73,6 +75,9 @@ public abstract class AbstractClassifier extends AbstractOptionHandler
     /** Random Generator used in randomizable learners  */
     public Random classifierRandom;
 
+    /** Tracks the memory size reported in the model measurements if set */
+    protected transient ModelByteSizeTracker byteSizeTracker;
+
     /**
      * Creates an classifier and setups the random seed option
      * if the classifier is randomizable.
@@ -104,6 +109,11 @@ public abstract class AbstractClassifier extends AbstractOptionHandler
     @Override
     public abstract double[] getVotesForInstance(Instance inst);
 
+    @Override
+    public double[] getVotesForInstance(Instance inst, double[] votes) {
+        return getVotesForInstance(inst);
+    }
+
     @Override
     public Prediction getPredictionForInstance(Example<Instance> example){
 		return getPredictionForInstance(example.getData());
@@ -167,24 +177,62 @@ public abstract class AbstractClassifier extends AbstractOptionHandler
 
     @Override
     public void trainOnInstance(Instance inst) {
+        if (isTrainingInstance(inst)) {
+            this.trainingWeightSeenByModel += inst.weight();
+            trainOnInstanceImpl(inst);
+        }
+    }
+
+    /**
+     * Gets whether an instance is trained on: it has weight, and a class
+     * unless this is a semi-supervised learner.
+     *
+     * @param inst the instance
+     * @return true if the instance is trained on
+     */
+    protected boolean isTrainingInstance(Instance inst) {
         boolean isTraining = (inst.weight() > 0.0);
         if (this instanceof SemiSupervisedLearner == false &&
                 inst.classIsMissing() == true){
             isTraining = false;
         }
-        if (isTraining) {
-            this.trainingWeightSeenByModel += inst.weight();
-            trainOnInstanceImpl(inst);
+        return isTraining;
+    }
+
+    @Override
+    public void trainOnInstances(Instance[] insts, int from, int to) {
+        for (int i = from; i < to; i++) {
+            trainOnInstance(insts[i]);
+        }
+    }
+
+    @Override
+    public double[][] getVotesForInstances(Instance[] insts, int from, int to) {
+        double[][] votes = new double[to - from][];
+        for (int i = from; i < to; i++) {
+            votes[i - from] = getVotesForInstance(insts[i]);
         }
+        return votes;
     }
 
     @Override
     public Measurement[] getModelMeasurements() {
+        return getModelMeasurements(false);
+    }
+
+    /**
+     * Gets the model measurements, with the estimated memory size if asked
+     * for, as for the sub-models of a tracked model.
+     *
+     * @param estimateSize whether to report the estimated memory size
+     * @return the measurements
+     */
+    protected Measurement[] getModelMeasurements(boolean estimateSize) {
         List<Measurement> measurementList = new LinkedList<Measurement>();
         measurementList.add(new Measurement("model training instances",
                 trainingWeightSeenByModel()));
         measurementList.add(new Measurement("model serialized size (bytes)",
-                measureByteSize()));
+                reportedByteSize(estimateSize)));
         Measurement[] modelMeasurements = getModelMeasurementsImpl();
         if (modelMeasurements != null) {
             measurementList.addAll(Arrays.asList(modelMeasurements));
@@ -192,9 +240,12 @@ public abstract class AbstractClassifier extends AbstractOptionHandler
         // add average of sub-model measurements
         Learner[] subModels = getSublearners();
         if ((subModels != null) && (subModels.length > 0)) {
+            boolean estimateSubModelSize = estimateSize || this.byteSizeTracker != null;
             List<Measurement[]> subMeasurements = new LinkedList<Measurement[]>();
             for (Learner subModel : subModels) {
-                if (subModel != null) {
+                if (subModel instanceof AbstractClassifier) {
+                    subMeasurements.add(((AbstractClassifier) subModel).getModelMeasurements(estimateSubModelSize));
+                } else if (subModel != null) {
                     subMeasurements.add(subModel.getModelMeasurements());
                 }
             }
@@ -204,6 +255,37 @@ public abstract class AbstractClassifier extends AbstractOptionHandler
         return measurementList.toArray(new Measurement[measurementList.size()]);
     }
 
+    /**
+     * Sets the tracker whose last size the model measurements report instead
+     * of measuring the model, sub-models then report their estimated sizes.
+     *
+     * @param byteSizeTracker the tracker, or null to measure the model
+     */
+    public void setByteSizeTracker(ModelByteSizeTracker byteSizeTracker) {
+        this.byteSizeTracker = byteSizeTracker;
+    }
+
+    /**
+     * Gets the memory size reported in the model measurements.
+     *
+     * @param estimateSize whether to report the estimated size if the model
+     * has one
+     * @return the last tracked size, or the estimated size if asked for and
+     * the model has one, otherwise the measured size
+     */
+    protected int reportedByteSize(boolean estimateSize) {
+        if (this.byteSizeTracker != null && this.byteSizeTracker.getLastByteSize() >= 0) {
+            return this.byteSizeTracker.getLastByteSize();
+        }
+        if (estimateSize) {
+            int estimated = AbstractMOAObject.estimateByteSize(this);
+            if (estimated >= 0) {
+                return estimated;
+            }
+        }
+        return measureByteSize();
+    }
+
     @Override
     public void getDescription(StringBuilder out, int indent) {
         StringUtils.appendIndented(out, indent, "Model type: ");
@@ -230,6 +312,31 @@ public abstract class AbstractClassifier extends AbstractOptionHandler
     public Classifier[] getSubClassifiers() {
         return null;
     }
+
+    /**
+     * Sums the estimated memory sizes of the sub-classifiers, for ensembles
+     * implementing {@link moa.core.ByteSizeEstimator}.
+     *
+     * @return the summed estimate, or -1 if there are no sub-classifiers or
+     * one of them has no estimate
+     */
+    protected int estimateSubClassifiersByteSize() {
+        Classifier[] subClassifiers = getSubClassifiers();
+        if (subClassifiers == null) {
+            return -1;
+        }
+        long size = 0;
+        for (Classifier subClassifier : subClassifiers) {
+            if (subClassifier != null) {
+                int estimated = AbstractMOAObject.estimateByteSize(subClassifier);
+                if (estimated < 0) {
+                    return -1;
+                }
+                size += estimated;
+            }
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
     
     
     @Override
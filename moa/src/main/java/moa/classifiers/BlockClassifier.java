@@ -0,0 +1,55 @@
+/*
+ *    BlockClassifier.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *    
+ */
+package moa.classifiers;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+/**
+ * Classifier that can be trained and can predict on blocks of instances.
+ * Evaluation tasks use the blocks for classifiers implementing this
+ * interface, AbstractClassifier implements it by going through the instances
+ * one at a time.
+ *
+ * @version $Revision: 1 $
+ */
+public interface BlockClassifier extends Classifier {
+
+    /**
+     * Trains this learner on a block of instances, in order. Gives the same
+     * model as training on each of them in turn.
+     *
+     * @param insts the instances to be used for training
+     * @param from the index of the first instance of the block
+     * @param to the index after the last instance of the block
+     */
+    public void trainOnInstances(Instance[] insts, int from, int to);
+
+    /**
+     * Predicts the class memberships for a block of instances, all with the
+     * current model. Gives the same predictions as predicting each of them in
+     * turn without training in between, the predictions of a block are
+     * followed by training on the same block.
+     *
+     * @param insts the instances to be classified
+     * @param from the index of the first instance of the block
+     * @param to the index after the last instance of the block
+     * @return the votes for every instance of the block, as returned by
+     * getVotesForInstance
+     */
+    public double[][] getVotesForInstances(Instance[] insts, int from, int to);
+}
@@ -0,0 +1,43 @@
+/*
+ *    ReusableVotesClassifier.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *    
+ */
+package moa.classifiers;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+/**
+ * Classifier that can write its votes into an array of the caller, so
+ * predicting does not allocate the votes every time. AbstractClassifier
+ * implements it by returning new votes unless a classifier overrides it.
+ *
+ * @version $Revision: 1 $
+ */
+public interface ReusableVotesClassifier extends Classifier {
+
+    /**
+     * Predicts the class memberships for a given instance, writing them into
+     * the given array if it has the length the votes need. The caller must
+     * be done with the votes of the previous call before passing the same
+     * array again.
+     *
+     * @param inst the instance to be classified
+     * @param votes the array to reuse, or null
+     * @return the votes as returned by getVotesForInstance, either in the
+     * given array or in a new one
+     */
+    public double[] getVotesForInstance(Instance inst, double[] votes);
+}
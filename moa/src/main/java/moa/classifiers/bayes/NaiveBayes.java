@@ -83,6 +83,88 @@ public class NaiveBayes extends AbstractClassifier {
                 this.attributeObservers);
     }
 
+    @Override
+    public double[] getVotesForInstance(Instance inst, double[] votes) {
+        return doNaiveBayesPrediction(inst, this.observedClassDistribution,
+                this.attributeObservers, votes);
+    }
+
+    /**
+     * Trains on a block of instances one attribute at a time, so every
+     * observer is looked up once per block. Each observer still sees the
+     * instances in order.
+     */
+    @Override
+    public void trainOnInstances(Instance[] insts, int from, int to) {
+        Instance[] training = new Instance[to - from];
+        int numTraining = 0;
+        for (int i = from; i < to; i++) {
+            Instance inst = insts[i];
+            if (isTrainingInstance(inst)) {
+                this.trainingWeightSeenByModel += inst.weight();
+                this.observedClassDistribution.addToValue((int) inst.classValue(), inst.weight());
+                training[numTraining++] = inst;
+            }
+        }
+        if (numTraining == 0) {
+            return;
+        }
+        int numAttributes = training[0].numAttributes();
+        for (int i = 0; i < numAttributes - 1; i++) {
+            AttributeClassObserver obs = this.attributeObservers.get(i);
+            for (int j = 0; j < numTraining; j++) {
+                Instance inst = training[j];
+                int instAttIndex = modelAttIndexToInstanceAttIndex(i, inst);
+                if (obs == null) {
+                    obs = inst.attribute(instAttIndex).isNominal() ? newNominalClassObserver()
+                            : newNumericClassObserver();
+                    this.attributeObservers.set(i, obs);
+                }
+                obs.observeAttributeClass(inst.value(instAttIndex), (int) inst.classValue(), inst.weight());
+            }
+        }
+    }
+
+    /**
+     * Predicts a block of instances one attribute at a time, the class priors
+     * are computed and every observer is looked up once per block.
+     */
+    @Override
+    public double[][] getVotesForInstances(Instance[] insts, int from, int to) {
+        int numClasses = this.observedClassDistribution.numValues();
+        double[][] votes = new double[to - from][numClasses];
+        if (to == from) {
+            return votes;
+        }
+        double observedClassSum = this.observedClassDistribution.sumOfValues();
+        for (int classIndex = 0; classIndex < numClasses; classIndex++) {
+            double prior = this.observedClassDistribution.getValue(classIndex)
+                    / observedClassSum;
+            for (int i = 0; i < votes.length; i++) {
+                votes[i][classIndex] = prior;
+            }
+        }
+        int numAttributes = insts[from].numAttributes();
+        for (int attIndex = 0; attIndex < numAttributes - 1; attIndex++) {
+            AttributeClassObserver obs = this.attributeObservers.get(attIndex);
+            if (obs == null) {
+                continue;
+            }
+            for (int i = from; i < to; i++) {
+                Instance inst = insts[i];
+                int instAttIndex = modelAttIndexToInstanceAttIndex(attIndex, inst);
+                if (!inst.isMissing(instAttIndex)) {
+                    double value = inst.value(instAttIndex);
+                    double[] instVotes = votes[i - from];
+                    for (int classIndex = 0; classIndex < numClasses; classIndex++) {
+                        instVotes[classIndex] *= obs.probabilityOfAttributeValueGivenClass(value, classIndex);
+                    }
+                }
+            }
+        }
+        return votes;
+    }
+
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
         return null;
@@ -130,7 +212,21 @@ public class NaiveBayes extends AbstractClassifier {
     public static double[] doNaiveBayesPrediction(Instance inst,
             DoubleVector observedClassDistribution,
             AutoExpandVector<AttributeClassObserver> attributeObservers) {
-        double[] votes = new double[observedClassDistribution.numValues()];
+        return doNaiveBayesPrediction(inst, observedClassDistribution,
+                attributeObservers, null);
+    }
+
+    /**
+     * Naive Bayes prediction into the given array if it has one entry per
+     * observed class, or into a new one.
+     */
+    public static double[] doNaiveBayesPrediction(Instance inst,
+            DoubleVector observedClassDistribution,
+            AutoExpandVector<AttributeClassObserver> attributeObservers,
+            double[] votes) {
+        if (votes == null || votes.length != observedClassDistribution.numValues()) {
+            votes = new double[observedClassDistribution.numValues()];
+        }
         double observedClassSum = observedClassDistribution.sumOfValues();
         for (int classIndex = 0; classIndex < votes.length; classIndex++) {
             votes[classIndex] = observedClassDistribution.getValue(classIndex)
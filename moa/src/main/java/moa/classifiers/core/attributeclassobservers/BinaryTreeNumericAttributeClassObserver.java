@@ -21,6 +21,8 @@
 package moa.classifiers.core.attributeclassobservers;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import com.github.javacliparser.FlagOption;
 import moa.classifiers.core.AttributeSplitSuggestion;
 import moa.classifiers.core.conditionaltests.NumericAttributeBinaryTest;
 import moa.classifiers.core.splitcriteria.SplitCriterion;
@@ -34,13 +36,26 @@ import moa.tasks.TaskMonitor;
  * This observer monitors the class distribution of a given attribute.
  * Used in naive Bayes and decision trees to monitor data statistics on leaves.
  *
+ * <p>The nodes of the tree are kept in flat arrays, indexed by node, with the
+ * class counts of the values equal to the cut point of each node. The best
+ * split is found with a single in-order sweep that accumulates these counts,
+ * and ties between cut points are broken in pre-order, as a recursive search
+ * of the tree would.
+ * The tree can be kept balanced as a treap, which changes the layout of the
+ * tree but not the splits found.</p>
+ *
  * @author Richard Kirkby (rkirkby@cs.waikato.ac.nz)
  * @version $Revision: 7 $
  */
 public class BinaryTreeNumericAttributeClassObserver extends AbstractOptionHandler
         implements NumericAttributeClassObserver {
 
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
+
+    protected static final int INITIAL_CAPACITY = 8;
+
+    public FlagOption balancedOption = new FlagOption("balanced", 'b',
+            "Keep the tree balanced as a treap, so values arriving in order do not make it deep.");
 
     public class Node implements Serializable {
 
@@ -82,20 +97,173 @@ public class BinaryTreeNumericAttributeClassObserver extends AbstractOptionHandl
         }
     }
 
-    public Node root = null;
+    // the nodes, with -1 for no child
+    protected double[] cutPoints = new double[INITIAL_CAPACITY];
+
+    protected int[] leftChildren = new int[INITIAL_CAPACITY];
+
+    protected int[] rightChildren = new int[INITIAL_CAPACITY];
+
+    // the class counts of the values equal to the cut point, numClasses per node
+    protected double[] classCounts = new double[0];
+
+    protected double[] totalClassCounts = new double[0];
+
+    protected int numClasses = 0;
+
+    protected int numNodes = 0;
+
+    protected int rootNode = -1;
+
+    // the path of an insert or the stack of the in-order sweep, two ints per node
+    protected transient int[] stack;
 
     @Override
     public void observeAttributeClass(double attVal, int classVal, double weight) {
         if (Double.isNaN(attVal)) { //Instance.isMissingValue(attVal)
         } else {
-            if (this.root == null) {
-                this.root = new Node(attVal, classVal, weight);
+            if (classVal >= this.numClasses) {
+                growClasses(classVal + 1);
+            }
+            this.totalClassCounts[classVal] += weight;
+            int depth = 0;
+            int parent = -1;
+            int node = this.rootNode;
+            while (node >= 0) {
+                double cutPoint = this.cutPoints[node];
+                if (attVal == cutPoint) {
+                    this.classCounts[node * this.numClasses + classVal] += weight;
+                    return;
+                }
+                if (this.balancedOption.isSet()) {
+                    push(depth++, node, 0);
+                }
+                parent = node;
+                node = attVal < cutPoint ? this.leftChildren[node] : this.rightChildren[node];
+            }
+            node = addNode(attVal);
+            this.classCounts[node * this.numClasses + classVal] += weight;
+            if (parent < 0) {
+                this.rootNode = node;
+            } else if (attVal < this.cutPoints[parent]) {
+                this.leftChildren[parent] = node;
             } else {
-                this.root.insertValue(attVal, classVal, weight);
+                this.rightChildren[parent] = node;
+            }
+            if (this.balancedOption.isSet()) {
+                rotateUp(node, depth);
             }
         }
     }
 
+    /**
+     * Rotates a new node up the path of its insert while its priority is
+     * higher than the priority of its parent.
+     *
+     * @param node the new node
+     * @param depth the length of the path on the stack
+     */
+    protected void rotateUp(int node, int depth) {
+        while (depth > 0 && priority(node) > priority(this.stack[2 * (depth - 1)])) {
+            int parent = this.stack[2 * --depth];
+            if (this.leftChildren[parent] == node) {
+                this.leftChildren[parent] = this.rightChildren[node];
+                this.rightChildren[node] = parent;
+            } else {
+                this.rightChildren[parent] = this.leftChildren[node];
+                this.leftChildren[node] = parent;
+            }
+            if (depth == 0) {
+                this.rootNode = node;
+            } else {
+                int grandparent = this.stack[2 * (depth - 1)];
+                if (this.leftChildren[grandparent] == parent) {
+                    this.leftChildren[grandparent] = node;
+                } else {
+                    this.rightChildren[grandparent] = node;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the treap priority of a node, a hash of its index so that the tree
+     * only depends on the values observed.
+     */
+    protected static int priority(int node) {
+        int h = node * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Puts a node on the stack, with the number of nodes the in-order sweep
+     * visited before it.
+     */
+    protected void push(int depth, int node, int numVisited) {
+        if (this.stack == null) {
+            this.stack = new int[2 * INITIAL_CAPACITY];
+        } else if (2 * depth == this.stack.length) {
+            this.stack = Arrays.copyOf(this.stack, 4 * depth);
+        }
+        this.stack[2 * depth] = node;
+        this.stack[2 * depth + 1] = numVisited;
+    }
+
+    protected int addNode(double cutPoint) {
+        if (this.numNodes == this.cutPoints.length) {
+            int capacity = 2 * this.numNodes;
+            this.cutPoints = Arrays.copyOf(this.cutPoints, capacity);
+            this.leftChildren = Arrays.copyOf(this.leftChildren, capacity);
+            this.rightChildren = Arrays.copyOf(this.rightChildren, capacity);
+            this.classCounts = Arrays.copyOf(this.classCounts, capacity * this.numClasses);
+        }
+        int node = this.numNodes++;
+        this.cutPoints[node] = cutPoint;
+        this.leftChildren[node] = -1;
+        this.rightChildren[node] = -1;
+        return node;
+    }
+
+    protected void growClasses(int newNumClasses) {
+        double[] counts = new double[this.cutPoints.length * newNumClasses];
+        for (int node = 0; node < this.numNodes; node++) {
+            System.arraycopy(this.classCounts, node * this.numClasses, counts,
+                    node * newNumClasses, this.numClasses);
+        }
+        this.classCounts = counts;
+        this.totalClassCounts = Arrays.copyOf(this.totalClassCounts, newNumClasses);
+        this.numClasses = newNumClasses;
+    }
+
+    /**
+     * Gets the tree as linked nodes, with the class counts of the values up
+     * to and after the cut point of each node in its subtree. The nodes are
+     * built on every call.
+     *
+     * @return the root node, or null if no values were observed
+     */
+    public Node getRoot() {
+        return this.rootNode < 0 ? null : buildNode(this.rootNode);
+    }
+
+    protected Node buildNode(int index) {
+        Node node = new Node(this.cutPoints[index], 0, 0.0);
+        for (int i = 0; i < this.numClasses; i++) {
+            node.classCountsLeft.addToValue(i, this.classCounts[index * this.numClasses + i]);
+        }
+        if (this.leftChildren[index] >= 0) {
+            node.left = buildNode(this.leftChildren[index]);
+            node.classCountsLeft.addValues(node.left.classCountsLeft);
+            node.classCountsLeft.addValues(node.left.classCountsRight);
+        }
+        if (this.rightChildren[index] >= 0) {
+            node.right = buildNode(this.rightChildren[index]);
+            node.classCountsRight.addValues(node.right.classCountsLeft);
+            node.classCountsRight.addValues(node.right.classCountsRight);
+        }
+        return node;
+    }
+
     @Override
     public double probabilityOfAttributeValueGivenClass(double attVal,
             int classVal) {
@@ -107,62 +275,43 @@ public class BinaryTreeNumericAttributeClassObserver extends AbstractOptionHandl
     public AttributeSplitSuggestion getBestEvaluatedSplitSuggestion(
             SplitCriterion criterion, double[] preSplitDist, int attIndex,
             boolean binaryOnly) {
-        return searchForBestSplitOption(this.root, null, null, null, null, false,
-                criterion, preSplitDist, attIndex);
-    }
-
-    protected AttributeSplitSuggestion searchForBestSplitOption(
-            Node currentNode, AttributeSplitSuggestion currentBestOption,
-            double[] actualParentLeft,
-            double[] parentLeft, double[] parentRight, boolean leftChild,
-            SplitCriterion criterion, double[] preSplitDist, int attIndex) {
-        if (currentNode == null) {
-            return currentBestOption;
-        }
-        DoubleVector leftDist = new DoubleVector();
-        DoubleVector rightDist = new DoubleVector();
-        if (parentLeft == null) {
-            leftDist.addValues(currentNode.classCountsLeft);
-            rightDist.addValues(currentNode.classCountsRight);
-        } else {
-            leftDist.addValues(parentLeft);
-            rightDist.addValues(parentRight);
-            if (leftChild) {
-                //get the exact statistics of the parent value
-                DoubleVector exactParentDist = new DoubleVector();
-                exactParentDist.addValues(actualParentLeft);
-                exactParentDist.subtractValues(currentNode.classCountsLeft);
-                exactParentDist.subtractValues(currentNode.classCountsRight);
-
-                // move the subtrees
-                leftDist.subtractValues(currentNode.classCountsRight);
-                rightDist.addValues(currentNode.classCountsRight);
-
-                // move the exact value from the parent
-                rightDist.addValues(exactParentDist);
-                leftDist.subtractValues(exactParentDist);
-
-            } else {
-                leftDist.addValues(currentNode.classCountsLeft);
-                rightDist.subtractValues(currentNode.classCountsLeft);
+        AttributeSplitSuggestion bestOption = null;
+        double[] leftDist = new double[this.numClasses];
+        double[] rightDist = new double[this.numClasses];
+        double[][] postSplitDists = new double[][]{leftDist, rightDist};
+        // in-order sweep, the left distribution accumulates the cut points passed
+        int depth = 0;
+        int numVisited = 0;
+        int bestRank = -1;
+        int node = this.rootNode;
+        while (node >= 0 || depth > 0) {
+            while (node >= 0) {
+                push(depth++, node, numVisited);
+                node = this.leftChildren[node];
             }
+            depth--;
+            node = this.stack[2 * depth];
+            // the position of the node in pre-order, the order in which a
+            // recursive search meets the cut points, to break ties the same way
+            int rank = this.stack[2 * depth + 1] + depth;
+            int offset = node * this.numClasses;
+            for (int i = 0; i < this.numClasses; i++) {
+                leftDist[i] += this.classCounts[offset + i];
+                rightDist[i] = this.totalClassCounts[i] - leftDist[i];
+            }
+            double merit = criterion.getMeritOfSplit(preSplitDist, postSplitDists);
+            if ((bestOption == null) || (merit > bestOption.merit)
+                    || (merit == bestOption.merit && rank < bestRank)) {
+                bestRank = rank;
+                bestOption = new AttributeSplitSuggestion(
+                        new NumericAttributeBinaryTest(attIndex,
+                        this.cutPoints[node], true),
+                        new double[][]{leftDist.clone(), rightDist.clone()}, merit);
+            }
+            numVisited++;
+            node = this.rightChildren[node];
         }
-        double[][] postSplitDists = new double[][]{leftDist.getArrayRef(),
-            rightDist.getArrayRef()};
-        double merit = criterion.getMeritOfSplit(preSplitDist, postSplitDists);
-        if ((currentBestOption == null) || (merit > currentBestOption.merit)) {
-            currentBestOption = new AttributeSplitSuggestion(
-                    new NumericAttributeBinaryTest(attIndex,
-                    currentNode.cut_point, true), postSplitDists, merit);
-
-        }
-        currentBestOption = searchForBestSplitOption(currentNode.left,
-                currentBestOption, currentNode.classCountsLeft.getArrayRef(), postSplitDists[0], postSplitDists[1], true,
-                criterion, preSplitDist, attIndex);
-        currentBestOption = searchForBestSplitOption(currentNode.right,
-                currentBestOption, currentNode.classCountsLeft.getArrayRef(), postSplitDists[0], postSplitDists[1], false,
-                criterion, preSplitDist, attIndex);
-        return currentBestOption;
+        return bestOption;
     }
 
     @Override
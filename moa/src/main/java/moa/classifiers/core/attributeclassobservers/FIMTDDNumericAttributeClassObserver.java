@@ -32,9 +32,15 @@ import moa.classifiers.core.conditionaltests.NumericAttributeBinaryTest;
 import moa.classifiers.core.splitcriteria.SplitCriterion;
 import moa.core.DoubleVector;
 import moa.core.ObjectRepository;
+import moa.options.AbstractOptionHandler;
 import moa.tasks.TaskMonitor;
 
-public class FIMTDDNumericAttributeClassObserver extends BinaryTreeNumericAttributeClassObserver implements NumericAttributeClassObserver {
+/**
+ * Class for observing the target of a regression for a numeric attribute using an extended binary search tree,
+ * as in FIMT-DD. Keeps its own tree of linked nodes rather than extending the array based
+ * BinaryTreeNumericAttributeClassObserver, whose storage and options it does not use.
+ */
+public class FIMTDDNumericAttributeClassObserver extends AbstractOptionHandler implements NumericAttributeClassObserver {
 
     private static final long serialVersionUID = 1L;
 
@@ -122,6 +128,16 @@ public class FIMTDDNumericAttributeClassObserver extends BinaryTreeNumericAttrib
         }
     }
 
+    @Override
+    public void observeAttributeClass(double attVal, int classVal, double weight) {
+        observeAttributeClass(attVal, (double) classVal, weight);
+    }
+
+    @Override
+    public void observeAttributeTarget(double attVal, double target) {
+        throw new UnsupportedOperationException("Not supported yet.");
+    }
+
     @Override
     public double probabilityOfAttributeValueGivenClass(double attVal,
             int classVal) {
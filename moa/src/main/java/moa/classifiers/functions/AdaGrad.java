@@ -108,12 +108,13 @@ public class AdaGrad extends SGD{
     }
 
     /**
-     * Trains the classifier with the given instance.
+     * Updates the model with a training instance, with a learning rate for
+     * every feature.
      *
-     * @param instance    the new training instance to include in the model
+     * @param instance    the training instance
      */
     @Override
-    public void trainOnInstanceImpl(Instance instance) {
+    protected void update(Instance instance) {
 
         if (m_weights == null) {
             m_weights = new DoubleVector();
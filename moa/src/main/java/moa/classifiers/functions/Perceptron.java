@@ -25,6 +25,8 @@ import moa.core.Utils;
 import com.github.javacliparser.FloatOption;
 import com.yahoo.labs.samoa.instances.Instance;
 
+import java.util.Arrays;
+
 /**
  * Single perceptron classifier.
  *
@@ -66,15 +68,7 @@ public class Perceptron extends AbstractClassifier {
 
         //Init Perceptron
         if (this.reset == true) {
-            this.reset = false;
-            this.numberAttributes = inst.numAttributes();
-            this.numberClasses = inst.numClasses();
-            this.weightAttribute = new double[inst.numClasses()][inst.numAttributes()];
-            for (int i = 0; i < inst.numClasses(); i++) {
-                for (int j = 0; j < inst.numAttributes(); j++) {
-                    weightAttribute[i][j] = 0.2 * this.classifierRandom.nextDouble() - 0.1;
-                }
-            }
+            initWeights(inst);
         }
 
         double[] preds = new double[inst.numClasses()];
@@ -94,6 +88,63 @@ public class Perceptron extends AbstractClassifier {
         }
     }
 
+    protected void initWeights(Instance inst) {
+        this.reset = false;
+        this.numberAttributes = inst.numAttributes();
+        this.numberClasses = inst.numClasses();
+        this.weightAttribute = new double[inst.numClasses()][inst.numAttributes()];
+        for (int i = 0; i < inst.numClasses(); i++) {
+            for (int j = 0; j < inst.numAttributes(); j++) {
+                weightAttribute[i][j] = 0.2 * this.classifierRandom.nextDouble() - 0.1;
+            }
+        }
+    }
+
+    /**
+     * Trains on a block of instances in order, the input values of every
+     * instance are read once into an array the updates work on.
+     */
+    @Override
+    public void trainOnInstances(Instance[] insts, int from, int to) {
+        double learningRatio = learningRatioOption.getValue();
+        double[] inputs = new double[0];
+        double[] preds = new double[0];
+        for (int n = from; n < to; n++) {
+            Instance inst = insts[n];
+            if (!isTrainingInstance(inst)) {
+                continue;
+            }
+            this.trainingWeightSeenByModel += inst.weight();
+            if (this.reset == true) {
+                initWeights(inst);
+            }
+            int numInputs = inst.numAttributes() - 1;
+            int numClasses = inst.numClasses();
+            if (inputs.length != numInputs) {
+                inputs = new double[numInputs];
+            }
+            if (preds.length != numClasses) {
+                preds = new double[numClasses];
+            }
+            for (int j = 0; j < numInputs; j++) {
+                inputs[j] = inst.valueInputAttribute(j);
+            }
+            for (int i = 0; i < numClasses; i++) {
+                preds[i] = prediction(inputs, i);
+            }
+            int actualClass = (int) inst.classValue();
+            for (int i = 0; i < numClasses; i++) {
+                double actual = (i == actualClass) ? 1.0 : 0.0;
+                double delta = (actual - preds[i]) * preds[i] * (1 - preds[i]);
+                double[] weights = this.weightAttribute[i];
+                for (int j = 0; j < numInputs; j++) {
+                    weights[j] += learningRatio * delta * inputs[j];
+                }
+                weights[numInputs] += learningRatio * delta;
+            }
+        }
+    }
+
     public void setWeights(double[][] w) {
         //Perceptron Hoeffding Tree
         this.weightAttribute = w;
@@ -123,9 +174,60 @@ public class Perceptron extends AbstractClassifier {
         return 1.0 / (1.0 + Math.exp(-sum));
     }
 
+    /**
+     * Same as {@link #prediction(Instance, int)} on the input values of an instance.
+     */
+    protected double prediction(double[] inputs, int classVal) {
+        double[] weights = weightAttribute[classVal];
+        double sum = 0.0;
+        for (int i = 0; i < inputs.length; i++) {
+            sum += weights[i] * inputs[i];
+        }
+        sum += weights[inputs.length];
+        return 1.0 / (1.0 + Math.exp(-sum));
+    }
+
+    @Override
+    public double[][] getVotesForInstances(Instance[] insts, int from, int to) {
+        double[][] votes = new double[to - from][];
+        double[] inputs = new double[0];
+        for (int n = from; n < to; n++) {
+            Instance inst = insts[n];
+            double[] instVotes = new double[inst.numClasses()];
+            if (this.reset == false) {
+                int numInputs = inst.numAttributes() - 1;
+                if (inputs.length != numInputs) {
+                    inputs = new double[numInputs];
+                }
+                for (int j = 0; j < numInputs; j++) {
+                    inputs[j] = inst.valueInputAttribute(j);
+                }
+                for (int i = 0; i < instVotes.length; i++) {
+                    instVotes[i] = prediction(inputs, i);
+                }
+                try {
+                    Utils.normalize(instVotes);
+                } catch (Exception e) {
+                    // ignore all zero votes error
+                }
+            }
+            votes[n - from] = instVotes;
+        }
+        return votes;
+    }
+
     @Override
     public double[] getVotesForInstance(Instance inst) {
-        double[] votes = new double[inst.numClasses()];
+        return getVotesForInstance(inst, null);
+    }
+
+    @Override
+    public double[] getVotesForInstance(Instance inst, double[] votes) {
+        if (votes == null || votes.length != inst.numClasses()) {
+            votes = new double[inst.numClasses()];
+        } else {
+            Arrays.fill(votes, 0);
+        }
         if (this.reset == false) {
             for (int i = 0; i < votes.length; i++) {
                 votes[i] = prediction(inst, i);
@@ -37,6 +37,8 @@ import moa.classifiers.Regressor;
 import com.yahoo.labs.samoa.instances.Instance;
 import moa.core.Utils;
 
+import java.util.Arrays;
+
 /**
 <!-- globalinfo-start -->
  * Implements stochastic gradient descent for learning various linear models (binary class SVM, binary class logistic regression and linear regression). 
@@ -201,6 +203,24 @@ public class SGD extends AbstractClassifier implements Regressor{
         return (result);
     }
 
+    /**
+     * Same as {@link #dotProd(Instance, DoubleVector, int)} on the array of the weights.
+     */
+    protected static double dotProd(Instance inst, double[] weights, int classIndex) {
+        double result = 0;
+        int n1 = inst.numValues();
+        for (int p1 = 0; p1 < n1; p1++) {
+            int ind1 = inst.index(p1);
+            if (ind1 >= weights.length) {
+                break;
+            }
+            if (ind1 != classIndex && !inst.isMissingSparse(p1)) {
+                result += inst.valueSparse(p1) * weights[ind1];
+            }
+        }
+        return result;
+    }
+
     @Override
     public void resetLearningImpl() {
         reset();
@@ -216,58 +236,117 @@ public class SGD extends AbstractClassifier implements Regressor{
      */
     @Override
     public void trainOnInstanceImpl(Instance instance) {
+        update(instance);
+    }
 
+    /**
+     * Trains on a block of instances in order.
+     *
+     * @param insts 	the training instances
+     * @param from 	the index of the first instance of the block
+     * @param to 	the index after the last instance of the block
+     */
+    @Override
+    public void trainOnInstances(Instance[] insts, int from, int to) {
+        for (int i = from; i < to; i++) {
+            Instance instance = insts[i];
+            if (isTrainingInstance(instance)) {
+                this.trainingWeightSeenByModel += instance.weight();
+                update(instance);
+            }
+        }
+    }
+
+    /**
+     * Updates the model with a training instance, the learning rule shared
+     * by training on single instances and on blocks. Works on the array of
+     * the weights instead of going through the vector for every weight.
+     *
+     * @param instance 	the training instance
+     */
+    protected void update(Instance instance) {
         if (m_weights == null) {
-            m_weights = new DoubleVector(); 
+            m_weights = new DoubleVector();
             m_bias = 0.0;
         }
+        if (instance.classIsMissing()) {
+            return;
+        }
+        int classIndex = instance.classIndex();
+        double[] weights = m_weights.getArrayRef();
+        double wx = dotProd(instance, weights, classIndex);
+
+        double y;
+        double z;
+        if (instance.classAttribute().isNominal()) {
+            y = (instance.classValue() == 0) ? -1 : 1;
+            z = y * (wx + m_bias);
+        } else {
+            y = instance.classValue();
+            z = y - (wx + m_bias);
+            y = 1;
+        }
 
-        if (!instance.classIsMissing()) {
-
-            double wx = dotProd(instance, m_weights, instance.classIndex());
-
-            double y;
-            double z;
-            if (instance.classAttribute().isNominal()) {
-                y = (instance.classValue() == 0) ? -1 : 1;
-                z = y * (wx + m_bias);
-            } else {
-                y = instance.classValue();
-                z = y - (wx + m_bias);
-                y = 1;
-            }
-
-            // Compute multiplier for weight decay
-            double multiplier = 1.0;
-            if (m_numInstances == 0) {
-                multiplier = 1.0 - (m_learningRate * m_lambda) / m_t;
-            } else {
-                multiplier = 1.0 - (m_learningRate * m_lambda) / m_numInstances;
-            }
-            for (int i = 0; i < m_weights.numValues(); i++) {
-                m_weights.setValue(i,m_weights.getValue (i) * multiplier);
-            }
-
-            // Only need to do the following if the loss is non-zero
-            if (m_loss != HINGE || (z < 1)) {
-
-                // Compute Factor for updates
-                double factor = m_learningRate * y * dloss(z);
+        // Compute multiplier for weight decay
+        double multiplier;
+        if (m_numInstances == 0) {
+            multiplier = 1.0 - (m_learningRate * m_lambda) / m_t;
+        } else {
+            multiplier = 1.0 - (m_learningRate * m_lambda) / m_numInstances;
+        }
+        for (int k = 0; k < weights.length; k++) {
+            weights[k] *= multiplier;
+        }
 
-                // Update coefficients for attributes
-                int n1 = instance.numValues();
-                for (int p1 = 0; p1 < n1; p1++) {
-                    int indS = instance.index(p1);
-                    if (indS != instance.classIndex() && !instance.isMissingSparse(p1)) {
+        // Only need to do the following if the loss is non-zero
+        if (m_loss != HINGE || (z < 1)) {
+
+            // Compute Factor for updates
+            double factor = m_learningRate * y * dloss(z);
+
+            // Update coefficients for attributes
+            int n1 = instance.numValues();
+            for (int p1 = 0; p1 < n1; p1++) {
+                int indS = instance.index(p1);
+                if (indS != classIndex && !instance.isMissingSparse(p1)) {
+                    if (indS < weights.length) {
+                        weights[indS] += factor * instance.valueSparse(p1);
+                    } else {
+                        // grows the weights
                         m_weights.addToValue(indS, factor * instance.valueSparse(p1));
+                        weights = m_weights.getArrayRef();
                     }
                 }
-
-                // update the bias
-                m_bias += factor;
             }
-            m_t++;
+
+            // update the bias
+            m_bias += factor;
+        }
+        m_t++;
+    }
+
+    /**
+     * Calculates the class membership probabilities for a block of test
+     * instances, reading the weights from their array.
+     *
+     * @param insts 	the instances to be classified
+     * @param from 	the index of the first instance of the block
+     * @param to 	the index after the last instance of the block
+     * @return 		predicted class probability distributions
+     */
+    @Override
+    public double[][] getVotesForInstances(Instance[] insts, int from, int to) {
+        if (m_weights == null) {
+            return super.getVotesForInstances(insts, from, to);
+        }
+        double[] weights = m_weights.getArrayRef();
+        double[][] votes = new double[to - from][];
+        for (int i = from; i < to; i++) {
+            Instance inst = insts[i];
+            double z = dotProd(inst, weights, inst.classIndex()) + m_bias;
+            votes[i - from] = votesForMargin(inst, z);
         }
+        return votes;
     }
 
     /**
@@ -283,13 +362,41 @@ public class SGD extends AbstractClassifier implements Regressor{
         if (m_weights == null) {
             return new double[inst.numClasses()];
         }
-        double[] result = (inst.classAttribute().isNominal())
-                ? new double[2]
-                : new double[1];
-
 
         double wx = dotProd(inst, m_weights, inst.classIndex());// * m_wScale;
         double z = (wx + m_bias);
+        return votesForMargin(inst, z);
+    }
+
+    @Override
+    public double[] getVotesForInstance(Instance inst, double[] votes) {
+        if (m_weights == null) {
+            return getVotesForInstance(inst);
+        }
+        double z = dotProd(inst, m_weights, inst.classIndex()) + m_bias;
+        return votesForMargin(inst, z, votes);
+    }
+
+    /**
+     * Turns the output of the linear model for an instance into votes.
+     */
+    protected double[] votesForMargin(Instance inst, double z) {
+        return votesForMargin(inst, z, null);
+    }
+
+    /**
+     * Turns the output of the linear model for an instance into votes,
+     * reusing the given array if it has the right length.
+     */
+    protected double[] votesForMargin(Instance inst, double z, double[] votes) {
+        int length = (inst.classAttribute().isNominal()) ? 2 : 1;
+        double[] result;
+        if (votes != null && votes.length == length) {
+            result = votes;
+            Arrays.fill(result, 0);
+        } else {
+            result = new double[length];
+        }
 
         if (inst.classAttribute().isNumeric()) {
             result[0] = z;
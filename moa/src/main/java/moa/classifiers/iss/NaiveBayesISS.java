@@ -30,9 +30,12 @@ import moa.classifiers.AbstractClassifier;
 import moa.classifiers.core.attributeclassobservers.AttributeClassObserver;
 import moa.classifiers.core.attributeclassobservers.GaussianNumericAttributeClassObserver;
 import moa.classifiers.core.attributeclassobservers.NominalAttributeClassObserver;
+import moa.classifiers.iss.ranking.BackgroundRanking;
 import moa.classifiers.iss.ranking.InfoGainRanking;
 import moa.classifiers.iss.ranking.MeanEuclideanDistanceRanking;
 import moa.classifiers.iss.ranking.RankingFunction;
+import moa.classifiers.iss.ranking.SharedRanking;
+import moa.classifiers.iss.ranking.SharedRankingLearner;
 import moa.classifiers.iss.ranking.SymmetricUncertaintyRanking;
 import moa.core.*;
 
@@ -40,6 +43,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * Naive Bayes incremental learner with iterative subset selection.
@@ -52,7 +56,7 @@ import java.io.IOException;
  * @author Lanqin Yuan
  * @version 1.0
  */
-public class NaiveBayesISS extends AbstractClassifier
+public class NaiveBayesISS extends AbstractClassifier implements ByteSizeEstimator, SharedRankingLearner
 {
     private static final long serialVersionUID = 1L;
 
@@ -69,6 +73,16 @@ public class NaiveBayesISS extends AbstractClassifier
             new String[]{"Symmetric Uncertainty","Information gain","Average Euclidean distance"
             }, 0);
 
+    public MultiChoiceOption rerankingModeOption = new MultiChoiceOption(
+            "rerankingMode", 'e',
+            "How features are re-ranked when the reselection interval has passed.",
+            new String[]{"Synchronous","Background","FixedLag"},
+            new String[]{"Re-rank while predicting the instance","Re-rank on a background thread and apply the ranking once it is done",
+                    "Re-rank on a background thread and apply the ranking a fixed number of instances later, for repeatable results"
+        }, 0);
+    public IntOption rerankingLagOption = new IntOption( "rerankingLag", 'l', "The number of instances after re-ranking started that the new ranking is applied at in FixedLag mode.", 1, 0, Integer.MAX_VALUE);
+    public StringOption sharedRankingKeyOption = new StringOption("sharedRankingKey", 's', "Name of the stream to share the ranking window and statistics under, learners of one run over the stream with the same key, window size and ranking function update them once for all of them. Only learners run together, e.g. by EvaluatePrequentialMultiLearner, share rankings. An empty field keeps them to this learner.", "");
+
 
     // accuracy difference dump
     public StringOption outputNameOption = new StringOption("outputName",'n',"File name for output of accuracy difference as features are removed from subsets. An empty field produces no dump file.","");
@@ -78,6 +92,12 @@ public class NaiveBayesISS extends AbstractClassifier
     // window used for ranking of features
     protected Instances rankingWindow;
     protected RankingFunction rankingFunction = null;
+    // subscription the ranking function is replaced by when the ranking is shared, null otherwise
+    protected SharedRanking.Subscription sharedRanking = null;
+    // shared rankings of the run this learner is part of, null if it runs on its own
+    protected transient SharedRanking.Scope sharedRankingScope = null;
+    // wraps the ranking function when re-ranking in the background, null otherwise
+    protected BackgroundRanking backgroundRanking = null;
 
 
     protected int rankedFeatureCount = 0;
@@ -96,14 +116,29 @@ public class NaiveBayesISS extends AbstractClassifier
     protected int reselectionCounter = 0;
     protected int decayCounter = 0;
 
-    // array to keep track of what each subset predicted
+    // array to keep track of what each subset predicted, reused across instances
     protected int[] subsetClassPredictions;
+    // class log-probabilities of the subset being predicted
+    protected transient double[] logVotes;
+    // subset predictions of each instance of the last block predicted, restored when training on the block
+    protected transient Instance[] block;
+    protected transient int blockFrom;
+    protected transient int[][] blockSubsetPredictions;
 
     protected boolean initialised = false;
 
     protected DoubleVector observedClassDistribution;
     protected AutoExpandVector<AttributeClassObserver> attributeObservers;
 
+    // sparse instances only pass their stored values to the observers, the zeros they leave out are passed on
+    // as one weighted observation per class just before an attribute is used for prediction
+    // weight of the sparse instances of each class, null until the first one
+    protected double[] sparseClassWeights;
+    // [modelAttIndex * numClasses + class] weight of the sparse instances storing the attribute,
+    // and weight of the zeros already passed to the observer of the attribute
+    protected double[] storedWeights;
+    protected double[] observedZeroWeights;
+
     @Override
     public String getPurposeString() {
         return "Naive Bayes with ISS feature selection classifier.";
@@ -210,8 +245,11 @@ public class NaiveBayesISS extends AbstractClassifier
             }
         }
 
-        // set best ranked features
-        bestFeatures = rankingFunction.rankFeatures(rankingWindow, bestFeatures);
+        // set best ranked features, the background ranking gets a copy of the header as the window keeps changing
+        if (backgroundRanking != null)
+            backgroundRanking.submit(new Instances(rankingWindow, 0), bestFeatures);
+        else
+            bestFeatures = rankingFunction.rankFeatures(rankingWindow, bestFeatures);
         //System.out.println(Arrays.toString(bestFeatures));
     }
 
@@ -263,6 +301,22 @@ public class NaiveBayesISS extends AbstractClassifier
                 break;
         }
         rankingFunction.initialise(rankedFeatureCount,rankingWindow.classIndex());
+
+        // share the window and statistics with the other learners on the same stream if set
+        if (!sharedRankingKeyOption.getValue().isEmpty() && sharedRankingScope != null)
+        {
+            sharedRanking = sharedRankingScope.subscribe(sharedRankingKeyOption.getValue(), rankingWindowSizeOption.getValue(), rankingFunction);
+            sharedRanking.initialise(rankedFeatureCount,rankingWindow.classIndex());
+            rankingFunction = sharedRanking;
+        }
+
+        // rank in the background if set, the wrapper logs the window from now on
+        if (rerankingModeOption.getChosenIndex() > 0)
+        {
+            int lag = rerankingModeOption.getChosenIndex() == 2 ? rerankingLagOption.getValue() : -1;
+            backgroundRanking = new BackgroundRanking(rankingFunction, lag);
+            rankingFunction = backgroundRanking;
+        }
     }
 
 
@@ -271,11 +325,30 @@ public class NaiveBayesISS extends AbstractClassifier
     public void resetLearningImpl()
     {
         this.rankingWindow = null;
+        if (this.backgroundRanking != null)
+        {
+            this.backgroundRanking.shutdown();
+            this.backgroundRanking = null;
+        }
+        if (this.sharedRanking != null)
+        {
+            this.sharedRanking.release();
+            this.sharedRanking = null;
+        }
         this.observedClassDistribution = new DoubleVector();
         this.attributeObservers = new AutoExpandVector<AttributeClassObserver>();
+        this.sparseClassWeights = null;
+        this.storedWeights = null;
+        this.observedZeroWeights = null;
         this.initialised = false;
     }
 
+    @Override
+    public void setSharedRankingScope(SharedRanking.Scope scope)
+    {
+        this.sharedRankingScope = scope;
+    }
+
     @Override
     public void setModelContext(InstancesHeader context)
     {
@@ -296,16 +369,17 @@ public class NaiveBayesISS extends AbstractClassifier
     public void trainOnInstanceImpl(Instance inst)
     {
         this.observedClassDistribution.addToValue((int) inst.classValue(), inst.weight());
-        for (int i = 0; i < inst.numAttributes() - 1; i++)
-        {
-            int instAttIndex = modelAttIndexToInstanceAttIndex(i, inst);
-            AttributeClassObserver obs = this.attributeObservers.get(i);
-            if (obs == null) {
-                obs = inst.attribute(instAttIndex).isNominal() ? newNominalClassObserver()
-                        : newNumericClassObserver();
-                this.attributeObservers.set(i, obs);
+        if (inst.numValues() < inst.numAttributes())
+        {
+            trainOnSparseInstance(inst);
+        }
+        else
+        {
+            for (int i = 0; i < inst.numAttributes() - 1; i++)
+            {
+                int instAttIndex = modelAttIndexToInstanceAttIndex(i, inst);
+                getAttributeObserver(i, inst).observeAttributeClass(inst.value(instAttIndex), (int) inst.classValue(), inst.weight());
             }
-            obs.observeAttributeClass(inst.value(instAttIndex), (int) inst.classValue(), inst.weight());
         }
 
         // if window is empty, initialise the window
@@ -315,13 +389,18 @@ public class NaiveBayesISS extends AbstractClassifier
         }
 
         // ranking window and ranking function handling of new instance
+        if (this.sharedRanking != null)
         {
-
-            // if window is full, delete last element in window
+            // the shared ranking keeps the window
+            this.rankingFunction.addInstance(inst);
+        }
+        else
+        {
+            // if window is full, delete oldest element in window
             if (this.rankingWindowSizeOption.getValue() <= this.rankingWindow.numInstances())
             {
-                this.rankingWindow.delete(0);
                 rankingFunction.removeInstance(this.rankingWindow.get(0));
+                this.rankingWindow.delete(0);
             }
             // add element to window
             this.rankingWindow.add(inst);
@@ -356,8 +435,84 @@ public class NaiveBayesISS extends AbstractClassifier
     }
 
 
+    /**
+     * Trains the observers on the stored values of a sparse instance only.
+     * The zeros of the other attributes are counted and passed on by observeImplicitZeros.
+     * @param inst sparse instance
+     */
+    protected void trainOnSparseInstance(Instance inst)
+    {
+        int numClasses = inst.numClasses();
+        int classValue = (int) inst.classValue();
+        if (this.sparseClassWeights == null)
+        {
+            this.sparseClassWeights = new double[numClasses];
+            this.storedWeights = new double[inst.numAttributes() * numClasses];
+            this.observedZeroWeights = new double[inst.numAttributes() * numClasses];
+        }
+        this.sparseClassWeights[classValue] += inst.weight();
+        for (int i = 0; i < inst.numValues(); i++)
+        {
+            int instAttIndex = inst.index(i);
+            if (instAttIndex == inst.classIndex())
+                continue;
+            int modelAttIndex = instAttIndex < inst.classIndex() ? instAttIndex : instAttIndex - 1;
+            this.storedWeights[modelAttIndex * numClasses + classValue] += inst.weight();
+            getAttributeObserver(modelAttIndex, inst).observeAttributeClass(inst.valueSparse(i), classValue, inst.weight());
+        }
+    }
+
+    /**
+     * Passes the zeros sparse instances left out for the given attributes to their observers, in one
+     * observation per class of the weight not passed on yet.
+     * @param inst instance giving the attribute types
+     * @param modelAttIndices attributes about to be used
+     */
+    protected void observeImplicitZeros(Instance inst, int[] modelAttIndices)
+    {
+        if (this.sparseClassWeights == null)
+            return;
+        int numClasses = this.sparseClassWeights.length;
+        for (int i = 0; i < modelAttIndices.length; i++)
+        {
+            int offset = modelAttIndices[i] * numClasses;
+            for (int c = 0; c < numClasses; c++)
+            {
+                double pendingWeight = this.sparseClassWeights[c] - this.storedWeights[offset + c] - this.observedZeroWeights[offset + c];
+                if (pendingWeight > 0)
+                {
+                    getAttributeObserver(modelAttIndices[i], inst).observeAttributeClass(0, c, pendingWeight);
+                    this.observedZeroWeights[offset + c] += pendingWeight;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the observer of an attribute, creating it if needed.
+     * @param modelAttIndex attribute index excluding the class
+     * @param inst instance giving the attribute type
+     * @return observer
+     */
+    protected AttributeClassObserver getAttributeObserver(int modelAttIndex, Instance inst)
+    {
+        AttributeClassObserver obs = this.attributeObservers.get(modelAttIndex);
+        if (obs == null) {
+            obs = inst.attribute(modelAttIndexToInstanceAttIndex(modelAttIndex, inst)).isNominal() ? newNominalClassObserver()
+                    : newNumericClassObserver();
+            this.attributeObservers.set(modelAttIndex, obs);
+        }
+        return obs;
+    }
+
     @Override
     public double[] getVotesForInstance(Instance inst)
+    {
+        return getVotesForInstance(inst, null);
+    }
+
+    @Override
+    public double[] getVotesForInstance(Instance inst, double[] votes)
     {
         // initialise stuff for first instance
         if (!initialised)
@@ -397,8 +552,21 @@ public class NaiveBayesISS extends AbstractClassifier
             }
         }
 
-        subsetClassPredictions = doNaiveBayesPrediction(inst, this.observedClassDistribution,this.attributeObservers,bestFeatures);
-        double[] finalPrediction = new double[inst.numClasses()];
+        // apply a ranking done in the background
+        if (backgroundRanking != null)
+        {
+            int[] ranked = backgroundRanking.poll();
+            if (ranked != null)
+                bestFeatures = ranked;
+        }
+
+        observeImplicitZeros(inst, bestFeatures);
+        subsetClassPredictions = doNaiveBayesPrediction(inst, bestFeatures);
+        double[] finalPrediction = votes;
+        if (finalPrediction == null || finalPrediction.length != inst.numClasses())
+            finalPrediction = new double[inst.numClasses()];
+        else
+            Arrays.fill(finalPrediction, 0);
         finalPrediction[subsetClassPredictions[bestSubsetIndex]] = 1;
 
         //System.out.println(Arrays.toString(finalPrediction));
@@ -406,6 +574,56 @@ public class NaiveBayesISS extends AbstractClassifier
         return finalPrediction;
     }
 
+    /**
+     * Predicts a block of instances one at a time, keeping the subset predictions of each instance
+     * so training on the block afterwards updates the subset accuracies as it would per instance.
+     * @param insts instances
+     * @param from index of the first instance to predict
+     * @param to index after the last instance to predict
+     * @return votes of each instance
+     */
+    @Override
+    public double[][] getVotesForInstances(Instance[] insts, int from, int to)
+    {
+        double[][] votes = new double[to - from][];
+        if (blockSubsetPredictions == null || blockSubsetPredictions.length < to - from)
+            blockSubsetPredictions = new int[to - from][];
+        for (int i = from; i < to; i++)
+        {
+            votes[i - from] = getVotesForInstance(insts[i]);
+            int[] stored = blockSubsetPredictions[i - from];
+            if (stored == null || stored.length != subsetClassPredictions.length)
+                stored = blockSubsetPredictions[i - from] = new int[subsetClassPredictions.length];
+            System.arraycopy(subsetClassPredictions, 0, stored, 0, stored.length);
+        }
+        block = insts;
+        blockFrom = from;
+        return votes;
+    }
+
+    /**
+     * Trains on a block of instances, using the subset predictions kept for them if the block was predicted last.
+     * @param insts instances
+     * @param from index of the first instance to train on
+     * @param to index after the last instance to train on
+     */
+    @Override
+    public void trainOnInstances(Instance[] insts, int from, int to)
+    {
+        if (insts != block || from < blockFrom || to - blockFrom > blockSubsetPredictions.length)
+        {
+            super.trainOnInstances(insts, from, to);
+            return;
+        }
+        block = null;
+        for (int i = from; i < to; i++)
+        {
+            int[] stored = blockSubsetPredictions[i - blockFrom];
+            System.arraycopy(stored, 0, subsetClassPredictions, 0, Math.min(stored.length, subsetClassPredictions.length));
+            trainOnInstance(insts[i]);
+        }
+    }
+
     protected void decayCounts()
     {
         // decay counts based on option
@@ -422,6 +640,19 @@ public class NaiveBayesISS extends AbstractClassifier
         return null;
     }
 
+    /**
+     * Estimates the size of the model from the ranking window, the attribute statistics hardly grow once every
+     * value has been seen.
+     * @return estimated size in bytes
+     */
+    @Override
+    public int estimateByteSize()
+    {
+        if (this.rankingWindow == null)
+            return 0;
+        return this.rankingWindow.numInstances() * (8 * this.rankingWindow.numAttributes() + 48);
+    }
+
     @Override
     public void getModelDescription(StringBuilder out, int indent)
     {
@@ -464,49 +695,59 @@ public class NaiveBayesISS extends AbstractClassifier
 
     /**
      * returns an array of the class predicted at each subset size
+     * The log-likelihoods of each ranked feature are read once per feature and summed into the class
+     * log-probabilities, so long subsets do not underflow. Once every class is impossible the remaining
+     * subsets all predict the first class, like an all zero vote would.
      * @param inst instance to predict
-     * @param observedClassDistribution
-     * @param attributeObservers
      * @param rankedFeatureIndices indexes of ranked features in an array
-     * @return
+     * @return predictions of each subset size, reused by the next call
      */
-    public static int[] doNaiveBayesPrediction(Instance inst,DoubleVector observedClassDistribution,AutoExpandVector<AttributeClassObserver> attributeObservers, int[] rankedFeatureIndices)
+    protected int[] doNaiveBayesPrediction(Instance inst, int[] rankedFeatureIndices)
     {
-        int[] classPrediction = new int[rankedFeatureIndices.length];
-        double[] votes = getClassProb(observedClassDistribution);
+        int numClasses = this.observedClassDistribution.numValues();
+        if (this.subsetClassPredictions == null || this.subsetClassPredictions.length != rankedFeatureIndices.length)
+            this.subsetClassPredictions = new int[rankedFeatureIndices.length];
+        if (this.logVotes == null || this.logVotes.length != numClasses)
+            this.logVotes = new double[numClasses];
+        int[] classPrediction = this.subsetClassPredictions;
+        double[] votes = this.logVotes;
+        if (numClasses == 0)
+        {
+            Arrays.fill(classPrediction, 0);
+            return classPrediction;
+        }
+
+        double observedClassSum = this.observedClassDistribution.sumOfValues();
+        for (int classIndex = 0; classIndex < numClasses; classIndex++)
+        {
+            votes[classIndex] = Math.log(this.observedClassDistribution.getValue(classIndex) / observedClassSum);
+        }
 
-        // do some stuff here to check if its ignored
         for (int i = 0; i < rankedFeatureIndices.length; i++)
         {
-            for (int classIndex = 0; classIndex < votes.length; classIndex++)
+            int instAttIndex = modelAttIndexToInstanceAttIndex(rankedFeatureIndices[i], inst);
+            AttributeClassObserver obs = this.attributeObservers.get(rankedFeatureIndices[i]);
+            if ((obs != null) && !inst.isMissing(instAttIndex))
             {
-                int instAttIndex = modelAttIndexToInstanceAttIndex(rankedFeatureIndices[i],inst);
-                AttributeClassObserver obs = attributeObservers.get(rankedFeatureIndices[i]);
-
-                if ((obs != null) && !inst.isMissing(instAttIndex))
+                double value = inst.value(instAttIndex);
+                for (int classIndex = 0; classIndex < numClasses; classIndex++)
                 {
-                    votes[classIndex] *= obs.probabilityOfAttributeValueGivenClass(inst.value(instAttIndex), classIndex);
+                    votes[classIndex] += Math.log(obs.probabilityOfAttributeValueGivenClass(value, classIndex));
                 }
             }
             // store prediction result
-            classPrediction[i] = Utils.maxIndex(votes);
+            int prediction = Utils.maxIndex(votes);
+            classPrediction[i] = prediction;
+            if (votes[prediction] == Double.NEGATIVE_INFINITY)
+            {
+                // no class can become possible again
+                Arrays.fill(classPrediction, i + 1, classPrediction.length, prediction);
+                break;
+            }
         }
         return classPrediction;
     }
 
-    protected static double[] getClassProb(DoubleVector observedClassDistribution)
-    {
-        double[] classProb = new double[observedClassDistribution.numValues()];
-        double observedClassSum = observedClassDistribution.sumOfValues();
-
-        for (int classIndex = 0; classIndex < classProb.length; classIndex++)
-        {
-            classProb[classIndex] = observedClassDistribution.getValue(classIndex) / observedClassSum;
-        }
-        return classProb;
-    }
-
-
     public void manageMemory(int currentByteSize, int maxByteSize)
     {
         // TODO Auto-generated method stub
@@ -24,10 +24,15 @@ import com.yahoo.labs.samoa.instances.Instances;
 import com.yahoo.labs.samoa.instances.InstancesHeader;
 import moa.classifiers.AbstractClassifier;
 import moa.classifiers.iss.knn.CumulativeLinearNNSearch;
+import moa.classifiers.iss.ranking.BackgroundRanking;
 import moa.classifiers.iss.ranking.InfoGainRanking;
 import moa.classifiers.iss.ranking.MeanEuclideanDistanceRanking;
 import moa.classifiers.iss.ranking.RankingFunction;
+import moa.classifiers.iss.ranking.SharedRanking;
+import moa.classifiers.iss.ranking.SharedRankingLearner;
 import moa.classifiers.iss.ranking.SymmetricUncertaintyRanking;
+import moa.classifiers.lazy.neighboursearch.ColumnarWindow;
+import moa.core.ByteSizeEstimator;
 import moa.core.Measurement;
 import moa.core.Utils;
 
@@ -35,6 +40,8 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * k Nearest Neighbor with Iterative Subset Selection.<p>
@@ -47,7 +54,7 @@ import java.io.IOException;
  * Orignial MOA kNN Jesse Read (jesse@tsc.uc3m.es)
  * @version 1.1
  */
-public class kNNISS extends AbstractClassifier
+public class kNNISS extends AbstractClassifier implements ByteSizeEstimator, SharedRankingLearner
 {
 
     private static final long serialVersionUID = 2L; // some random number I entered (idk what this actually does tbh)
@@ -68,6 +75,8 @@ public class kNNISS extends AbstractClassifier
     public FlagOption hillClimbOption = new FlagOption("hillCilmb", 'h', "Whether or not to select the feature limit via hill climbing.");
     public IntOption hillClimbWindowOption = new IntOption( "hillClimbWindow", 'a', "The size of the hill climb window.", 2, 0, 10);
 
+    public IntOption numThreadsOption = new IntOption( "numThreads", 'p', "The number of threads to search the window with, large windows are split into partitions searched in parallel. Predictions are identical to a single thread.", 1, 1, Integer.MAX_VALUE);
+
     // public FloatOption accuracyGainWeightOption = new FloatOption("accuracyGainFactor", 'g', "How much weight to put into accuracy gain for ranking features.", 0.0, 0.0, 1.0);
 
     public MultiChoiceOption rankingOption = new MultiChoiceOption(
@@ -77,6 +86,16 @@ public class kNNISS extends AbstractClassifier
             new String[]{"Symmetric Uncertainty","Information gain","Average Euclidean distance"
         }, 0);
 
+    public MultiChoiceOption rerankingModeOption = new MultiChoiceOption(
+            "rerankingMode", 'e',
+            "How features are re-ranked when the reselection interval has passed.",
+            new String[]{"Synchronous","Background","FixedLag"},
+            new String[]{"Re-rank while predicting the instance","Re-rank on a background thread and apply the ranking once it is done",
+                    "Re-rank on a background thread and apply the ranking a fixed number of instances later, for repeatable results"
+        }, 0);
+    public IntOption rerankingLagOption = new IntOption( "rerankingLag", 'l', "The number of instances after re-ranking started that the new ranking is applied at in FixedLag mode.", 1, 0, Integer.MAX_VALUE);
+    public StringOption sharedRankingKeyOption = new StringOption("sharedRankingKey", 's', "Name of the stream to share the ranking window and statistics under, learners of one run over the stream with the same key, window size and ranking function update them once for all of them. Only learners run together, e.g. by EvaluatePrequentialMultiLearner, share rankings. An empty field keeps them to this learner.", "");
+
     // accuracy difference
     public StringOption outputNameOption = new StringOption("outputName",'n',"File name for output of accuracy difference as features are removed from subsets. An empty field produces no dump file.","");
     // buffered writer for writing out this dump file
@@ -95,6 +114,11 @@ public class kNNISS extends AbstractClassifier
 
     // array of prediction results for each subset size
     protected int[] predictionOfSubset;
+    // subset predictions and bounds of each instance of the last block predicted, restored when training on the block
+    protected transient Instance[] block;
+    protected transient int blockFrom;
+    protected transient int[][] blockPredictionOfSubset;
+    protected transient int[] blockBounds;
 
     // 0 = subset of n features, n-1 = subset of only the top feature
     protected int bestSubset = 0;
@@ -108,7 +132,19 @@ public class kNNISS extends AbstractClassifier
     protected boolean initialised = false;
 
     protected RankingFunction rankingFunction = null;
-    protected Instances window;
+    // subscription the ranking function is replaced by when the ranking is shared, null otherwise
+    protected SharedRanking.Subscription sharedRanking = null;
+    // shared rankings of the run this learner is part of, null if it runs on its own
+    protected transient SharedRanking.Scope sharedRankingScope = null;
+    // wraps the ranking function when re-ranking in the background, null otherwise
+    protected BackgroundRanking backgroundRanking = null;
+    // sliding window, kept column wise so evictions are O(1) and the search runs on primitive arrays
+    protected ColumnarWindow window;
+
+    // search is kept between predictions so its distance arrays can be reused
+    protected transient CumulativeLinearNNSearch cumulativeLinearNNSearch = null;
+    // pool for the parallel search, only created if more than one thread is used
+    protected transient ForkJoinPool pool = null;
 
     @Override
     public String getPurposeString() {
@@ -116,13 +152,18 @@ public class kNNISS extends AbstractClassifier
     }
 
 
+    @Override
+    public void setSharedRankingScope(SharedRanking.Scope scope)
+    {
+        sharedRankingScope = scope;
+    }
+
 	@Override
 	public void setModelContext(InstancesHeader context)
     {
 		try 
 		{
-			this.window = new Instances(context,0); //new StringReader(context.toString())
-			this.window.setClassIndex(context.classIndex());
+			this.window = new ColumnarWindow(context, this.windowSizeOption.getValue());
 		}
 		catch(Exception e)
         {
@@ -142,6 +183,22 @@ public class kNNISS extends AbstractClassifier
         this.window = null;
         topRankedFeatureIndices = null;
         rankingFunction = null;
+        if (backgroundRanking != null)
+        {
+            backgroundRanking.shutdown();
+            backgroundRanking = null;
+        }
+        if (sharedRanking != null)
+        {
+            sharedRanking.release();
+            sharedRanking = null;
+        }
+        cumulativeLinearNNSearch = null;
+        if (pool != null)
+        {
+            pool.shutdown();
+            pool = null;
+        }
 
         lowerBound = 0;
         upperBound = -1;
@@ -173,7 +230,7 @@ public class kNNISS extends AbstractClassifier
 		// if window is empty, initialise the window
 		if (this.window == null)
 		{
-			this.window = new Instances(inst.dataset());
+			this.window = new ColumnarWindow(inst.dataset(), this.windowSizeOption.getValue());
 		}
 
         // assign accuracy values for guess to subset
@@ -203,12 +260,11 @@ public class kNNISS extends AbstractClassifier
 
 
 		// updating sliding window
-		// if window is full, delete last element in window
-		if (this.windowSizeOption.getValue() <= this.window.numInstances())
+		// if window is full, the oldest element gets overwritten by the add
+		if (this.window.isFull())
 		{
 		    // also remove from ranking function
-		    rankingFunction.removeInstance(this.window.get(0));
-			this.window.delete(0);
+		    rankingFunction.removeInstance(this.window.oldest());
 		}
 
 		// add element to window
@@ -224,9 +280,25 @@ public class kNNISS extends AbstractClassifier
      */
 	@Override
     public double[] getVotesForInstance(Instance inst)
+    {
+        return getVotesForInstance(inst, null);
+    }
+
+	/**
+	 * a method to obtain the prediction result into an array that is reused if it has the right length
+	 * @param inst instance to predict the class value of
+	 * @param votes array to reuse, or null
+	 * @return array containing votes for the class values
+     */
+	@Override
+    public double[] getVotesForInstance(Instance inst, double[] votes)
     {
         // vote array for class
-		double v[] = new double[largestClassIndex+1];
+		double v[] = votes;
+		if (v == null || v.length != largestClassIndex+1)
+			v = new double[largestClassIndex+1];
+		else
+			Arrays.fill(v, 0);
 
         // check if enough time as passed
         if(reselectionCounter <=0)
@@ -239,6 +311,13 @@ public class kNNISS extends AbstractClassifier
         {
             reselectionCounter--;
         }
+        // apply a ranking done in the background
+        if (backgroundRanking != null)
+        {
+            int[] ranked = backgroundRanking.poll();
+            if (ranked != null)
+                topRankedFeatureIndices = ranked;
+        }
 
         // check if enough time as passed for decay
         if(decayCounter <=0)
@@ -277,12 +356,26 @@ public class kNNISS extends AbstractClassifier
             }
 
             // initialise search
-            CumulativeLinearNNSearch cumulativeLinearNNSearch = new CumulativeLinearNNSearch();
-            cumulativeLinearNNSearch.initialiseCumulativeSearch(inst, this.window, topRankedFeatureIndices,upperBound);
+            if (cumulativeLinearNNSearch == null)
+            {
+                cumulativeLinearNNSearch = new CumulativeLinearNNSearch();
+                if (numThreadsOption.getValue() > 1)
+                {
+                    if (pool == null)
+                    {
+                        pool = new ForkJoinPool(numThreadsOption.getValue());
+                    }
+                    cumulativeLinearNNSearch.setPool(pool);
+                }
+            }
+            int kNN = Math.min(kOption.getValue(), this.window.numInstances());
+            cumulativeLinearNNSearch.initialiseCumulativeSearch(inst, this.window, topRankedFeatureIndices,upperBound, kNN);
 
             // get a vote if there is enough instances in the window
             if (this.window.numInstances() > 0)
             {
+                // temp votes for current subset, reused for every subset size
+                double tempVotes[] = new double[largestClassIndex + 1];
                 // backward elimination
                 for(int z = upperBound - 1; z >= lowerBound;z--)
                 {
@@ -291,12 +384,13 @@ public class kNNISS extends AbstractClassifier
                     cumulativeLinearNNSearch.setNumberOfActiveFeatures(z + 1);
 
                     // get knn search result
-                    Instances neighbours = cumulativeLinearNNSearch.kNNSearch(inst, Math.min(kOption.getValue(), this.window.numInstances()));
+                    int numNeighbours = cumulativeLinearNNSearch.kNNSearch(inst, kNN);
+                    int[] neighbourLabels = cumulativeLinearNNSearch.neighbourLabels();
 
                     // temp votes for current subset
-                    double tempVotes[] = new double[largestClassIndex + 1];
-                    for (int i = 0; i < neighbours.numInstances(); i++) {
-                        tempVotes[(int) neighbours.instance(i).classValue()]++;
+                    Arrays.fill(tempVotes, 0);
+                    for (int i = 0; i < numNeighbours; i++) {
+                        tempVotes[neighbourLabels[i]]++;
                     }
 
                     // set best subset as return for prediction before re-selecting best subset
@@ -321,6 +415,67 @@ public class kNNISS extends AbstractClassifier
 		return v;
     }
 
+    /**
+     * Predicts a block of instances one at a time, keeping the subset predictions of each instance
+     * so training on the block afterwards updates the subset accuracies as it would per instance.
+     * @param insts instances
+     * @param from index of the first instance to predict
+     * @param to index after the last instance to predict
+     * @return votes of each instance
+     */
+    @Override
+    public double[][] getVotesForInstances(Instance[] insts, int from, int to)
+    {
+        double[][] votes = new double[to - from][];
+        if (blockPredictionOfSubset == null || blockPredictionOfSubset.length < to - from)
+        {
+            blockPredictionOfSubset = new int[to - from][];
+            blockBounds = new int[2 * (to - from)];
+        }
+        for (int i = from; i < to; i++)
+        {
+            votes[i - from] = getVotesForInstance(insts[i]);
+            int[] stored = blockPredictionOfSubset[i - from];
+            if (predictionOfSubset != null)
+            {
+                if (stored == null || stored.length != predictionOfSubset.length)
+                    stored = blockPredictionOfSubset[i - from] = new int[predictionOfSubset.length];
+                System.arraycopy(predictionOfSubset, 0, stored, 0, stored.length);
+            }
+            blockBounds[2 * (i - from)] = lowerBound;
+            blockBounds[2 * (i - from) + 1] = upperBound;
+        }
+        block = insts;
+        blockFrom = from;
+        return votes;
+    }
+
+    /**
+     * Trains on a block of instances, using the subset predictions kept for them if the block was predicted last.
+     * @param insts instances
+     * @param from index of the first instance to train on
+     * @param to index after the last instance to train on
+     */
+    @Override
+    public void trainOnInstances(Instance[] insts, int from, int to)
+    {
+        if (insts != block || from < blockFrom || to - blockFrom > blockPredictionOfSubset.length)
+        {
+            super.trainOnInstances(insts, from, to);
+            return;
+        }
+        block = null;
+        for (int i = from; i < to; i++)
+        {
+            int[] stored = blockPredictionOfSubset[i - blockFrom];
+            if (stored != null && predictionOfSubset != null)
+                System.arraycopy(stored, 0, predictionOfSubset, 0, Math.min(stored.length, predictionOfSubset.length));
+            lowerBound = blockBounds[2 * (i - blockFrom)];
+            upperBound = blockBounds[2 * (i - blockFrom) + 1];
+            trainOnInstance(insts[i]);
+        }
+    }
+
     /**
      *  Select the best subset of features from active features.
      * @param f Number of features specified
@@ -400,8 +555,11 @@ public class kNNISS extends AbstractClassifier
             // calculate accuracy gain from adding feature to subset
             // utilise accuracy difference by adding features to subset
             writeAG(computeAccuracyDiff(correctPercent));
-            // set best ranked features
-            topRankedFeatureIndices = rankingFunction.rankFeatures(window, topRankedFeatureIndices);
+            // set best ranked features, the rankings keep their own statistics of the window and only need its header
+            if (backgroundRanking != null)
+                backgroundRanking.submit(window.getHeader(), topRankedFeatureIndices);
+            else
+                topRankedFeatureIndices = rankingFunction.rankFeatures(window.getHeader(), topRankedFeatureIndices);
         }
     }
 
@@ -486,12 +644,46 @@ public class kNNISS extends AbstractClassifier
 
         // initialise ranking function
         rankingFunction.initialise(featuresCount,window.classIndex());
+
+        // share the window and statistics with the other learners on the same stream if set
+        if (!sharedRankingKeyOption.getValue().isEmpty() && sharedRankingScope != null)
+        {
+            sharedRanking = sharedRankingScope.subscribe(sharedRankingKeyOption.getValue(), windowSizeOption.getValue(), rankingFunction);
+            sharedRanking.initialise(featuresCount,window.classIndex());
+            rankingFunction = sharedRanking;
+        }
+
+        // rank in the background if set, the wrapper logs the window from now on
+        if (rerankingModeOption.getChosenIndex() > 0)
+        {
+            int lag = rerankingModeOption.getChosenIndex() == 2 ? rerankingLagOption.getValue() : -1;
+            backgroundRanking = new BackgroundRanking(rankingFunction, lag);
+            rankingFunction = backgroundRanking;
+        }
     }
 
+    /**
+     * Estimates the size of the model from the window, the ranking statistics do not grow with the stream.
+     * @return estimated size in bytes
+     */
+    @Override
+    public int estimateByteSize()
+    {
+        return this.window == null ? 0 : (int) this.window.estimateByteSize();
+    }
 
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
-        return null;
+        long termsComputed = 0;
+        long termsPruned = 0;
+        if (cumulativeLinearNNSearch != null)
+        {
+            termsComputed = cumulativeLinearNNSearch.getTermsComputed();
+            termsPruned = cumulativeLinearNNSearch.getTermsPruned();
+        }
+        return new Measurement[]{
+                new Measurement("feature distance terms computed", termsComputed),
+                new Measurement("feature distance terms pruned", termsPruned)};
     }
 
     @Override
@@ -24,8 +24,9 @@ package moa.classifiers.iss.knn;
 import com.yahoo.labs.samoa.instances.Attribute;
 import com.yahoo.labs.samoa.instances.Instance;
 import com.yahoo.labs.samoa.instances.InstanceImpl;
-import com.yahoo.labs.samoa.instances.Instances;
+import moa.classifiers.lazy.neighboursearch.ColumnarWindow;
 import moa.classifiers.lazy.neighboursearch.EuclideanDistance;
+import moa.classifiers.lazy.neighboursearch.TopKSelector;
 import moa.core.DoubleVector;
 import moa.core.Utils;
 
@@ -33,6 +34,10 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Class implementing cumulative sums of features to the brute force search algorithm for nearest neighbour search as an optimisation for feature selection of feature subsets.
@@ -48,23 +53,122 @@ public class CumulativeLinearNNSearch
     private static final long serialVersionUID = 12345L;// some random numbers I decided to enter
 
     private int[] activeFeatures; // lower index = higher importance
-    private double[][] featureDistance;
-    private Instances window;
+
+    // cumulativeDistance[f][i] = sum of the squared feature distances of the features 0..f for window instance i
+    private double[][] cumulativeDistance;
+    // row of cumulativeDistance used by the search, i.e. number of active features - 1
+    private int activeRow = -1;
+    private ColumnarWindow window;
 
     private boolean print = false;
 
-    private Inst[] instanceArray;
+    // abandonedAt[i] = first row whose distance was not needed for window instance i, as it could not be a neighbour from that row on
+    // equal to the upper bound if all its rows are computed
+    private int[] abandonedAt;
+    // number of window instances per block, the pruning bound is tightened after every block
+    private static final int PRUNING_BLOCK = 64;
+
+    // feature distance terms computed and left out by the pruning, over all searches
+    private long termsComputed = 0;
+    private long termsPruned = 0;
+
+    // candidates of the current search and their distances, reused between searches
+    private int[] candidates;
+    private double[] candidateDistances;
+    private TopKSelector selector = new TopKSelector();
+
+    // result of the last search
+    private int[] neighbourSlots;
+    private int[] neighbourLabels;
+    private int numNeighbours;
 
     protected EuclideanDistance distanceFunction = new EuclideanDistance();
 
-    private class Inst
+    // minimum number of feature distances per partition when computing the prefix sums in parallel
+    private static final int MIN_PARTITION_WORK = 1 << 14;
+    // minimum number of window instances per partition when selecting neighbours in parallel
+    private static final int MIN_PARTITION_INSTANCES = 1 << 12;
+
+    // pool to run the partitions on, null = sequential
+    private transient ForkJoinPool pool = null;
+    private transient List<Partition> partitions = new ArrayList<Partition>();
+
+    /**
+     * A contiguous range of window slots handled by one task of the pool.
+     * Selection first collects the k smallest distances of the range, collection then gathers the neighbours
+     * once the global k-th smallest distance is known.
+     */
+    private class Partition implements Callable<Void>
     {
-        double distance = -1;
-        int index = -1;
-        int skipCount = 0;
-        public Inst(int index)
+        static final int PREFIX_SUMS = 0;
+        static final int SELECT = 1;
+        static final int COLLECT = 2;
+
+        int from;
+        int to;
+        int mode;
+
+        Instance target;
+        int upperBound;
+        int kNN;
+        double pivotDistance;
+
+        // the candidates of this partition are kept in the slots from..to of the shared candidate arrays
+        int numCandidates;
+        long computed;
+        TopKSelector localSelector = new TopKSelector();
+        // smallest candidate distances, at least k of them unless there are fewer candidates
+        double[] localBest = new double[0];
+        int numLocalBest;
+
+        @Override
+        public Void call()
         {
-            this.index = index;
+            switch (mode)
+            {
+                case PREFIX_SUMS:
+                    computed = computePrefixSums(target, from, to, upperBound, kNN, localSelector);
+                    break;
+                case SELECT:
+                    select();
+                    break;
+                case COLLECT:
+                    collect();
+                    break;
+                default:
+                    break;
+            }
+            return null;
+        }
+
+        private void select()
+        {
+            if (localBest.length < to - from)
+            {
+                localBest = new double[to - from];
+            }
+            numCandidates = gatherCandidates(from, to, from) - from;
+
+            // the global k-th smallest distance is among the k smallest distances of some partition
+            localSelector.reset(kNN);
+            for(int i = from; i < from + numCandidates; i++)
+            {
+                localSelector.offer(candidateDistances[i]);
+            }
+            double localPivot = localSelector.kthSmallest();
+            numLocalBest = 0;
+            for(int i = from; i < from + numCandidates; i++)
+            {
+                if (candidateDistances[i] <= localPivot)
+                {
+                    localBest[numLocalBest++] = candidateDistances[i];
+                }
+            }
+        }
+
+        private void collect()
+        {
+            localSelector.collect(candidateDistances, candidates, window.classLabels(), from, from + numCandidates, pivotDistance);
         }
     }
 
@@ -74,71 +178,256 @@ public class CumulativeLinearNNSearch
     }
 
     /**
-     * Sets the ranked list of features and the window to conduct the knn search on
+     * Sets the pool used to split the window into partitions that are searched in parallel.
+     * The neighbours found are the same as in the sequential search, in the same order.
+     * Small windows are always searched sequentially as splitting them costs more than it gains.
+     * @param pool pool to run the partitions on, null to search sequentially
+     */
+    public void setPool(ForkJoinPool pool)
+    {
+        this.pool = pool;
+    }
+
+    /**
+     * Sets the ranked list of features and the window to conduct the knn search on.
+     * Computes the squared distance of every active feature once and stores them as running prefix sums per window instance,
+     * so that changing the number of active features afterwards does not need any further distance computations.
+     * Sums are abandoned once they exceed the distance of the k-th nearest neighbour over all upperBound features,
+     * which is exact: the remaining terms are non-negative and the k-th nearest distance only shrinks with fewer features.
+     * The internal arrays are reused between calls and only grow when the window or the upper bound grows.
      * @param target Instance to classify
-     * @param window Window to conduct the search with
+     * @param window Window to conduct the search with, the search runs directly on its columns
      * @param activeFeatureIndices Int array containing the indexes of the ranked features
      * @param upperBound Int containing the upper bound of features currently active (used for hill climbing)
+     * @param kNN Number of nearest neighbours the searches will look for
      */
-    public void initialiseCumulativeSearch(Instance target, Instances window,  int[] activeFeatureIndices,int upperBound)
+    public void initialiseCumulativeSearch(Instance target, ColumnarWindow window,  int[] activeFeatureIndices,int upperBound, int kNN)
     {
         this.window = window;
-        distanceFunction.setInstances(window);
+        // ranges are kept up to date by the window, no rescan of the instances needed
+        distanceFunction.setRanges(window.getHeader(), window.getRanges());
         activeFeatures = activeFeatureIndices;
-        featureDistance = new double[upperBound][window.numInstances()];
+        activeRow = -1;
 
+        int numInstances = window.numInstances();
+        ensureCapacity(upperBound, numInstances);
 
-
-
-        // f = index of index of best feature
-        for (int f = 0; f < upperBound; f++)
+        long computed = 0;
+        int numPartitions = numPartitions((long)numInstances * upperBound, MIN_PARTITION_WORK);
+        if (numPartitions > 1)
         {
-            for(int i = 0; i < window.numInstances();i++)
+            List<Partition> tasks = partitions(numPartitions, numInstances);
+            for (Partition partition : tasks)
             {
-                // we don't take care of the class index here, the active features array is assumed to NEVER contain the class index.
-                // puts squared distance for a feature f between instance i and the target into array.
-                double d = distanceFunction.attributeSqDistance(target,window.instance(i),activeFeatures[f]);//= sqDistance(target,window.instance(i),activeFeatures[f]);
-
-                featureDistance[f][i] = d;
+                partition.mode = Partition.PREFIX_SUMS;
+                partition.target = target;
+                partition.upperBound = upperBound;
+                partition.kNN = kNN;
+            }
+            invokeAll(tasks);
+            for (Partition partition : tasks)
+            {
+                partition.target = null;
+                computed += partition.computed;
+            }
+        }
+        else
+        {
+            computed = computePrefixSums(target, 0, numInstances, upperBound, kNN, selector);
+        }
+        termsComputed += computed;
+        termsPruned += (long)numInstances * upperBound - computed;
+    }
 
+    /**
+     * Returns the number of feature distance terms computed by all searches so far.
+     * @return number of terms computed
+     */
+    public long getTermsComputed()
+    {
+        return termsComputed;
+    }
 
-                //System.out.println("inst: " + i + " feature " + f + " dist: "+  d);
-                //System.out.println(target.valueSparse(f) + " window "+ window.instance(i).valueSparse(f));
+    /**
+     * Returns the number of feature distance terms left out by the pruning in all searches so far.
+     * @return number of terms pruned
+     */
+    public long getTermsPruned()
+    {
+        return termsPruned;
+    }
 
+    /**
+     * Computes the prefix sums of the first upperBound features for a range of window slots.
+     * The slots are processed in blocks, feature by feature within a block. A slot is abandoned as soon as its sum exceeds
+     * the k-th smallest full distance of the slots completed in earlier blocks, which is never smaller than the final one.
+     * @param target Instance to classify
+     * @param from first slot, inclusive
+     * @param to last slot, exclusive
+     * @param upperBound number of features to compute the sums of
+     * @param kNN Number of nearest neighbours
+     * @param bound selector used to keep track of the k smallest full distances
+     * @return number of feature distance terms computed
+     */
+    private long computePrefixSums(Instance target, int from, int to, int upperBound, int kNN, TopKSelector bound)
+    {
+        double[] values = window.values();
+        long computed = 0;
+        bound.reset(kNN);
 
+        for (int blockStart = from; blockStart < to; blockStart += PRUNING_BLOCK)
+        {
+            int blockEnd = Math.min(blockStart + PRUNING_BLOCK, to);
+            double maxDistance = bound.kthSmallest();
+            Arrays.fill(abandonedAt, blockStart, blockEnd, upperBound);
+            int numActive = blockEnd - blockStart;
 
-                /*if( Double.isNaN(d))
+            // f = index of index of best feature
+            for (int f = 0; f < upperBound && numActive > 0; f++)
+            {
+                double[] row = cumulativeDistance[f];
+                double[] previousRow = (f == 0) ? null : cumulativeDistance[f - 1];
+                int attribute = activeFeatures[f];
+                int offset = window.columnOffset(attribute);
+                double targetValue = target.value(attribute);
+                // i = slot in the window
+                for(int i = blockStart; i < blockEnd;i++)
                 {
-                    System.out.println("SOMETHING SCREWED UP BIG TIME!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-                    System.out.println("feature being added: "+ activeFeatures[f] + " dist: " + d);
-                    System.out.println( "tar value " + target.valueSparse(activeFeatures[f]));
-                    System.out.println( "win value " + window.instance(i).valueSparse(activeFeatures[f]));
-                    System.out.println("target values: " + target.toString());
-                    System.out.println("instance values: " + window.instance(i).toString());
-                }*/
+                    if (abandonedAt[i] < upperBound)
+                        continue;
+
+                    // we don't take care of the class index here, the active features array is assumed to NEVER contain the class index.
+                    // squared distance for a feature f between instance i and the target
+                    double d = distanceFunction.attributeSqDistance(targetValue,values[offset + i],attribute);
+
+                    // added in the same order as summing the features 0..f from scratch, so the sums are bit for bit identical
+                    double sum = (previousRow == null) ? d : previousRow[i] + d;
+                    row[i] = sum;
+                    computed++;
+                    if (sum > maxDistance)
+                    {
+                        // too far away for this and every larger subset
+                        abandonedAt[i] = f;
+                        numActive--;
+                    }
+                }
+            }
 
+            if (upperBound > 0)
+            {
+                double[] lastRow = cumulativeDistance[upperBound - 1];
+                for(int i = blockStart; i < blockEnd;i++)
+                {
+                    if (abandonedAt[i] == upperBound)
+                        bound.offer(lastRow[i]);
+                }
             }
         }
+        return computed;
+    }
 
+    /**
+     * Returns the number of partitions to split some work into, 1 if there is no pool or too little work.
+     * @param work amount of work
+     * @param minWork minimum amount of work per partition
+     * @return number of partitions
+     */
+    private int numPartitions(long work, int minWork)
+    {
+        if (pool == null)
+            return 1;
+        return (int)Math.max(1, Math.min(pool.getParallelism(), work / minWork));
+    }
+
+    /**
+     * Returns the partitions splitting the window slots into contiguous ranges of (almost) equal size.
+     * The partition objects and their buffers are kept for the next call.
+     * @param numPartitions number of partitions
+     * @param numInstances number of window slots
+     * @return partitions in slot order
+     */
+    private List<Partition> partitions(int numPartitions, int numInstances)
+    {
+        if (partitions == null)
+            partitions = new ArrayList<Partition>();
+        while (partitions.size() < numPartitions)
+        {
+            partitions.add(new Partition());
+        }
+        List<Partition> tasks = partitions.subList(0, numPartitions);
+        for (int p = 0; p < numPartitions; p++)
+        {
+            Partition partition = tasks.get(p);
+            partition.from = (int)((long)numInstances * p / numPartitions);
+            partition.to = (int)((long)numInstances * (p + 1) / numPartitions);
+        }
+        return tasks;
+    }
 
-        instanceArray = new Inst[window.numInstances()];
-        for(int i = 0; i < window.numInstances();i++)
+    /**
+     * Runs the partitions on the pool and waits for all of them.
+     * @param tasks partitions to run
+     */
+    private void invokeAll(List<Partition> tasks)
+    {
+        try
         {
-            instanceArray[i] = new Inst(i);
+            for (Future<Void> future : pool.invokeAll(tasks))
+            {
+                future.get();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new RuntimeException(e.getCause());
         }
+    }
 
+    /**
+     * Makes sure the prefix sum rows and the instance array can hold the given number of features and instances.
+     * @param numFeatures number of rows needed
+     * @param numInstances number of window instances needed
+     */
+    private void ensureCapacity(int numFeatures, int numInstances)
+    {
+        int rows = (cumulativeDistance == null) ? 0 : cumulativeDistance.length;
+        int columns = (abandonedAt == null) ? 0 : abandonedAt.length;
+        if (abandonedAt == null || numInstances > columns)
+        {
+            abandonedAt = new int[numInstances];
+            candidates = new int[numInstances];
+            candidateDistances = new double[numInstances];
+            neighbourSlots = new int[numInstances];
+            neighbourLabels = new int[numInstances];
+            columns = numInstances;
+            // rows have to be reallocated with the new width
+            rows = 0;
+        }
+        if (numFeatures > rows)
+        {
+            double[][] newCumulativeDistance = new double[numFeatures][];
+            for (int f = 0; f < numFeatures; f++)
+            {
+                newCumulativeDistance[f] = (f < rows) ? cumulativeDistance[f] : new double[columns];
+            }
+            cumulativeDistance = newCumulativeDistance;
+        }
     }
 
     /**
      * Sets the number of features to be considered in kNN search.
      * Should be run before kNNSearch is run.
-     * initialiseCumulativeSearch should be run before running this method
+     * initialiseCumulativeSearch should be run before running this method.
+     * As the distances are kept as prefix sums this only selects the row to search on.
      * @param n number of features to consider
      */
     public void setNumberOfActiveFeatures(int n)
     {
-
-        //System.out.println("it " + n);
         if(print)
         {
             System.out.print("asd[ ");
@@ -148,83 +437,141 @@ public class CumulativeLinearNNSearch
             System.out.print("]\n");
         }
 
-        for (int w = 0; w < window.numInstances();w++)
+        activeRow = n - 1;
+    }
+
+    /**
+     * Returns the distance of a window instance to the target over the currently active features.
+     * @param i index of the instance in the window
+     * @return squared distance over the active features
+     */
+    private double activeDistance(int i)
+    {
+        return (activeRow < 0) ? 0 : cumulativeDistance[activeRow][i];
+    }
+
+    /**
+     * Copies the slots that can still be a neighbour in this search into the candidate arrays, together with their distances.
+     * @param from first slot, inclusive
+     * @param to last slot, exclusive
+     * @param start position in the candidate arrays to write the first candidate to
+     * @return position after the last candidate written
+     */
+    private int gatherCandidates(int from, int to, int start)
+    {
+        int c = start;
+        for(int i = from; i < to; i++)
         {
-            instanceArray[w].distance = 0;
-            for(int f = 0; f < n; f++)
+            // abandoned instances are further away than the k-th nearest neighbour, leaving them out does not change the pivot
+            if(activeRow < abandonedAt[i])
             {
-                //System.out.println("f distance: " + featureDistance[f][w]);
-                instanceArray[w].distance += featureDistance[f][w];
-                /*if( Double.isNaN(instanceDistance[w]))
-                {
-                    System.out.println("SOMETHING SCREWED UP BIG TIME!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-                    System.out.println("instance distance: "+ w + " dist: " + instanceDistance[w]);
-                    System.out.println("feature distance being added on distance: "+ f + " dist: " + featureDistance[f][w]);
-                    System.out.println("instance values: " + window.instance(w).toString());
-                }*/
+                candidates[c] = i;
+                candidateDistances[c] = activeDistance(i);
+                c++;
             }
         }
+        return c;
     }
 
     /**
      * Actual knn search
-     * initialise must be called beforehand
+     * initialise must be called beforehand.
+     * The neighbours are all instances at most as far away as the k-th nearest one, so ties are included.
+     * They are available through {@link #neighbourSlots()} and {@link #neighbourLabels()} until the next search.
      * @param target Instances to search
      * @param kNN Number of nearest neighbours
-     * @return A Instances of the k nearest neighbours
+     * @return number of neighbours found
      */
-    public Instances kNNSearch(Instance target,int kNN)
+    public int kNNSearch(Instance target,int kNN)
     {
-        if(window.numInstances() < kNN)
+        int numInstances = window.numInstances();
+        if(numInstances < kNN)
         {
-            //System.out.println("returned window");
             // less instances in window than k
-            return window;
-        }
-
-        // list of inst to be searched in this knn search
-        List<Inst> searchList = new ArrayList<Inst>();
-        for(int i = 0; i < instanceArray.length; i++)
-        {
-            if(instanceArray[i].skipCount <= 0)
-            {
-                searchList.add(instanceArray[i]);
-            }
-            else
+            for(int i = 0; i < numInstances; i++)
             {
-                instanceArray[i].skipCount--;
+                neighbourSlots[i] = window.slot(i);
+                neighbourLabels[i] = window.classLabel(neighbourSlots[i]);
             }
+            numNeighbours = numInstances;
+            return numNeighbours;
         }
 
-        double[] searchArray = new double[searchList.size()];
-        for(int i = 0; i < searchList.size();i++)
+        int numPartitions = numPartitions(numInstances, MIN_PARTITION_INSTANCES);
+        if (numPartitions > 1)
         {
-            searchArray[i] = searchList.get(i).distance;
-            // System.out.println("i " + i);
-            // System.out.println("index " + searchList.get(i).index);
+            return parallelKNNSearch(kNN, numPartitions);
         }
-        // System.out.println(Arrays.toString(searchArray));
 
-        // find index of k-th smallest value
-        int pivot = Utils.kthSmallestValueIndex(searchArray, kNN);
+        int numCandidates = gatherCandidates(0, numInstances, 0);
+        numNeighbours = selector.select(candidateDistances, candidates, window.classLabels(), 0, numCandidates, kNN);
+        System.arraycopy(selector.selectedIndices(), 0, neighbourSlots, 0, numNeighbours);
+        System.arraycopy(selector.selectedLabels(), 0, neighbourLabels, 0, numNeighbours);
+        return numNeighbours;
+    }
 
-        Instances neighbours = new Instances(window,1);
+    /**
+     * knn search over window partitions run on the pool.
+     * Every partition selects its k smallest distances, the k-th smallest of those is the same pivot the sequential search finds,
+     * so the partitions then pick the same neighbours the sequential search would.
+     * @param kNN Number of nearest neighbours
+     * @param numPartitions number of partitions to split the window into
+     * @return number of neighbours found, in the same order as the sequential search
+     */
+    private int parallelKNNSearch(int kNN, int numPartitions)
+    {
+        List<Partition> tasks = partitions(numPartitions, window.numInstances());
+        for (Partition partition : tasks)
+        {
+            partition.mode = Partition.SELECT;
+            partition.kNN = kNN;
+        }
+        invokeAll(tasks);
 
-        for(int i = 0; i < searchArray.length;i++)
+        // merge the local results
+        selector.reset(kNN);
+        for (Partition partition : tasks)
         {
-            if(searchArray[i] <= searchArray[pivot])
-            {
-                neighbours.add(window.instance(searchList.get(i).index));
-            }
-            else
+            for (int i = 0; i < partition.numLocalBest; i++)
             {
-                int skip = (int)(Math.ceil(searchArray[i]) - searchArray[pivot]) - 1;
-                //System.out.println("skip = " + skip);
-                if (skip < 0)
-                    skip = 0;
-                searchList.get(i).skipCount = skip;
+                selector.offer(partition.localBest[i]);
             }
         }
-        return neighbours;
+        double pivotDistance = selector.kthSmallest();
+
+        for (Partition partition : tasks)
+        {
+            partition.mode = Partition.COLLECT;
+            partition.pivotDistance = pivotDistance;
+        }
+        invokeAll(tasks);
+
+        numNeighbours = 0;
+        for (Partition partition : tasks)
+        {
+            int n = partition.localSelector.numSelected();
+            System.arraycopy(partition.localSelector.selectedIndices(), 0, neighbourSlots, numNeighbours, n);
+            System.arraycopy(partition.localSelector.selectedLabels(), 0, neighbourLabels, numNeighbours, n);
+            numNeighbours += n;
+        }
+        return numNeighbours;
+    }
+
+    /**
+     * Returns the window slots of the neighbours found by the last search, only the first kNNSearch() entries are valid.
+     * @return neighbour slots
+     */
+    public int[] neighbourSlots()
+    {
+        return neighbourSlots;
+    }
+
+    /**
+     * Returns the class labels of the neighbours found by the last search, only the first kNNSearch() entries are valid.
+     * @return neighbour class labels
+     */
+    public int[] neighbourLabels()
+    {
+        return neighbourLabels;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,310 @@
+/*
+ *    BackgroundRanking.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package moa.classifiers.iss.ranking;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+/**
+ * Ranks features of another ranking function on a background thread.
+ * Instances added and removed are only logged, the log is handed to the background thread with every
+ * {@link #submit} and replayed into the wrapped ranking function in order before it ranks, so the wrapped
+ * function is only ever touched by that thread and its rankings are the ones it would give synchronously.
+ * The ranking is picked up with {@link #poll}, either as soon as it is done or, for repeatable experiments,
+ * exactly a fixed number of polls after it was submitted.
+ * @version 1
+ */
+public class BackgroundRanking extends RankingFunction
+{
+    private static final long serialVersionUID = 1L;
+
+    // ranking function the background thread keeps up to date and ranks with
+    protected RankingFunction ranking;
+    // number of polls after a submit the ranking is applied at, -1 to apply it as soon as it is done
+    protected int lag;
+
+    // instances added and removed since the last submit, in order, removals are flagged by their position
+    protected List<Instance> log = new ArrayList<Instance>();
+    protected BitSet removals = new BitSet();
+
+    // polls since the last submit
+    protected int polls;
+    // ranking that is done but not yet polled
+    protected int[] ready;
+
+    // seconds the background thread waits for the next ranking before it stops
+    protected static final long IDLE_TIMEOUT_SECONDS = 10;
+
+    protected transient ExecutorService executor;
+    protected transient Future<int[]> pending;
+
+    /**
+     * Wraps a ranking function.
+     * @param ranking ranking function, only used by the background thread from now on
+     * @param lag number of polls after a submit the ranking is applied at, 0 for the poll of the submitting instance,
+     *            -1 to apply it as soon as it is done
+     */
+    public BackgroundRanking(RankingFunction ranking, int lag)
+    {
+        this.ranking = ranking;
+        this.lag = lag;
+    }
+
+    @Override
+    public void initialise(int numberOfFeatures, int classIndex)
+    {
+        super.initialise(numberOfFeatures, classIndex);
+        ranking.initialise(numberOfFeatures, classIndex);
+    }
+
+    /**
+     * Logs an instance added to the window.
+     * @param inst instance to be added
+     */
+    @Override
+    public void addInstance(Instance inst)
+    {
+        log.add(inst);
+    }
+
+    /**
+     * Logs an instance removed from the window.
+     * @param inst instance to be removed
+     */
+    @Override
+    public void removeInstance(Instance inst)
+    {
+        removals.set(log.size());
+        log.add(inst);
+    }
+
+    /**
+     * Ranks synchronously, after any submitted ranking is done.
+     * @param window header of the window
+     * @param previousBestFeatures current ranking
+     * @return new ranking
+     */
+    @Override
+    public int[] rankFeatures(Instances window, int[] previousBestFeatures)
+    {
+        await();
+        ready = null;
+        replay(takeLog(), removals(), ranking);
+        return ranking.rankFeatures(window, previousBestFeatures);
+    }
+
+    /**
+     * Starts ranking the features with the instances logged so far in the background.
+     * A ranking still running is waited for in fixed lag mode and kept until polled, without a fixed lag the
+     * new instances are left in the log for the next submit instead.
+     * @param window header of the window, must not change while the ranking runs
+     * @param previousBestFeatures current ranking, copied
+     */
+    public void submit(final Instances window, int[] previousBestFeatures)
+    {
+        if (pending != null)
+        {
+            if (lag < 0 && !pending.isDone())
+                return;
+            await();
+        }
+        final List<Instance> instances = takeLog();
+        final BitSet removed = removals();
+        final int[] previous = previousBestFeatures.clone();
+        if (executor == null)
+        {
+            // the thread stops by itself when idle, learners are not reset at the end of a run
+            ThreadPoolExecutor threadPool = new ThreadPoolExecutor(1, 1, IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, "ISS background ranking");
+                    // never keep the JVM alive for a ranking
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            threadPool.allowCoreThreadTimeOut(true);
+            executor = threadPool;
+        }
+        pending = executor.submit(new Callable<int[]>()
+        {
+            @Override
+            public int[] call()
+            {
+                replay(instances, removed, ranking);
+                return ranking.rankFeatures(window, previous);
+            }
+        });
+        polls = 0;
+    }
+
+    /**
+     * Returns a submitted ranking once it is due, to be called once per prediction.
+     * In fixed lag mode this waits for the ranking if it is due but not done yet.
+     * @return the new ranking, or null if there is none to apply
+     */
+    public int[] poll()
+    {
+        if (pending != null && (lag < 0 ? pending.isDone() : polls++ >= lag))
+            await();
+        int[] ranked = ready;
+        ready = null;
+        return ranked;
+    }
+
+    /**
+     * Stops the background thread, a ranking still running is dropped.
+     * Without a shutdown the thread stops once it has been idle for IDLE_TIMEOUT_SECONDS.
+     */
+    public void shutdown()
+    {
+        if (executor != null)
+        {
+            executor.shutdownNow();
+            executor = null;
+        }
+        pending = null;
+    }
+
+    /**
+     * Waits for the submitted ranking and keeps it until polled.
+     */
+    protected void await()
+    {
+        if (pending == null)
+            return;
+        try
+        {
+            ready = pending.get();
+            pending = null;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e)
+        {
+            pending = null;
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Hands over the log and starts a new one.
+     * @return instances logged since the last submit
+     */
+    protected List<Instance> takeLog()
+    {
+        List<Instance> instances = log;
+        log = new ArrayList<Instance>(instances.size());
+        return instances;
+    }
+
+    /**
+     * Hands over the removal flags of the log and starts new ones.
+     * @return removal flags of the instances logged since the last submit
+     */
+    protected BitSet removals()
+    {
+        BitSet removed = removals;
+        removals = new BitSet();
+        return removed;
+    }
+
+    /**
+     * Applies logged instances to a ranking function in order.
+     * @param instances logged instances
+     * @param removed which of them were removed
+     * @param ranking ranking function
+     */
+    protected static void replay(List<Instance> instances, BitSet removed, RankingFunction ranking)
+    {
+        for (int i = 0; i < instances.size(); i++)
+        {
+            if (removed.get(i))
+                ranking.removeInstance(instances.get(i));
+            else
+                ranking.addInstance(instances.get(i));
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException
+    {
+        // the wrapped ranking function is only consistent once the background thread is done with it,
+        // the running ranking is written as done so copies apply it at the same poll
+        int[] result = null;
+        if (pending != null)
+        {
+            try
+            {
+                result = pending.get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            catch (ExecutionException e)
+            {
+                throw new IOException(e.getCause());
+            }
+        }
+        out.defaultWriteObject();
+        out.writeObject(result);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        final int[] result = (int[]) in.readObject();
+        if (result != null)
+        {
+            FutureTask<int[]> done = new FutureTask<int[]>(new Callable<int[]>()
+            {
+                @Override
+                public int[] call()
+                {
+                    return result;
+                }
+            });
+            done.run();
+            pending = done;
+        }
+    }
+}
@@ -0,0 +1,432 @@
+/*
+ *    ContingencyTable.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package moa.classifiers.iss.ranking;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import moa.core.Utils;
+
+/**
+ * Counts of attribute value and class pairs for all attributes, kept in flat int arrays.
+ * The count of value v and class c of attribute a is at counts()[cellOffset(a) + v * numClasses() + c].
+ * Nominal attributes use their values, numeric attributes the bins of their discretisation.
+ * Per attribute the number of instances not missing it and the class counts of those instances are kept as well.
+ * The sums of n log n over the cells, values and classes of every attribute are updated with the counts,
+ * so the entropies the rankings need are read in O(1) per attribute.
+ * Sparse instances only count the attributes they store, the zeros they leave out are derived per class
+ * from the number of sparse instances minus the number that stored the attribute, and are counted in the
+ * value given by setZeroValue(int, int) when the counts and entropies are read, in O(numClasses).
+ * @version 1
+ */
+public class ContingencyTable implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    protected int numClasses;
+
+    // number of values (or bins) each attribute has at the moment, at most maxValues[a]
+    protected int[] numValues;
+    protected int[] maxValues;
+
+    // first cell of each attribute in counts and first value of each attribute in valueCounts
+    protected int[] cellOffsets;
+    protected int[] valueOffsets;
+
+    // counts of value and class pairs
+    protected int[] counts;
+    // counts of values over all classes
+    protected int[] valueCounts;
+    // classCounts[a * numClasses + c] = count of class c over the instances not missing attribute a
+    protected int[] classCounts;
+    // number of instances not missing each attribute
+    protected int[] instCounts;
+    // sum of the value counts of each attribute, equal to the instance count unless the values are binned
+    protected int[] valueTotals;
+
+    // fixed point scale of the n log n sums, kept as longs so they do not drift however many updates are made
+    // sums stay below Long.MAX_VALUE for up to about 8e7 counted instances
+    protected static final double SCALE = 1L << 32;
+    // per attribute sum of n log2 n over its cells, its values and its classes
+    protected long[] cellEntropySums;
+    protected long[] valueEntropySums;
+    protected long[] classEntropySums;
+
+    // per class number of sparse instances counted, null until the first one
+    protected int[] sparseClassCounts;
+    // storedCounts[a * numClasses + c] = number of those instances of class c that store attribute a
+    protected int[] storedCounts;
+    // value (or bin) the implicit zeros of each attribute are counted in
+    protected int[] zeroValues;
+
+    /**
+     * Creates an empty table.
+     * @param maxValues maximum number of values of each attribute, 0 for attributes that are not counted
+     * @param numClasses number of classes
+     */
+    public ContingencyTable(int[] maxValues, int numClasses)
+    {
+        int numAttributes = maxValues.length;
+        this.numClasses = numClasses;
+        this.maxValues = Arrays.copyOf(maxValues, numAttributes);
+        this.numValues = Arrays.copyOf(maxValues, numAttributes);
+        cellOffsets = new int[numAttributes];
+        valueOffsets = new int[numAttributes];
+        int values = 0;
+        for (int a = 0; a < numAttributes; a++)
+        {
+            valueOffsets[a] = values;
+            cellOffsets[a] = values * numClasses;
+            values += maxValues[a];
+        }
+        counts = new int[values * numClasses];
+        valueCounts = new int[values];
+        classCounts = new int[numAttributes * numClasses];
+        instCounts = new int[numAttributes];
+        valueTotals = new int[numAttributes];
+        cellEntropySums = new long[numAttributes];
+        valueEntropySums = new long[numAttributes];
+        classEntropySums = new long[numAttributes];
+    }
+
+    /**
+     * Returns n log2 n in fixed point.
+     * @param n count
+     * @return n log2 n times SCALE, 0 for n <= 1
+     */
+    protected static long nLogN(int n)
+    {
+        return (n <= 1) ? 0 : Math.round(n * Utils.log2(n) * SCALE);
+    }
+
+    /**
+     * Adds to the count of a value and class pair, and to the class and instance counts of the attribute.
+     * @param a attribute index
+     * @param v value index
+     * @param c class index
+     * @param delta amount to add, negative to remove
+     */
+    public void add(int a, int v, int c, int delta)
+    {
+        int cell = cellOffsets[a] + v * numClasses + c;
+        int value = valueOffsets[a] + v;
+        cellEntropySums[a] += nLogN(counts[cell] + delta) - nLogN(counts[cell]);
+        valueEntropySums[a] += nLogN(valueCounts[value] + delta) - nLogN(valueCounts[value]);
+        counts[cell] += delta;
+        valueCounts[value] += delta;
+        valueTotals[a] += delta;
+        addToClassCount(a, c, delta);
+    }
+
+    /**
+     * Adds to the class and instance counts of an attribute only, for attributes whose values are counted elsewhere.
+     * @param a attribute index
+     * @param c class index
+     * @param delta amount to add, negative to remove
+     */
+    public void addToClassCount(int a, int c, int delta)
+    {
+        int classCell = a * numClasses + c;
+        classEntropySums[a] += nLogN(classCounts[classCell] + delta) - nLogN(classCounts[classCell]);
+        classCounts[classCell] += delta;
+        instCounts[a] += delta;
+    }
+
+    /**
+     * Sets the number of values of an attribute and clears its value counts, the class counts are kept.
+     * @param a attribute index
+     * @param n number of values, at most the maximum given on creation
+     */
+    public void resetValues(int a, int n)
+    {
+        if (n > maxValues[a])
+            throw new IllegalArgumentException("Attribute " + a + " can have at most " + maxValues[a] + " values: " + n);
+        numValues[a] = n;
+        Arrays.fill(counts, cellOffsets[a], cellOffsets[a] + maxValues[a] * numClasses, 0);
+        Arrays.fill(valueCounts, valueOffsets[a], valueOffsets[a] + maxValues[a], 0);
+        valueTotals[a] = 0;
+        cellEntropySums[a] = 0;
+        valueEntropySums[a] = 0;
+    }
+
+    /**
+     * Sets the count of a value and class pair without touching the class and instance counts.
+     * @param a attribute index
+     * @param v value index
+     * @param c class index
+     * @param count new count
+     */
+    public void setCount(int a, int v, int c, int count)
+    {
+        int cell = cellOffsets[a] + v * numClasses + c;
+        int value = valueOffsets[a] + v;
+        int delta = count - counts[cell];
+        cellEntropySums[a] += nLogN(count) - nLogN(counts[cell]);
+        valueEntropySums[a] += nLogN(valueCounts[value] + delta) - nLogN(valueCounts[value]);
+        counts[cell] = count;
+        valueCounts[value] += delta;
+        valueTotals[a] += delta;
+    }
+
+    /**
+     * Counts a sparse instance, whose attributes that are not stored are counted as zeros.
+     * The stored attributes must be counted as usual and passed to addStored(int, int, int).
+     * @param c class index
+     * @param delta 1 to add, -1 to remove
+     */
+    public void addSparseInstance(int c, int delta)
+    {
+        if (sparseClassCounts == null)
+        {
+            sparseClassCounts = new int[numClasses];
+            storedCounts = new int[instCounts.length * numClasses];
+            zeroValues = new int[instCounts.length];
+        }
+        sparseClassCounts[c] += delta;
+    }
+
+    /**
+     * Records that a sparse instance stores an attribute, also when the stored value is missing.
+     * @param a attribute index
+     * @param c class index
+     * @param delta 1 to add, -1 to remove
+     */
+    public void addStored(int a, int c, int delta)
+    {
+        storedCounts[a * numClasses + c] += delta;
+    }
+
+    /**
+     * Sets the value (or bin) the implicit zeros of an attribute are counted in, 0 unless set.
+     * @param a attribute index
+     * @param v value index, below numValues(a)
+     */
+    public void setZeroValue(int a, int v)
+    {
+        if (zeroValues != null)
+            zeroValues[a] = v;
+    }
+
+    /**
+     * Returns whether any sparse instance has been counted.
+     * @return true if implicit zeros may be counted
+     */
+    public boolean hasSparseInstances()
+    {
+        return sparseClassCounts != null;
+    }
+
+    /**
+     * Number of implicit zeros of an attribute for a class.
+     * @param a attribute index
+     * @param c class index
+     * @return number of sparse instances of class c that do not store attribute a
+     */
+    public int implicitCount(int a, int c)
+    {
+        if (sparseClassCounts == null || maxValues[a] == 0 || numValues[a] == 0)
+            return 0;
+        return sparseClassCounts[c] - storedCounts[a * numClasses + c];
+    }
+
+    /**
+     * Entropy of the class over the instances not missing an attribute.
+     * H(C) = log2 N - sum_c n_c log2 n_c / N
+     * @param a attribute index
+     * @return class entropy, 0 if no instance has the attribute
+     */
+    public double classEntropy(int a)
+    {
+        int n = instCounts[a];
+        long sum = classEntropySums[a];
+        if (sparseClassCounts != null)
+        {
+            for (int c = 0; c < numClasses; c++)
+            {
+                int implicit = implicitCount(a, c);
+                if (implicit != 0)
+                {
+                    int count = classCounts[a * numClasses + c];
+                    sum += nLogN(count + implicit) - nLogN(count);
+                    n += implicit;
+                }
+            }
+        }
+        if (n <= 0)
+            return 0;
+        return Utils.log2(n) - sum / SCALE / n;
+    }
+
+    /**
+     * Entropy of the class given the value of an attribute, weighted by the value counts.
+     * H(C|A) = (sum_v n_v log2 n_v - sum_vc n_vc log2 n_vc) / N
+     * @param a attribute index
+     * @return conditional class entropy, 0 if no instance has the attribute
+     */
+    public double conditionalEntropy(int a)
+    {
+        int n = instCounts[a];
+        long valueSum = valueEntropySums[a];
+        long cellSum = cellEntropySums[a];
+        int implicitTotal = 0;
+        if (sparseClassCounts != null)
+        {
+            int zeroCells = cellOffsets[a] + zeroValues[a] * numClasses;
+            for (int c = 0; c < numClasses; c++)
+            {
+                int implicit = implicitCount(a, c);
+                if (implicit != 0)
+                {
+                    int count = counts[zeroCells + c];
+                    cellSum += nLogN(count + implicit) - nLogN(count);
+                    implicitTotal += implicit;
+                }
+            }
+            if (implicitTotal != 0)
+            {
+                int valueCount = valueCounts[valueOffsets[a] + zeroValues[a]];
+                valueSum += nLogN(valueCount + implicitTotal) - nLogN(valueCount);
+                n += implicitTotal;
+            }
+        }
+        if (n <= 0)
+            return 0;
+        return (valueSum - cellSum) / SCALE / n;
+    }
+
+    /**
+     * Entropy of the values of an attribute.
+     * H(A) = (V log2 N - sum_v n_v log2 n_v) / N with V the sum of the value counts, which is N for nominal attributes
+     * @param a attribute index
+     * @return value entropy, 0 if no instance has the attribute
+     */
+    public double valueEntropy(int a)
+    {
+        int implicitTotal = implicitTotal(a);
+        int n = instCounts[a] + implicitTotal;
+        long valueSum = valueEntropySums[a];
+        if (implicitTotal != 0)
+        {
+            int valueCount = valueCounts[valueOffsets[a] + zeroValues[a]];
+            valueSum += nLogN(valueCount + implicitTotal) - nLogN(valueCount);
+        }
+        if (n <= 0)
+            return 0;
+        return ((valueTotals[a] + implicitTotal) * Utils.log2(n) - valueSum / SCALE) / n;
+    }
+
+    /**
+     * Number of implicit zeros of an attribute over all classes.
+     * @param a attribute index
+     * @return number of sparse instances that do not store attribute a
+     */
+    protected int implicitTotal(int a)
+    {
+        int total = 0;
+        if (sparseClassCounts != null)
+        {
+            for (int c = 0; c < numClasses; c++)
+                total += implicitCount(a, c);
+        }
+        return total;
+    }
+
+    public int numAttributes()
+    {
+        return instCounts.length;
+    }
+
+    public int numClasses()
+    {
+        return numClasses;
+    }
+
+    public int numValues(int a)
+    {
+        return numValues[a];
+    }
+
+    // the counts below include the implicit zeros of sparse instances
+
+    public int count(int a, int v, int c)
+    {
+        int count = counts[cellOffsets[a] + v * numClasses + c];
+        if (sparseClassCounts != null && v == zeroValues[a])
+            count += implicitCount(a, c);
+        return count;
+    }
+
+    public int valueCount(int a, int v)
+    {
+        int count = valueCounts[valueOffsets[a] + v];
+        if (sparseClassCounts != null && v == zeroValues[a])
+            count += implicitTotal(a);
+        return count;
+    }
+
+    public int classCount(int a, int c)
+    {
+        return classCounts[a * numClasses + c] + implicitCount(a, c);
+    }
+
+    public int instCount(int a)
+    {
+        return instCounts[a] + implicitTotal(a);
+    }
+
+    /**
+     * Returns the backing array of the value and class counts, must not be modified.
+     * Implicit zeros of sparse instances are not included.
+     * @return counts, see cellOffset(int)
+     */
+    public int[] counts()
+    {
+        return counts;
+    }
+
+    /**
+     * Returns the position of value 0, class 0 of an attribute in counts().
+     * @param a attribute index
+     * @return offset of the attribute
+     */
+    public int cellOffset(int a)
+    {
+        return cellOffsets[a];
+    }
+
+    /**
+     * Returns the backing array of the value counts, must not be modified.
+     * Implicit zeros of sparse instances are not included.
+     * @return value counts, see valueOffset(int)
+     */
+    public int[] valueCounts()
+    {
+        return valueCounts;
+    }
+
+    /**
+     * Returns the position of value 0 of an attribute in valueCounts().
+     * @param a attribute index
+     * @return offset of the attribute
+     */
+    public int valueOffset(int a)
+    {
+        return valueOffsets[a];
+    }
+}
@@ -17,6 +17,7 @@
  */
 
 package moa.classifiers.iss.ranking;
+import java.io.Serializable;
 import java.io.StringReader;
 import java.sql.Array;
 import java.util.Arrays;
@@ -39,7 +40,7 @@ import moa.core.Utils;
  * @author Lanqin Yuan (fyempathy@gmail.com)
  * @version 1
  */
-public class Feature
+public class Feature implements Serializable
 {
     // numeric or nominal
     boolean isNum = true;
@@ -18,11 +18,9 @@
 
 package moa.classifiers.iss.ranking;
 import java.util.Arrays;
-import java.util.HashMap;
 
 import com.yahoo.labs.samoa.instances.Instance;
 import com.yahoo.labs.samoa.instances.Instances;
-import moa.core.Utils;
 
 /**
  * IG ranking function
@@ -31,201 +29,138 @@ import moa.core.Utils;
  */
 public class InfoGainRanking extends RankingFunction
 {
-    protected abstract class FeatureStats
-    {
-        public abstract void addInst(Instance inst);
-        public abstract void removeInst(Instance inst);
-        // count of how many instances are not missing the attribute
-        int instCount = 0;
-        // tally number of times each class appears
-        int[] classCount;
-        int attributeIndex = -1;
-        public FeatureStats(int attribute)
-        {
-            attributeIndex = attribute;
+    private boolean debug = false;
 
-        }
-    }
+    // counts of value and class pairs of all attributes, numeric attributes get the bins of their PiD when ranking
+    protected ContingencyTable table;
+    // discretisation of each numeric attribute, null for other attributes
+    protected PiD[] piDs;
 
-    protected class NominalFeatureStats extends FeatureStats
+    /**
+     * Creates the table and the discretisations from the attributes of the first instance seen.
+     * @param inst first instance
+     */
+    protected void initialiseTable(Instance inst)
     {
-        // tally of number of times an instance with a value V for the attribute is of a class
-        int[][] varCount;
-        // count of the number of times each value appears for the attribute in the window
-        int[] varTotalCount;
-        public void addInst(Instance inst)
+        int[] maxValues = new int[inst.numAttributes()];
+        piDs = new PiD[inst.numAttributes()];
+        for(int a = 0; a < inst.numAttributes();a++)
         {
-            if(varCount == null)
-            {
-                varCount = new int[inst.attribute(attributeIndex).numValues()][inst.numClasses()];
-            }
-
-            if(varTotalCount == null)
+            if(a == inst.classIndex())
+                continue;
+            if (inst.attribute(a).isNominal())
             {
-                varTotalCount = new int[inst.attribute(attributeIndex).numValues()];
-
+                maxValues[a] = inst.attribute(a).numValues();
             }
-
-            if(!inst.isMissing(attributeIndex))
+            else
+            if (inst.attribute(a).isNumeric())
             {
-                varCount[(int)inst.valueSparse(attributeIndex)][(int)inst.classValue()]++;
-                varTotalCount[(int)inst.valueSparse(attributeIndex)]++;
-                classCount[(int)inst.classValue()]++;
-                instCount++;
+                piDs[a] = new PiD();
+                maxValues[a] = piDs[a].getMaxNumBins();
             }
         }
+        table = new ContingencyTable(maxValues, inst.numClasses());
+    }
 
-        public void removeInst(Instance inst)
-        {
-            if(varCount == null)
-            {
-                varCount = new int[inst.attribute(attributeIndex).numValues()][inst.numClasses()];
-            }
-
-            if(varTotalCount == null)
-            {
-                varTotalCount = new int[inst.attribute(attributeIndex).numValues()];
-
-            }
-
-            if(!inst.isMissing(attributeIndex))
-            {
-                varCount[(int)inst.valueSparse(attributeIndex)][(int)inst.classValue()]--;
-                varTotalCount[(int)inst.valueSparse(attributeIndex)]--;
-                classCount[(int)inst.classValue()]--;
-                instCount--;
-            }
-        }
+    /**
+     * adds an instance to the window
+     * @param inst instance to be added
+     */
+    public void addInstance(Instance inst)
+    {
+        updateCounts(inst, 1);
+    }
 
-        public NominalFeatureStats(int attribute)
-        {
-            super(attribute);
-        }
+    /**
+     * removes an instance from the window
+     * @param inst instance to be removed
+     */
+    public void removeInstance(Instance inst)
+    {
+        updateCounts(inst, -1);
     }
 
-    protected class NumericFeatureStats extends FeatureStats
+    /**
+     * Adds an instance to or removes it from the counts of every attribute it is not missing.
+     * @param inst instance
+     * @param delta 1 to add, -1 to remove
+     */
+    protected void updateCounts(Instance inst, int delta)
     {
-        PiD piD;
-        public void addInst(Instance inst)
+        if (table == null)
         {
-            if(!inst.isMissing(attributeIndex))
-            {
-                piD.insert(inst.valueSparse(attributeIndex),(int)inst.classValue(),1);
-                classCount[(int)inst.classValue()]++;
-                instCount++;
-            }
+            initialiseTable(inst);
         }
-        public void removeInst(Instance inst)
+        int c = (int)inst.classValue();
+        if (inst.numValues() < inst.numAttributes())
         {
-            if(!inst.isMissing(attributeIndex))
+            // sparse instance, only the stored attributes are visited, the zeros are counted by the table
+            // the PiDs do not see the zeros, so their bins and the gains of numeric attributes can differ from a dense run
+            table.addSparseInstance(c, delta);
+            for (int i = 0; i < inst.numValues(); i++)
             {
-                piD.remove(inst.valueSparse(attributeIndex),(int)inst.classValue(),1);
-                classCount[(int)inst.classValue()]--;
-                instCount--;
+                int a = inst.index(i);
+                if (a == inst.classIndex())
+                    continue;
+                table.addStored(a, c, delta);
+                if (!inst.isMissingSparse(i))
+                    updateCount(a, inst.valueSparse(i), c, delta);
             }
         }
-        public NumericFeatureStats(int attribute)
+        else
         {
-            super(attribute);
-            piD = new PiD();
+            for(int a = 0; a < inst.numAttributes();a++)
+            {
+                // check not class index and missing
+                if(a != inst.classIndex() && !inst.isMissing(a))
+                    updateCount(a, inst.value(a), c, delta);
+            }
         }
     }
 
-    private boolean debug = false;
-    protected HashMap<Integer,FeatureStats> attributeTableMap = new HashMap<>();
-
     /**
-     * adds an instance to the window
-     * @param inst instance to be added
+     * Adds a value of an attribute to or removes it from the counts.
+     * @param a attribute index
+     * @param value attribute value
+     * @param c class index
+     * @param delta 1 to add, -1 to remove
      */
-    public void addInstance(Instance inst)
+    protected void updateCount(int a, double value, int c, int delta)
     {
-        int c = (int)inst.classValue();
-        for(int a = 0; a < inst.numAttributes();a++)
+        if (piDs[a] != null)
         {
-            // check not class index
-            if(a != inst.classIndex())
-            {
-                // check missing
-                if(!inst.isMissing(a))
-                {
-                    if (inst.attribute(a).isNominal())
-                    {
-                        if (attributeTableMap.containsKey(a))
-                        {
-                            attributeTableMap.get(a).addInst(inst);
-                        }
-                        else
-                        {
-                            attributeTableMap.put(a, new NominalFeatureStats(a));
-                            attributeTableMap.get(a).classCount = new int[inst.numClasses()];
-                        }
-                    }
-                    else
-                    if (inst.attribute(a).isNumeric())
-                    {
-                        if (attributeTableMap.containsKey(a))
-                        {
-                            attributeTableMap.get(a).addInst(inst);
-                        }
-                        else
-                        {
-                            attributeTableMap.put(a, new NumericFeatureStats(a));
-                            attributeTableMap.get(a).classCount = new int[inst.numClasses()];
-                        }
-
-                    }
-                }
-            }
+            if (delta > 0)
+                piDs[a].insert(value, c, 1);
+            else
+                piDs[a].remove(value, c, 1);
+            table.addToClassCount(a, c, delta);
+        }
+        else
+        if (table.maxValues[a] > 0)
+        {
+            table.add(a, (int)value, c, delta);
         }
-
     }
 
     /**
-     * removes an instance from the window
-     * @param inst instance to be removed
+     * Copies the current bins of a numeric attribute into the table, does nothing for nominal attributes.
+     * The implicit zeros of sparse instances are added to the bin that contains 0. The bins themselves were
+     * split and merged on the stored values only, so they are not the bins a dense run of the same data has.
+     * @param a attribute index
      */
-    public void removeInstance(Instance inst)
+    protected void updateBins(int a)
     {
-        int c = (int)inst.classValue();
-        for(int a = 0; a < inst.numAttributes();a++)
+        if (piDs[a] != null)
         {
-            // check not class index
-            if(a != inst.classIndex())
+            piDs[a].fillContingencyTable(table, a);
+            if (table.hasSparseInstances())
             {
-                // check missing
-                if(!inst.isMissing(a))
-                {
-                    if (inst.attribute(a).isNominal())
-                    {
-                        if (attributeTableMap.containsKey(a))
-                        {
-                            attributeTableMap.get(a).removeInst(inst);
-                        }
-                        else
-                        {
-                            attributeTableMap.put(a, new NominalFeatureStats(a));
-                            attributeTableMap.get(a).classCount = new int[inst.numClasses()];
-                        }
-                    }
-                    else
-                    if (inst.attribute(a).isNumeric())
-                    {
-                        if (attributeTableMap.containsKey(a))
-                        {
-                            attributeTableMap.get(a).removeInst(inst);
-                        }
-                        else
-                        {
-                            attributeTableMap.put(a, new NumericFeatureStats(a));
-                            attributeTableMap.get(a).classCount = new int[inst.numClasses()];
-                        }
-
-                    }
-                }
+                // implicit zeros go to the bin of 0, which needs a bin to exist
+                if (table.numValues(a) == 0)
+                    table.resetValues(a, 1);
+                table.setZeroValue(a, piDs[a].getIntervalIndex(0));
             }
         }
-
     }
 
     /**
@@ -236,6 +171,11 @@ public class InfoGainRanking extends RankingFunction
      */
     public int[] rankFeatures(Instances window, int[] previousBestFeatures)
     {
+        if (table == null)
+        {
+            // nothing seen yet
+            return previousBestFeatures;
+        }
         double[] infogainArray = new double[window.numAttributes()];
         for(int a = 0;a < window.numAttributes(); a++)
         {
@@ -265,62 +205,20 @@ public class InfoGainRanking extends RankingFunction
 
     /**
      * computes the info gain of an attribute for a window
+     * The entropies are read from the running sums of the table, numeric attributes only copy their bins over first.
      * @param a attribute index
      * @return info gain
      */
     protected double computeInfoGain(int a,Instances window)
     {
-        double entropyBefore = 0;
-        double entropyAfter = 0;
-
-        // calculating entropy after adding attribute
-        if(window.attribute(a).isNominal())
-        {
-            NominalFeatureStats s = (NominalFeatureStats)attributeTableMap.get(a);
-            for(int i = 0; i < window.attribute(a).numValues();i++)
-            {
-                for(int c = 0; c < window.numClasses();c++)
-                {
-                    if(s.classCount[c] > 0)
-                    {
-                        if(s.instCount > 0)
-                            entropyAfter += ((double)s.varTotalCount[i]/(double)s.instCount) * RankingUtils.computeEntropyNominal(s.varCount[i][c],s.varTotalCount[i]);
-                    }
-                }
-            }
-
-            if(debug)
-                System.out.println("nominal entropy after for " + a + ": " + entropyAfter);
-        }
-        else
-        if(window.attribute(a).isNumeric())
-        {
-            NumericFeatureStats s = (NumericFeatureStats)attributeTableMap.get(a);
-            // [bins][classes]
-            int[][] counts = s.piD.generateContingencyTable();
-            for(int i = 0; i < counts.length;i++)
-            {
-                for (int c = 0; c < counts[i].length; c++)
-                {
-                    if (counts[i][c] > 0) {
-                        if (s.instCount > 0)
-                            entropyAfter += ((double) Utils.sum(counts[i]) / (double) s.instCount) * RankingUtils.computeEntropyNominal(counts[i][c], Utils.sum(counts[i]));
-                    }
-                }
-            }
-        }
+        updateBins(a);
+        double entropyBefore = table.classEntropy(a);
+        double entropyAfter = table.conditionalEntropy(a);
 
-        // calculating entropy before
-        for(int i = 0; i < attributeTableMap.get(a).classCount.length; i++)
-        {
-            if(attributeTableMap.get(a).classCount[i] > 0)
-            {
-                double p = (double)attributeTableMap.get(a).classCount[i] / (double)attributeTableMap.get(a).instCount;
-                entropyBefore += -p * Utils.log2(p);
-            }
-        }
+        if(debug)
+            System.out.println("entropy after for " + a + ": " + entropyAfter);
 
         return (entropyBefore - entropyAfter);
     }
 
-}
\ No newline at end of file
+}
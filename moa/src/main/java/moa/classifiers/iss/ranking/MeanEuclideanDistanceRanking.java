@@ -29,101 +29,161 @@ import com.yahoo.labs.samoa.instances.Instances;
  */
 public class MeanEuclideanDistanceRanking extends RankingFunction
 {
+    // tallies of the nominal attributes per class
     Feature[][] classFeatureSums;
 
+    // running means of the numeric attributes per class, and the implicit zeros of sparse instances
+    WindowStatistics statistics;
+
+    // ranges of the attributes over the window, updated as instances are added and removed,
+    // so normalising does not need to scan the window
+    SlidingWindowRanges ranges;
+    transient EuclideanDistance distanceFunction;
+
     /**
      * adds an instance to window
      * @param inst instance to be added
      */
     public void addInstance(Instance inst)
+    {
+        if (ranges == null)
+            ranges = new SlidingWindowRanges(inst.numAttributes());
+        ranges.add(inst);
+        updateSums(inst, 1);
+    }
+
+    /**
+     * remove instance from window
+     * instances have to be removed in the order they were added, as the ranges only track the oldest instance
+     * @param inst instance to be removed
+     */
+    public void removeInstance(Instance inst)
+    {
+        if (ranges != null)
+            ranges.removeOldest();
+        updateSums(inst, -1);
+    }
+
+    /**
+     * Adds an instance to or removes it from the statistics of its class.
+     * Sparse instances only visit the attributes they store.
+     * @param inst instance
+     * @param delta 1 to add, -1 to remove
+     */
+    protected void updateSums(Instance inst, int delta)
     {
         if( classFeatureSums == null)
+        {
             classFeatureSums = new Feature[inst.numClasses()][inst.numAttributes()];
+            statistics = new WindowStatistics(inst.numAttributes(), inst.numClasses());
+        }
+        if (delta > 0)
+            statistics.addInstance(inst);
+        else
+            statistics.removeInstance(inst);
 
-        for(int a = 0;a < inst.numAttributes(); a++)
+        int c = (int) inst.classValue();
+        if (inst.numValues() < inst.numAttributes())
         {
-            if(a != inst.classIndex() && !inst.isMissing(a))
+            for (int i = 0; i < inst.numValues(); i++)
             {
-                if (inst.attribute(a).isNumeric())
-                {
-                    double v = inst.valueSparse(a);
-                    if (!Double.isNaN(v))
-                    {
-                        if (classFeatureSums[(int) inst.classValue()][a] == null)
-                        {
-                            classFeatureSums[(int) inst.classValue()][a] = new Feature();
-                            classFeatureSums[(int) inst.classValue()][a].isNum = true;
-                        }
-                        classFeatureSums[(int) inst.classValue()][a].sum += v;
-                        classFeatureSums[(int) inst.classValue()][a].count++;
-                    }
-                }
-                else if (inst.attribute(a).isNominal())
-                {
-                    if (classFeatureSums[(int) inst.classValue()][a] == null)
-                    {
-                        classFeatureSums[(int) inst.classValue()][a] = new Feature();
-                        classFeatureSums[(int) inst.classValue()][a].isNum = false;
-                    }
-                    if (classFeatureSums[(int) inst.classValue()][a].nomTally == null)
-                    {
-                        classFeatureSums[(int) inst.classValue()][a].nomTally = new int[inst.attribute(a).numValues()];
-                    }
-                    // add a -1 if nominial values start at 1 to this line
-                    classFeatureSums[(int) inst.classValue()][a].nomTally[(int) (inst.valueSparse(a))]++;
-                    classFeatureSums[(int) inst.classValue()][a].count++;
-                }
+                int a = inst.index(i);
+                if (a != inst.classIndex() && !inst.isMissingSparse(i))
+                    updateTally(inst, c, a, inst.valueSparse(i), delta);
+            }
+        }
+        else
+        {
+            for(int a = 0;a < inst.numAttributes(); a++)
+            {
+                if(a != inst.classIndex() && !inst.isMissing(a))
+                    updateTally(inst, c, a, inst.value(a), delta);
             }
         }
     }
 
     /**
-     * remove instance from window
-     * @param inst instance to be removed
+     * Adds a value to or removes it from the tally of a nominal attribute for a class.
+     * @param inst instance the value is from
+     * @param c class index
+     * @param a attribute index
+     * @param v attribute value
+     * @param delta 1 to add, -1 to remove
      */
-    public void removeInstance(Instance inst)
+    protected void updateTally(Instance inst, int c, int a, double v, int delta)
     {
-        if( classFeatureSums == null)
-            classFeatureSums = new Feature[inst.numClasses()][inst.numAttributes()];
-
-        for(int a = 0;a < inst.numAttributes(); a++)
+        if (inst.attribute(a).isNominal())
         {
-            if(a != inst.classIndex() && !inst.isMissing(a))
+            if (classFeatureSums[c][a] == null)
             {
-                if (inst.attribute(a).isNumeric())
-                {
-                    double v = inst.valueSparse(a);
-                    if (!Double.isNaN(v))
-                    {
-                        if (classFeatureSums[(int) inst.classValue()][a] == null)
-                        {
-                            classFeatureSums[(int) inst.classValue()][a] = new Feature();
-                            classFeatureSums[(int) inst.classValue()][a].isNum = true;
-                        }
-                        classFeatureSums[(int) inst.classValue()][a].sum -= v;
-                        classFeatureSums[(int) inst.classValue()][a].count--;
-                    }
-                }
-                else
-                if (inst.attribute(a).isNominal())
-                {
-                    if (classFeatureSums[(int) inst.classValue()][a] == null)
-                    {
-                        classFeatureSums[(int) inst.classValue()][a] = new Feature();
-                        classFeatureSums[(int) inst.classValue()][a].isNum = false;
-                    }
-                    if (classFeatureSums[(int) inst.classValue()][a].nomTally == null)
-                    {
-                        classFeatureSums[(int) inst.classValue()][a].nomTally = new int[inst.attribute(a).numValues()];
-                    }
-                    // add a -1 if nominial values start at 1 to this line
-                    classFeatureSums[(int) inst.classValue()][a].nomTally[(int) (inst.valueSparse(a))]--;
-                    classFeatureSums[(int) inst.classValue()][a].count--;
-                }
+                classFeatureSums[c][a] = new Feature();
+                classFeatureSums[c][a].isNum = false;
+            }
+            if (classFeatureSums[c][a].nomTally == null)
+            {
+                classFeatureSums[c][a].nomTally = new int[inst.attribute(a).numValues()];
             }
+            // add a -1 if nominial values start at 1 to this line
+            classFeatureSums[c][a].nomTally[(int) v] += delta;
+            classFeatureSums[c][a].count += delta;
         }
     }
 
+    /**
+     * Number of sparse instances of a class in the window that do not store an attribute.
+     * @param c class index
+     * @param a attribute index
+     * @return number of implicit zeros
+     */
+    protected int implicitCount(int c, int a)
+    {
+        return statistics.implicitCount(a, c);
+    }
+
+    /**
+     * Returns whether an attribute has values for a class in the window, stored or as implicit zeros.
+     * Nominal attributes keep counting as seen once they have been, like before.
+     * @param c class index
+     * @param a attribute index
+     * @param numeric whether the attribute is numeric
+     * @return true if the class has values for the attribute
+     */
+    protected boolean hasValues(int c, int a, boolean numeric)
+    {
+        if (numeric)
+            return statistics.count(a, c) > 0;
+        return classFeatureSums[c][a] != null || implicitCount(c, a) > 0;
+    }
+
+    /**
+     * Mean of a numeric attribute for a class, including implicit zeros.
+     * @param c class index
+     * @param a attribute index
+     * @return mean value
+     */
+    protected double meanValue(int c, int a)
+    {
+        return statistics.mean(a, c);
+    }
+
+    /**
+     * Fraction of the values of a nominal attribute for a class that are equal to a value, including implicit zeros.
+     * @param c class index
+     * @param a attribute index
+     * @param v value index
+     * @return fraction of the values
+     */
+    protected double valueFraction(int c, int a, int v)
+    {
+        Feature f = classFeatureSums[c][a];
+        int implicit = implicitCount(c, a);
+        int tally = (f == null) ? 0 : f.nomTally[v];
+        int count = (f == null) ? 0 : f.count;
+        if (v == 0)
+            tally += implicit;
+        return (double)tally / (double)(count + implicit);
+    }
+
     /**
      * ranks features in the window
      * @param window
@@ -133,12 +193,18 @@ public class MeanEuclideanDistanceRanking extends RankingFunction
     public int[] rankFeatures(Instances window, int[] previousBestFeatures)
     {
 
-        // use EuclideanDistance class to normalise stuff
-        EuclideanDistance distanceFunction = new EuclideanDistance();
-        distanceFunction.setInstances(window);
+        // use EuclideanDistance class to normalise stuff, with the ranges of the instances added so far
+        if (ranges == null)
+            ranges = new SlidingWindowRanges(window.numAttributes());
+        if (distanceFunction == null)
+            distanceFunction = new EuclideanDistance();
+        distanceFunction.setRanges(window, ranges.getRanges());
 
         if( classFeatureSums == null)
+        {
             classFeatureSums = new Feature[window.numClasses()][window.numAttributes()];
+            statistics = new WindowStatistics(window.numAttributes(), window.numClasses());
+        }
 
         // using mean to determine average numeric value of class and mode to determine average nominal value of class
 
@@ -151,13 +217,14 @@ public class MeanEuclideanDistanceRanking extends RankingFunction
             {
                 if(a != window.classIndex())
                 {
+                    boolean numeric = window.attribute(a).isNumeric();
                     for (int j = c + 1; j < window.numClasses(); ++j)
                     {
-                        if (classFeatureSums[c][a] != null && classFeatureSums[j][a] != null)
+                        if (hasValues(c, a, numeric) && hasValues(j, a, numeric))
                         {
-                            if (window.attribute(a).isNumeric())
+                            if (numeric)
                             {
-                                double eucD = distanceFunction.normalise((classFeatureSums[c][a].getAverageValue()),a) - distanceFunction.normalise(classFeatureSums[j][a].getAverageValue(),a);
+                                double eucD = distanceFunction.normalise(meanValue(c, a),a) - distanceFunction.normalise(meanValue(j, a),a);
                                 featureDistances[a] += eucD * eucD;
                             }
                             else
@@ -166,7 +233,7 @@ public class MeanEuclideanDistanceRanking extends RankingFunction
                                 double eucD = 0;
                                 for (int i = 0; i < window.attribute(a).numValues(); i++)
                                 {
-                                    double diff = (double)classFeatureSums[c][a].nomTally[i] / (double)classFeatureSums[c][a].count - (double)classFeatureSums[j][a].nomTally[i] / (double)classFeatureSums[j][a].count;
+                                    double diff = valueFraction(c, a, i) - valueFraction(j, a, i);
                                     //System.out.println("diff " + diff);
                                     eucD += diff * diff;
                                 }
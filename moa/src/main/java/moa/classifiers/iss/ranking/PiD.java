@@ -36,7 +36,12 @@ public class PiD extends AbstractOptionHandler implements NumericAttributeClassO
 	private double min = Double.MAX_VALUE;
 	private double max = Double.MIN_VALUE;
 	private double[] breaks;
-	private double[][] counts;
+	// counts of interval i and class k at counts[i * nbClasses + k], for size + 1 intervals,
+	// the last one is only used while an interval is split and another one merged
+	private double[] counts;
+	// sum of the counts of each interval, recomputed from the interval whenever it changes
+	// so it is always exactly what summing the interval gives
+	private double[] rowTotals;
 
 	private double tempBreak;
 
@@ -65,7 +70,8 @@ public class PiD extends AbstractOptionHandler implements NumericAttributeClassO
 
 		//find insertion position
 		final int pos = findPosCounts(value);
-		counts[pos][classValue] -= weight;
+		counts[pos * nbClasses + classValue] -= weight;
+		updateRowTotal(pos);
 		numObservations -= weight;
 
 	}
@@ -88,21 +94,23 @@ public class PiD extends AbstractOptionHandler implements NumericAttributeClassO
 		{
 			//we use one more space for temporary work
 			breaks = new double[sizeOption.getValue()];
-			counts = new double[sizeOption.getValue()+1][classValue+1];
-			nbClasses = 1;
+			nbClasses = classValue + 1;
+			counts = new double[(sizeOption.getValue()+1) * nbClasses];
+			rowTotals = new double[sizeOption.getValue()+1];
 		}
 
 		//new class found
 		if (classValue >= nbClasses)
 		{
-			nbClasses = classValue + 1;
-			//extend counts arrays size in the summary
-			for (int i=0; i!= sizeOption.getValue(); ++i)
+			//widen the rows of the counts
+			final int newNbClasses = classValue + 1;
+			final double[] newCounts = new double[(sizeOption.getValue()+1) * newNbClasses];
+			for (int i=0; i!= sizeOption.getValue()+1; ++i)
 			{
-				final double newCount[] = new double[nbClasses];
-				System.arraycopy(counts[i], 0, newCount, 0, counts[i].length);
-				counts[i] = newCount;
+				System.arraycopy(counts, i * nbClasses, newCounts, i * newNbClasses, nbClasses);
 			}
+			counts = newCounts;
+			nbClasses = newNbClasses;
 		}
 		
 		//find insertion position
@@ -115,9 +123,10 @@ public class PiD extends AbstractOptionHandler implements NumericAttributeClassO
 			insertInterval(value, pos);
 			summarySize++;
 		}
-		counts[pos][classValue] += weight;
+		counts[pos * nbClasses + classValue] += weight;
+		updateRowTotal(pos);
 
-		if (summarySize == sizeOption.getValue() && Utils.sum(counts[pos])+1 >((numObservations + 2)* alphaOption.getValue())/sizeOption.getValue())
+		if (summarySize == sizeOption.getValue() && rowTotals[pos]+1 >((numObservations + 2)* alphaOption.getValue())/sizeOption.getValue())
 		{
 			//System.out.println("pos split = " + pos);
 
@@ -129,7 +138,8 @@ public class PiD extends AbstractOptionHandler implements NumericAttributeClassO
 			mergeBestInterval();
 
 			breaks[breaks.length-1] = tempBreak;
-			counts[counts.length-1] = new double[nbClasses];
+			Arrays.fill(counts, sizeOption.getValue() * nbClasses, counts.length, 0);
+			rowTotals[sizeOption.getValue()] = 0;
 		}
 		numObservations += weight;
 		//System.out.println("insertion " + numObservations + " VALUE " + value);
@@ -158,8 +168,9 @@ public class PiD extends AbstractOptionHandler implements NumericAttributeClassO
 		if (pos == size-1)
 		{
 			breaks[size-1] = breaks[size-2] + (max-min)/size;
-			counts[size] = new double[nbClasses];
-			splitCounts(counts[size-1], counts[size]);
+			Arrays.fill(counts, size * nbClasses, (size+1) * nbClasses, 0);
+			rowTotals[size] = 0;
+			splitCounts(size-1, size);
 			
 		}
 		else
@@ -175,7 +186,7 @@ public class PiD extends AbstractOptionHandler implements NumericAttributeClassO
 			}
 			//insert new interval
 			insertInterval(breaK, pos);
-			splitCounts(counts[pos+1], counts[pos]);
+			splitCounts(pos+1, pos);
 		}
 
 		//System.out.println("split after\n" + toString());
@@ -186,17 +197,40 @@ public class PiD extends AbstractOptionHandler implements NumericAttributeClassO
 	private void insertInterval(final double breaK, final int pos) {
 		System.arraycopy(breaks, pos, breaks, pos+1, breaks.length-pos-1);
 		breaks[pos] = breaK;
-		System.arraycopy(counts, pos, counts, pos+1, counts.length-pos-1);
-		counts[pos] = new double[nbClasses];
+		System.arraycopy(counts, pos * nbClasses, counts, (pos+1) * nbClasses, counts.length - (pos+1) * nbClasses);
+		Arrays.fill(counts, pos * nbClasses, (pos+1) * nbClasses, 0);
+		System.arraycopy(rowTotals, pos, rowTotals, pos+1, rowTotals.length-pos-1);
+		rowTotals[pos] = 0;
 	}
 
-	private void splitCounts(final double toSplit[], final double split1[])
+	/**
+	 * Moves half of the counts of an interval to another one.
+	 * @param toSplit interval to split
+	 * @param split1 interval receiving half of the counts
+	 */
+	private void splitCounts(final int toSplit, final int split1)
 	{
+		final int from = toSplit * nbClasses;
+		final int to = split1 * nbClasses;
 		for (int i=0; i!=nbClasses ; ++i)
 		{
-			split1[i] = toSplit[i] / 2;
-			toSplit[i] -= split1[i];
+			counts[to + i] = counts[from + i] / 2;
+			counts[from + i] -= counts[to + i];
 		}
+		updateRowTotal(toSplit);
+		updateRowTotal(split1);
+	}
+
+	/**
+	 * Sums the counts of an interval over the classes, in class order like Utils.sum().
+	 * @param pos interval
+	 */
+	private void updateRowTotal(final int pos)
+	{
+		double sum = 0;
+		for (int i = pos * nbClasses, end = i + nbClasses; i < end; i++)
+			sum += counts[i];
+		rowTotals[pos] = sum;
 	}
 	
 	private int findPosCounts(final double value)
@@ -220,13 +254,14 @@ public class PiD extends AbstractOptionHandler implements NumericAttributeClassO
 		double smallestCount = Double.MAX_VALUE;
 		int bestPosToMerge = 1;
 		
-		double previousCount = Utils.sum(counts[0]);
+		double previousCount = rowTotals[0];
 		double nextCount;
+		final int rows = sizeOption.getValue() + 1;
 		
 		//find best position to merge
-		for (int i=1; i != counts.length; ++i)
+		for (int i=1; i != rows; ++i)
 		{
-			nextCount = Utils.sum(counts[i]);
+			nextCount = rowTotals[i];
 			final double total = previousCount + nextCount;
 			if (total < smallestCount)
 			{
@@ -239,11 +274,13 @@ public class PiD extends AbstractOptionHandler implements NumericAttributeClassO
 		//merge counts
 		for (int k=0; k!=nbClasses; ++k)
 		{
-			counts[bestPosToMerge-1][k] += counts[bestPosToMerge][k];
+			counts[(bestPosToMerge-1) * nbClasses + k] += counts[bestPosToMerge * nbClasses + k];
 		}
+		updateRowTotal(bestPosToMerge-1);
 
 		//		System.out.println("Best pos: " + bestPosToMerge);
-		System.arraycopy(counts, bestPosToMerge+1, counts, bestPosToMerge, counts.length-bestPosToMerge-1);
+		System.arraycopy(counts, (bestPosToMerge+1) * nbClasses, counts, bestPosToMerge * nbClasses, counts.length - (bestPosToMerge+1) * nbClasses);
+		System.arraycopy(rowTotals, bestPosToMerge+1, rowTotals, bestPosToMerge, rowTotals.length-bestPosToMerge-1);
 
 
 		//remove break
@@ -262,16 +299,16 @@ public class PiD extends AbstractOptionHandler implements NumericAttributeClassO
 		double total = 0.0;
 		for (int k=0;k!=nbClasses;k++)
 		{
-			buf.append(counts[0][k] + "\t");
-			total += counts[0][k];
+			buf.append(counts[k] + "\t");
+			total += counts[k];
 		}
 		for (int i=0;i!=summarySize;++i)
 		{
 			buf.append("\n" + breaks[i] + "\t");
 			for (int k=0;k!=nbClasses;k++)
 			{
-				buf.append(counts[i+1][k] + "\t");
-				total += counts[i+1][k];	
+				buf.append(counts[(i+1) * nbClasses + k] + "\t");
+				total += counts[(i+1) * nbClasses + k];	
 			}
 		}
 		buf.append("\nTotal: " + total);
@@ -281,7 +318,7 @@ public class PiD extends AbstractOptionHandler implements NumericAttributeClassO
 	private double getCounts(final int classValue) {
 		double count = 0;
 		for (int i=0;i<summarySize; i++)
-			count += counts[i][classValue];
+			count += counts[i * nbClasses + classValue];
 		return count;
 	}
 
@@ -292,11 +329,48 @@ public class PiD extends AbstractOptionHandler implements NumericAttributeClassO
 		{
 			for (int k=0; k<nbClasses; k++)
 			{
-				contingencyTable[i][k] = (int)counts[i][k];
+				contingencyTable[i][k] = (int)counts[i * nbClasses + k];
 			}
 		}
 		return contingencyTable;
 	}
+	/**
+	 * Writes the counts of the intervals into the values of an attribute of a
+	 * contingency table, truncated to whole instances like generateContingencyTable().
+	 * The class and instance counts of the attribute are left alone.
+	 * @param table table to write to, needs room for getMaxNumBins() values of the attribute
+	 * @param attribute attribute index in the table
+	 */
+	public void fillContingencyTable(final ContingencyTable table, final int attribute) {
+		table.resetValues(attribute, summarySize);
+		for (int i=0; i<summarySize; i++)
+		{
+			for (int k=0; k<nbClasses; k++)
+			{
+				table.setCount(attribute, i, k, (int)counts[i * nbClasses + k]);
+			}
+		}
+	}
+
+	/**
+	 * Returns the interval a value falls in, as written by fillContingencyTable.
+	 * @param value value
+	 * @return interval index, 0 if there are no intervals yet
+	 */
+	public int getIntervalIndex(final double value) {
+		if (summarySize == 0)
+			return 0;
+		return Math.min(findPosCounts(value), summarySize - 1);
+	}
+
+	/**
+	 * Returns the maximum number of intervals.
+	 * @return maximum number of intervals
+	 */
+	public int getMaxNumBins() {
+		return sizeOption.getValue();
+	}
+
 	public double[][] generateContingencyTableDouble()
 	{
 		final double contingencyTable[][] = new double[summarySize][nbClasses];
@@ -305,7 +379,7 @@ public class PiD extends AbstractOptionHandler implements NumericAttributeClassO
 		{
 			for (int k=0; k<nbClasses; k++)
 			{
-				contingencyTable[i][k] = counts[i][k];
+				contingencyTable[i][k] = counts[i * nbClasses + k];
 			}
 		}
 		return contingencyTable;
@@ -327,7 +401,9 @@ public class PiD extends AbstractOptionHandler implements NumericAttributeClassO
 			return 0.0;
 		
 		final int pos = findPosCounts(value);
-    	return counts[pos][classValue] / Utils.sum(counts[pos]);
+		if (classValue >= nbClasses)
+			return 0.0;
+    	return counts[pos * nbClasses + classValue] / rowTotals[pos];
 		
 	}
 	
@@ -335,17 +411,17 @@ public class PiD extends AbstractOptionHandler implements NumericAttributeClassO
 		if (classValue >= nbClasses)
 			return 0;
 //		System.out.println(findPosCounts(value) + " - " + classValue + " - " + nbClasses);
-    	return counts[findPosCounts(value)][classValue];
+    	return counts[findPosCounts(value) * nbClasses + classValue];
 	}
 	
 	public double getCountBelow(final double splitValue, final int classValue) {
 		int pos = 0;
 		//counts before the first cut point
-		double count = counts[0][classValue];
+		double count = counts[classValue];
 		
 		//iterate on break
 		while(pos < summarySize-1 && breaks[pos] <= splitValue) {
-			count += counts[pos+1][classValue];
+			count += counts[(pos+1) * nbClasses + classValue];
 			pos++;
 		}
 		return count;
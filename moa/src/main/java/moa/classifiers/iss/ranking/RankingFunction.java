@@ -77,53 +77,92 @@ public abstract class RankingFunction implements Serializable
 
     /**
      * Selects the top 'numFeatures' number of features, sorted decendingly
+     * Features with equal scores are ordered by index, the class and features scoring NaN or negative infinity are never selected.
+     * Keeps the best features seen so far in a heap, so this takes O(n log numFeatures) for n features.
      * @param scores An array containing the score of each feature. Its size should be the number of features
      * @param numFeatures the top number of features to return (the size of the returned array)
-     * @return
+     * @return indexes of the best features, best first, padded with -1 if there are not enough features to select
      */
     public int[] sortFeatureArrayDesc(double[] scores, int numFeatures)
     {
         int[] returnArray = new int[numFeatures];
-        for(int i = 0; i <  numFeatures; ++i)
-        {
-            returnArray[i] = -1;
-        }
 
-        for(int i = 0; i <  numFeatures; i++)
+        // min heap of the best features so far, the root is the worst of them
+        int[] heap = new int[numFeatures];
+        int size = 0;
+        for(int z = 0; z < scores.length;z++)
         {
-            double largest= Double.NEGATIVE_INFINITY;
-            int largestIndex = -1;
-            for(int z = 0; z < scores.length;z++)
+            if(z == classIndex || !(scores[z] > Double.NEGATIVE_INFINITY))
+                continue;
+
+            if(size < numFeatures)
             {
-                if(z!=classIndex)
+                // sift up
+                int i = size++;
+                while(i > 0)
                 {
-                    if (scores[z] > largest && !contains(returnArray, z))
-                    {
-                        largest = scores[z];
-                        largestIndex = z;
-                    }
+                    int parent = (i - 1) / 2;
+                    if(!ranksHigher(heap[parent], z, scores))
+                        break;
+                    heap[i] = heap[parent];
+                    i = parent;
                 }
+                heap[i] = z;
             }
-            returnArray[i] = largestIndex;
+            else if(numFeatures > 0 && ranksHigher(z, heap[0], scores))
+            {
+                heap[0] = z;
+                siftDown(heap, size, scores);
+            }
+        }
+
+        for(int i = numFeatures - 1; i >= size; i--)
+        {
+            returnArray[i] = -1;
+        }
+        // take the worst remaining feature off the heap for each position from the back
+        for(int i = size - 1; i >= 0; i--)
+        {
+            returnArray[i] = heap[0];
+            heap[0] = heap[i];
+            siftDown(heap, i, scores);
         }
 
         return returnArray;
     }
 
     /**
-     * checks if the index is in the array
-     *
-     * @param array
-     * @param index
-     * @return true if it is, false if no
+     * Moves the root of a heap of features down to its place.
+     * @param heap min heap of feature indexes, the worst ranked feature at the root
+     * @param size number of features in the heap
+     * @param scores scores of the features
      */
-    private boolean contains (int[] array, int index)
+    private static void siftDown(int[] heap, int size, double[] scores)
     {
-        for(int i = 0; i < array.length;i++)
+        int feature = heap[0];
+        int i = 0;
+        while(2 * i + 1 < size)
         {
-            if(array[i] == index)
-                return true;
+            int child = 2 * i + 1;
+            if(child + 1 < size && ranksHigher(heap[child], heap[child + 1], scores))
+                child++;
+            if(!ranksHigher(feature, heap[child], scores))
+                break;
+            heap[i] = heap[child];
+            i = child;
         }
-        return false;
+        heap[i] = feature;
+    }
+
+    /**
+     * Whether feature a is ranked before feature b, i.e. has the higher score or the same score and the lower index.
+     * @param a index of a feature
+     * @param b index of another feature
+     * @param scores scores of the features
+     * @return true if a is ranked before b
+     */
+    private static boolean ranksHigher(int a, int b, double[] scores)
+    {
+        return scores[a] > scores[b] || (scores[a] == scores[b] && a < b);
     }
-}
\ No newline at end of file
+}
@@ -137,12 +137,14 @@ public class RankingUtils
 
     /**
      * calculates the Standard deviation for a given attribute
+     * Scans the whole window, rankings should keep a WindowStatistics instead, see calculateSD(WindowStatistics, int)
      * @param mean
      * @param n
      * @param attributeIndex
      * @param window
      * @return
      */
+    @Deprecated
     public static double calculateSD(double mean,int n, int attributeIndex, Instances window)
     {
         double sd = 0;
@@ -157,4 +159,15 @@ public class RankingUtils
         sd = Math.sqrt(sd/n);
         return sd;
     }
-}
\ No newline at end of file
+
+    /**
+     * calculates the Standard deviation for a given attribute from running statistics, in O(number of classes)
+     * @param statistics statistics of the window, kept up to date by the addInstance and removeInstance hooks of the ranking
+     * @param attributeIndex
+     * @return population standard deviation over all classes, NaN if the attribute has no values
+     */
+    public static double calculateSD(WindowStatistics statistics, int attributeIndex)
+    {
+        return statistics.standardDeviation(attributeIndex);
+    }
+}
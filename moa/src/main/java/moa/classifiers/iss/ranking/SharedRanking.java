@@ -0,0 +1,290 @@
+/*
+ *    SharedRanking.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package moa.classifiers.iss.ranking;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+/**
+ * Sliding window and ranking function shared by several learners trained on the same stream, so the statistics
+ * of every instance are only updated once.
+ * Rankings are shared within a scope owned by whoever runs the learners over the stream, e.g. a task, which hands it
+ * to its learners and releases it when the run ends. Learners subscribe with a key naming their stream, those in the
+ * same scope with the same key, window size and ranking function share one window. Every learner starts at the
+ * beginning of the stream and keeps its own position in it: the first learner to train on an instance queues it,
+ * the others only move past it, and queued instances enter the window once every subscriber has passed them or a
+ * subscriber ranks with them. Learners predicting and training in lockstep therefore get exactly the rankings they
+ * would get on their own. A learner lagging behind the others ranks with the newer window: it always holds the
+ * instances up to the position of the ranking learner, and at most those up to the position of the subscriber
+ * furthest ahead. The window it ranks with is thus ahead of it by at most as many instances as it lags behind that
+ * subscriber, e.g. the queue size of a threaded EvaluatePrequentialMultiLearner.
+ * @version 1
+ */
+public class SharedRanking implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    protected String id;
+    protected RankingFunction ranking;
+    protected int windowSize;
+    protected ArrayDeque<Instance> window = new ArrayDeque<Instance>();
+
+    // instances received but not yet in the window, and how many instances were received in total
+    protected ArrayDeque<Instance> queue = new ArrayDeque<Instance>();
+    protected long received;
+
+    // subscribers are registered again when deserialised, copies of learners get their own copy of the window
+    protected transient List<Subscription> subscribers = new ArrayList<Subscription>();
+
+    // scope the ranking is shared in, copies are not shared with anyone
+    protected transient Scope scope;
+
+    protected SharedRanking(Scope scope, String id, RankingFunction ranking, int windowSize)
+    {
+        this.scope = scope;
+        this.id = id;
+        this.ranking = ranking;
+        this.windowSize = windowSize;
+    }
+
+    protected synchronized Subscription subscribe()
+    {
+        Subscription subscription = new Subscription(this);
+        subscribers.add(subscription);
+        return subscription;
+    }
+
+    /**
+     * Ends a subscription, dropping the shared ranking from its scope with its last subscriber.
+     * @param subscription subscription
+     */
+    protected static void unsubscribe(Subscription subscription)
+    {
+        SharedRanking sharedRanking = subscription.sharedRanking;
+        Scope scope = sharedRanking.scope;
+        if (scope == null)
+        {
+            sharedRanking.remove(subscription);
+            return;
+        }
+        synchronized (scope)
+        {
+            if (sharedRanking.remove(subscription) && scope.shared.get(sharedRanking.id) == sharedRanking)
+                scope.shared.remove(sharedRanking.id);
+        }
+    }
+
+    /**
+     * Removes a subscriber.
+     * @param subscription subscriber
+     * @return true if it was the last subscriber
+     */
+    protected synchronized boolean remove(Subscription subscription)
+    {
+        if (!subscribers.remove(subscription))
+            return false;
+        flush();
+        return subscribers.isEmpty();
+    }
+
+    /**
+     * Receives the instance a subscriber trains on next.
+     * @param subscription subscriber
+     * @param inst instance
+     */
+    protected synchronized void add(Subscription subscription, Instance inst)
+    {
+        if (subscription.position == received)
+        {
+            queue.addLast(inst);
+            received++;
+        }
+        subscription.position++;
+        flush();
+    }
+
+    /**
+     * Ranks with the window as of the position of a subscriber.
+     * @param subscription subscriber
+     * @param header header of the window
+     * @param previousBestFeatures current ranking of the subscriber
+     * @return new ranking
+     */
+    protected synchronized int[] rankFeatures(Subscription subscription, Instances header, int[] previousBestFeatures)
+    {
+        apply(subscription.position);
+        ranking.numberOfFeatures = subscription.numberOfFeatures;
+        return ranking.rankFeatures(header, previousBestFeatures);
+    }
+
+    /**
+     * Moves the instances every subscriber has passed into the window.
+     */
+    protected void flush()
+    {
+        if (subscribers.isEmpty())
+            return;
+        long position = Long.MAX_VALUE;
+        for (Subscription subscription : subscribers)
+            position = Math.min(position, subscription.position);
+        apply(position);
+    }
+
+    /**
+     * Moves queued instances into the window up to a position in the stream.
+     * @param position number of instances of the stream that should be in the window
+     */
+    protected void apply(long position)
+    {
+        while (received - queue.size() < position)
+        {
+            Instance inst = queue.removeFirst();
+            if (window.size() >= windowSize)
+                ranking.removeInstance(window.removeFirst());
+            window.addLast(inst);
+            ranking.addInstance(inst);
+        }
+    }
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException
+    {
+        out.defaultWriteObject();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        subscribers = new ArrayList<Subscription>();
+    }
+
+    /**
+     * Shared rankings of one run over a stream, owned by whoever runs the learners.
+     * Learners subscribing to a shared ranking of the scope start at the beginning of the stream, so all of them
+     * have to train on the stream of the run from its first instance.
+     */
+    public static class Scope
+    {
+        // shared rankings with subscribers, by key, window size and ranking function
+        protected final Map<String, SharedRanking> shared = new HashMap<String, SharedRanking>();
+
+        protected boolean released = false;
+
+        /**
+         * Subscribes to the shared ranking of a stream, creating it if there is none yet.
+         * @param key name of the stream
+         * @param windowSize size of the window
+         * @param ranking initialised ranking function to share if there is no shared ranking yet, its class is part of the key
+         * @return subscription to rank with, to be released when the learner is done
+         * @throws IllegalStateException if the scope has been released
+         */
+        public synchronized Subscription subscribe(String key, int windowSize, RankingFunction ranking)
+        {
+            if (released)
+                throw new IllegalStateException("The run sharing the ranking of " + key + " has ended.");
+            String id = key + "|" + windowSize + "|" + ranking.getClass().getName();
+            SharedRanking sharedRanking = shared.get(id);
+            if (sharedRanking == null)
+            {
+                sharedRanking = new SharedRanking(this, id, ranking, windowSize);
+                shared.put(id, sharedRanking);
+            }
+            return sharedRanking.subscribe();
+        }
+
+        /**
+         * Number of shared rankings that have subscribers.
+         * @return number of shared rankings
+         */
+        public synchronized int numShared()
+        {
+            return shared.size();
+        }
+
+        /**
+         * Ends the run, nobody can subscribe afterwards. Current subscribers keep their shared rankings.
+         */
+        public synchronized void release()
+        {
+            released = true;
+            shared.clear();
+        }
+    }
+
+    /**
+     * Ranking function of one learner that ranks with a shared ranking.
+     * The shared ranking keeps the window, so instances removed from the window of the learner are ignored.
+     */
+    public static class Subscription extends RankingFunction
+    {
+        private static final long serialVersionUID = 1L;
+
+        protected SharedRanking sharedRanking;
+        // number of instances of the stream this subscriber has trained on
+        protected long position;
+
+        protected Subscription(SharedRanking sharedRanking)
+        {
+            this.sharedRanking = sharedRanking;
+        }
+
+        @Override
+        public int[] rankFeatures(Instances window, int[] previousBestFeatures)
+        {
+            return sharedRanking.rankFeatures(this, window, previousBestFeatures);
+        }
+
+        @Override
+        public void addInstance(Instance inst)
+        {
+            sharedRanking.add(this, inst);
+        }
+
+        @Override
+        public void removeInstance(Instance inst)
+        {
+        }
+
+        /**
+         * Ends the subscription, the shared ranking is dropped from its scope with its last subscriber.
+         */
+        public void release()
+        {
+            unsubscribe(this);
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+        {
+            in.defaultReadObject();
+            synchronized (sharedRanking)
+            {
+                sharedRanking.subscribers.add(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ *    SharedRankingLearner.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package moa.classifiers.iss.ranking;
+
+/**
+ * Learner that can share its ranking window and statistics with the other learners of a run.
+ * @version 1
+ */
+public interface SharedRankingLearner
+{
+    /**
+     * Sets the scope to share rankings in, before the learner trains on its first instance.
+     * Learners without a scope keep their ranking to themselves.
+     * @param scope shared rankings of the run, or null
+     */
+    void setSharedRankingScope(SharedRanking.Scope scope);
+}
@@ -18,7 +18,6 @@
 
 package moa.classifiers.iss.ranking;
 import com.yahoo.labs.samoa.instances.Instances;
-import moa.core.Utils;
 
 /**
  * SU ranking function
@@ -38,6 +37,11 @@ public class SymmetricUncertaintyRanking extends InfoGainRanking
     @Override
     public int[] rankFeatures(Instances window, int[] previousBestFeatures)
     {
+        if (table == null)
+        {
+            // nothing seen yet
+            return previousBestFeatures;
+        }
         double[] suArray = new double[window.numAttributes()];
         for(int a = 0;a < window.numAttributes(); a++)
         {
@@ -65,77 +69,12 @@ public class SymmetricUncertaintyRanking extends InfoGainRanking
      */
     protected double computeSU(int a, Instances window)
     {
-        double entropyBefore = 0;
-        double entropyAfter = 0;
-        double entropyAttribute = 0;
-
-        // S = -k·sum[Pi log(Pi)]
-        if(window.attribute(a).isNominal())
-        {
-            // nominal attribute
-            NominalFeatureStats s = (NominalFeatureStats)attributeTableMap.get(a);
-            // compute Entropy for all instances in the window
-            for(int i = 0; i < window.attribute(a).numValues();i++)
-            {
-                for(int c = 0; c < window.numClasses();c++)
-                {
-                    if(s.classCount[c] > 0)
-                    {
-                        if(s.instCount > 0)
-                        {
-                            entropyAfter += (((double) s.varTotalCount[i] / (double) s.instCount)) * RankingUtils.computeEntropyNominal(s.varCount[i][c], s.varTotalCount[i]);
-                            //System.out.println("total " + varTotalCount[i] + " inst count " + instCount + " prob " + Double.toString((double) varTotalCount[i] / (double) instCount) + " entropy " + Double.toString(RankingUtils.computeEntropyNominal(varCount[i][c], varTotalCount[i])));
-                            //System.out.println("added " +  Double.toString((double) varTotalCount[i] / (double) instCount * RankingUtils.computeEntropyNominal(varCount[i][c], varTotalCount[i])));
-                        }
-                    }
-                }
-                // entropy attribute
-                entropyAttribute += RankingUtils.computeEntropyNominal(s.varTotalCount[i],s.instCount);
-            }
-            //System.out.println("nominal entropy after for " + a + ": " + entropyAfter);
-
-        }
-        else
-        if(window.attribute(a).isNumeric())
-        {
-            // numeric attribute processing
-
-            NumericFeatureStats s = (NumericFeatureStats)attributeTableMap.get(a);
-
-            // [bins][classes]
-            int[][] counts = s.piD.generateContingencyTable();
+        // entropies are read from the running sums of the table, numeric attributes only copy their bins over first
+        updateBins(a);
+        double entropyBefore = table.classEntropy(a);
+        double entropyAfter = table.conditionalEntropy(a);
+        double entropyAttribute = table.valueEntropy(a);
 
-
-            // compute for each bin
-            for(int i = 0; i < counts.length;i++)
-            {
-                int total = Utils.sum(counts[i]);
-                // compute entropy for each class
-                for (int c = 0; c < counts[i].length; c++)
-                {
-                    if (counts[i][c] > 0)
-                    {
-                        if (s.instCount > 0)
-                        {
-                            entropyAfter += (((double) total / (double) s.instCount)) * RankingUtils.computeEntropyNominal(counts[i][c], total);
-                            //System.out.println("var " + i + " class " + c +" total " + total + " inst count " + instCount + " prob " + Double.toString((double) total  / (double) instCount) + " entropy " + Double.toString(RankingUtils.computeEntropyNominal(counts[i][c], total)));
-                            //System.out.println("added " +  Double.toString((double) total / (double) instCount * RankingUtils.computeEntropyNominal(counts[i][c], total)));
-
-                        }
-                    }
-                }
-                entropyAttribute += RankingUtils.computeEntropyNominal(Utils.sum(counts[i]),s.instCount);
-            }
-        }
-
-        for(int i = 0; i < attributeTableMap.get(a).classCount.length; i++)
-        {
-            if(attributeTableMap.get(a).classCount[i] > 0)
-            {
-                double p = (double)attributeTableMap.get(a).classCount[i] / (double)attributeTableMap.get(a).instCount;
-                entropyBefore += -p * Utils.log2(p);
-            }
-        }
         /*
         System.out.println("entropy before for " + a + ": " + entropyBefore);
         System.out.println("entropy attribute " + entropyAttribute);
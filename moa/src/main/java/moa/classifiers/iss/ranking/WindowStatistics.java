@@ -0,0 +1,307 @@
+/*
+ *    WindowStatistics.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package moa.classifiers.iss.ranking;
+
+import java.io.Serializable;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+/**
+ * Running count, mean and variance of every numeric attribute per class over a window of instances.
+ * Values are added and removed as instances enter and leave the window, the variance is kept with
+ * Welford's update and its inverse, so reading the statistics never needs the window itself.
+ * Sparse instances only add their stored values, the zeros they leave out are counted per class
+ * and combined with the stored values when the statistics are read, in O(1).
+ * @version 1
+ */
+public class WindowStatistics implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    protected int numClasses;
+
+    // [a * numClasses + c] number, sum and sum of squared differences from the mean of the stored values
+    protected int[] counts;
+    protected double[] sums;
+    protected double[] m2s;
+
+    // per class number of sparse instances, and per attribute and class how many of them store the attribute,
+    // null until the first sparse instance
+    protected int[] sparseClassCounts;
+    protected int[] storedCounts;
+
+    /**
+     * Creates empty statistics.
+     * @param numAttributes number of attributes, including the class
+     * @param numClasses number of classes
+     */
+    public WindowStatistics(int numAttributes, int numClasses)
+    {
+        this.numClasses = numClasses;
+        counts = new int[numAttributes * numClasses];
+        sums = new double[numAttributes * numClasses];
+        m2s = new double[numAttributes * numClasses];
+    }
+
+    /**
+     * Adds the numeric values of an instance, missing values are skipped.
+     * @param inst instance entering the window
+     */
+    public void addInstance(Instance inst)
+    {
+        updateInstance(inst, 1);
+    }
+
+    /**
+     * Removes the numeric values of an instance added before.
+     * @param inst instance leaving the window
+     */
+    public void removeInstance(Instance inst)
+    {
+        updateInstance(inst, -1);
+    }
+
+    /**
+     * Adds an instance to or removes it from the statistics of its class.
+     * @param inst instance
+     * @param delta 1 to add, -1 to remove
+     */
+    protected void updateInstance(Instance inst, int delta)
+    {
+        int c = (int) inst.classValue();
+        if (inst.numValues() < inst.numAttributes())
+        {
+            if (sparseClassCounts == null)
+            {
+                sparseClassCounts = new int[numClasses];
+                storedCounts = new int[counts.length];
+            }
+            sparseClassCounts[c] += delta;
+            for (int i = 0; i < inst.numValues(); i++)
+            {
+                int a = inst.index(i);
+                if (a == inst.classIndex())
+                    continue;
+                storedCounts[a * numClasses + c] += delta;
+                if (!inst.isMissingSparse(i) && inst.attribute(a).isNumeric())
+                    update(a, c, inst.valueSparse(i), delta);
+            }
+        }
+        else
+        {
+            for (int a = 0; a < inst.numAttributes(); a++)
+            {
+                if (a != inst.classIndex() && !inst.isMissing(a) && inst.attribute(a).isNumeric())
+                    update(a, c, inst.value(a), delta);
+            }
+        }
+    }
+
+    /**
+     * Adds a value to the statistics of an attribute for a class.
+     * @param a attribute index
+     * @param c class index
+     * @param value value
+     */
+    public void add(int a, int c, double value)
+    {
+        update(a, c, value, 1);
+    }
+
+    /**
+     * Removes a value added before from the statistics of an attribute for a class.
+     * @param a attribute index
+     * @param c class index
+     * @param value value
+     */
+    public void remove(int a, int c, double value)
+    {
+        update(a, c, value, -1);
+    }
+
+    /**
+     * Welford's update, or its inverse for removals.
+     * M2 changes by (x - mean before) * (x - mean after), for both adding and removing x.
+     * @param a attribute index
+     * @param c class index
+     * @param value value
+     * @param delta 1 to add, -1 to remove
+     */
+    protected void update(int a, int c, double value, int delta)
+    {
+        int cell = a * numClasses + c;
+        double meanBefore = (counts[cell] > 0) ? sums[cell] / counts[cell] : 0;
+        counts[cell] += delta;
+        sums[cell] += delta * value;
+        if (counts[cell] <= 0)
+        {
+            // start over exactly once the window holds no values, rather than keep rounding errors
+            sums[cell] = 0;
+            m2s[cell] = 0;
+            return;
+        }
+        double meanAfter = sums[cell] / counts[cell];
+        m2s[cell] += delta * (value - meanBefore) * (value - meanAfter);
+        if (m2s[cell] < 0)
+            m2s[cell] = 0;
+    }
+
+    /**
+     * Number of sparse instances of a class that do not store an attribute.
+     * @param a attribute index
+     * @param c class index
+     * @return number of implicit zeros
+     */
+    public int implicitCount(int a, int c)
+    {
+        if (sparseClassCounts == null)
+            return 0;
+        return sparseClassCounts[c] - storedCounts[a * numClasses + c];
+    }
+
+    /**
+     * Number of values of an attribute for a class, including implicit zeros.
+     * @param a attribute index
+     * @param c class index
+     * @return count
+     */
+    public int count(int a, int c)
+    {
+        return counts[a * numClasses + c] + implicitCount(a, c);
+    }
+
+    /**
+     * Sum of the values of an attribute for a class.
+     * @param a attribute index
+     * @param c class index
+     * @return sum
+     */
+    public double sum(int a, int c)
+    {
+        return sums[a * numClasses + c];
+    }
+
+    /**
+     * Mean of an attribute for a class, including implicit zeros.
+     * @param a attribute index
+     * @param c class index
+     * @return mean, NaN if there are no values
+     */
+    public double mean(int a, int c)
+    {
+        return sums[a * numClasses + c] / count(a, c);
+    }
+
+    /**
+     * Population variance of an attribute for a class, including implicit zeros.
+     * @param a attribute index
+     * @param c class index
+     * @return variance, NaN if there are no values
+     */
+    public double variance(int a, int c)
+    {
+        return m2(a, c) / count(a, c);
+    }
+
+    /**
+     * Population standard deviation of an attribute for a class, including implicit zeros.
+     * @param a attribute index
+     * @param c class index
+     * @return standard deviation, NaN if there are no values
+     */
+    public double standardDeviation(int a, int c)
+    {
+        return Math.sqrt(variance(a, c));
+    }
+
+    /**
+     * Number of values of an attribute over all classes.
+     * @param a attribute index
+     * @return count
+     */
+    public int count(int a)
+    {
+        int count = 0;
+        for (int c = 0; c < numClasses; c++)
+            count += count(a, c);
+        return count;
+    }
+
+    /**
+     * Mean of an attribute over all classes.
+     * @param a attribute index
+     * @return mean, NaN if there are no values
+     */
+    public double mean(int a)
+    {
+        double sum = 0;
+        for (int c = 0; c < numClasses; c++)
+            sum += sums[a * numClasses + c];
+        return sum / count(a);
+    }
+
+    /**
+     * Population variance of an attribute over all classes, combining the classes in O(numClasses).
+     * M2 = sum_c M2_c + sum_c n_c (mean_c - mean)^2
+     * @param a attribute index
+     * @return variance, NaN if there are no values
+     */
+    public double variance(int a)
+    {
+        int count = count(a);
+        double mean = mean(a);
+        double m2 = 0;
+        for (int c = 0; c < numClasses; c++)
+        {
+            int n = count(a, c);
+            if (n > 0)
+            {
+                double diff = mean(a, c) - mean;
+                m2 += m2(a, c) + n * diff * diff;
+            }
+        }
+        return m2 / count;
+    }
+
+    /**
+     * Population standard deviation of an attribute over all classes.
+     * @param a attribute index
+     * @return standard deviation, NaN if there are no values
+     */
+    public double standardDeviation(int a)
+    {
+        return Math.sqrt(variance(a));
+    }
+
+    /**
+     * Sum of squared differences from the mean, with the implicit zeros combined in as a group of mean 0.
+     * @param a attribute index
+     * @param c class index
+     * @return M2
+     */
+    protected double m2(int a, int c)
+    {
+        int cell = a * numClasses + c;
+        int implicit = implicitCount(a, c);
+        if (implicit == 0 || counts[cell] == 0)
+            return m2s[cell];
+        double mean = sums[cell] / counts[cell];
+        return m2s[cell] + mean * mean * counts[cell] * implicit / (counts[cell] + implicit);
+    }
+}
@@ -19,9 +19,12 @@ package moa.classifiers.lazy;
 
 import java.io.StringReader;
 import moa.classifiers.AbstractClassifier;
+import moa.classifiers.lazy.neighboursearch.ColumnarWindow;
+import moa.classifiers.lazy.neighboursearch.EuclideanDistance;
 import moa.classifiers.lazy.neighboursearch.KDTree;
-import moa.classifiers.lazy.neighboursearch.LinearNNSearch;
 import moa.classifiers.lazy.neighboursearch.NearestNeighbourSearch;
+import moa.classifiers.lazy.neighboursearch.TopKSelector;
+import moa.core.ByteSizeEstimator;
 import moa.core.Measurement;
 import com.yahoo.labs.samoa.instances.Instance;
 import com.yahoo.labs.samoa.instances.Instances;
@@ -39,7 +42,7 @@ import com.github.javacliparser.MultiChoiceOption;
  * @author Jesse Read (jesse@tsc.uc3m.es)
  * @version 03.2012
  */
-public class kNN extends AbstractClassifier {
+public class kNN extends AbstractClassifier implements ByteSizeEstimator {
 
     private static final long serialVersionUID = 1L;
 
@@ -62,13 +65,21 @@ public class kNN extends AbstractClassifier {
         return "kNN: special.";
     }
 
-    protected Instances window; 
+    protected ColumnarWindow window;
+
+    /** distance function of the linear search, works on the columns of the window */
+    protected transient EuclideanDistance distanceFunction;
+
+    /** distances of the window slots to the current target */
+    protected transient double[] distances;
+
+    /** selects the k-th smallest distance without sorting or copying */
+    protected transient TopKSelector selector;
 
 	@Override
 	public void setModelContext(InstancesHeader context) {
 		try {
-			this.window = new Instances(context,0); //new StringReader(context.toString())
-			this.window.setClassIndex(context.classIndex());
+			this.window = new ColumnarWindow(context, this.limitOption.getValue());
 		} catch(Exception e) {
 			System.err.println("Error: no Model Context available.");
 			e.printStackTrace();
@@ -86,11 +97,9 @@ public class kNN extends AbstractClassifier {
 		if (inst.classValue() > C)
 			C = (int)inst.classValue();
 		if (this.window == null) {
-			this.window = new Instances(inst.dataset());
-		}
-		if (this.limitOption.getValue() <= this.window.numInstances()) {
-			this.window.delete(0);
+			this.window = new ColumnarWindow(inst.dataset(), this.limitOption.getValue());
 		}
+		// evicts the oldest instance once the window is full
 		this.window.add(inst);
     }
 
@@ -98,17 +107,16 @@ public class kNN extends AbstractClassifier {
     public double[] getVotesForInstance(Instance inst) {
 		double v[] = new double[C+1];
 		try {
-			NearestNeighbourSearch search;
-			if (this.nearestNeighbourSearchOption.getChosenIndex()== 0) {
-				search = new LinearNNSearch(this.window);  
-			} else {
-				search = new KDTree();
-				search.setInstances(this.window);
-			}	
 			if (this.window.numInstances()>0) {	
-				Instances neighbours = search.kNearestNeighbours(inst,Math.min(kOption.getValue(),this.window.numInstances()));
-				for(int i = 0; i < neighbours.numInstances(); i++) {
-					v[(int)neighbours.instance(i).classValue()]++;
+				if (this.nearestNeighbourSearchOption.getChosenIndex()== 0) {
+					linearSearchVotes(inst, Math.min(kOption.getValue(),this.window.numInstances()), v);
+				} else {
+					NearestNeighbourSearch search = new KDTree();
+					search.setInstances(this.window.toInstances());
+					Instances neighbours = search.kNearestNeighbours(inst,Math.min(kOption.getValue(),this.window.numInstances()));
+					for(int i = 0; i < neighbours.numInstances(); i++) {
+						v[(int)neighbours.instance(i).classValue()]++;
+					}
 				}
 			}
 		} catch(Exception e) {
@@ -120,11 +128,91 @@ public class kNN extends AbstractClassifier {
 		return v;
     }
 
+    /**
+     * Brute force search on the columns of the window. Selects the same
+     * neighbours as LinearNNSearch: every instance whose distance is at most
+     * the distance of the k-th nearest one, so ties with the k-th nearest
+     * neighbour are all included.
+     * <p>
+     * The neighbours are ranked by squared distance, which is what
+     * LinearNNSearch compares too: it calls the distance with a cut off,
+     * which skips the square root, and only takes the root of the
+     * distances it returns. The stored columns and the target are read
+     * with value(), so an attribute a sparse instance does not store
+     * counts as 0. Its difference to 0 adds the same term as in the
+     * merged walk over the stored values of NormalizableDistance, and the
+     * attributes neither instance stores add exactly 0.
+     *
+     * @param inst	the instance to classify
+     * @param k		the number of neighbours
+     * @param v		the votes to add the classes of the neighbours to
+     */
+    protected void linearSearchVotes(Instance inst, int k, double[] v) {
+		int numInstances = this.window.numInstances();
+		if (this.distanceFunction == null) {
+			this.distanceFunction = new EuclideanDistance();
+		}
+		if (this.distances == null || this.distances.length < this.window.capacity()) {
+			this.distances = new double[this.window.capacity()];
+		}
+		this.distanceFunction.setRanges(this.window.getHeader(), this.window.getRanges());
+
+		// squared euclidean distance, summed attribute by attribute in index order like NormalizableDistance
+		double[] values = this.window.values();
+		int classIndex = this.window.classIndex();
+		for (int s = 0; s < numInstances; s++) {
+			this.distances[s] = 0;
+		}
+		for (int a = 0; a < this.window.numAttributes(); a++) {
+			if (a == classIndex) {
+				continue;
+			}
+			double targetValue = inst.value(a);
+			int offset = this.window.columnOffset(a);
+			for (int s = 0; s < numInstances; s++) {
+				this.distances[s] += this.distanceFunction.sqDifference(a, targetValue, values[offset + s]);
+			}
+		}
+
+		// the target itself is never its own neighbour (hold-one-out)
+		if (this.selector == null) {
+			this.selector = new TopKSelector();
+		}
+		int numCandidates = 0;
+		for (int s = 0; s < numInstances; s++) {
+			if (this.window.instance(s) != inst) {
+				numCandidates++;
+			}
+		}
+		if (numCandidates == 0) {
+			return;
+		}
+		this.selector.reset(Math.min(k, numCandidates));
+		for (int s = 0; s < numInstances; s++) {
+			if (this.window.instance(s) != inst) {
+				this.selector.offer(this.distances[s]);
+			}
+		}
+		double kthDistance = this.selector.kthSmallest();
+
+		int[] classLabels = this.window.classLabels();
+		for (int s = 0; s < numInstances; s++) {
+			if (this.distances[s] <= kthDistance && this.window.instance(s) != inst) {
+				v[classLabels[s]]++;
+			}
+		}
+    }
+
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
         return null;
     }
 
+    @Override
+    public int estimateByteSize() {
+        return this.window == null ? 0 : (int) this.window.estimateByteSize();
+    }
+
     @Override
     public void getModelDescription(StringBuilder out, int indent) {
     }
@@ -0,0 +1,309 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    ColumnarWindow.java
+ */
+
+package moa.classifiers.lazy.neighboursearch;
+
+import java.io.Serializable;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+/**
+ * Fixed capacity sliding window of instances, stored as a ring buffer with
+ * one primitive column per attribute. <p/>
+ *
+ * The attribute values live in a single feature-major double array, i.e. the
+ * value of attribute <code>a</code> in slot <code>s</code> is found at
+ * <code>values()[columnOffset(a) + s]</code>, so a distance loop over one
+ * attribute walks contiguous memory. Adding an instance to a full window
+ * overwrites the oldest slot, which makes eviction O(1). <p/>
+ *
+ * Slots are physical positions in the buffer: slots <code>0</code> to
+ * <code>numInstances() - 1</code> are always occupied, but their order is
+ * only the arrival order until the window is full for the first time. Use
+ * {@link #slot(int)} to go from arrival order to slots. <p/>
+ *
+ * The minimum and maximum of every column are kept as well by a
+ * {@link SlidingWindowRanges}, in the format used by
+ * {@link NormalizableDistance}, see {@link #getRanges()}.
+ *
+ * @version $Revision: 1 $
+ */
+public class ColumnarWindow
+  implements Serializable {
+
+  /** for serialization. */
+  private static final long serialVersionUID = 2920587231904385125L;
+
+  /** the header of the data, contains no instances. */
+  protected Instances m_Header;
+
+  /** the maximum number of instances. */
+  protected int m_Capacity;
+
+  /** the number of attributes, including the class. */
+  protected int m_NumAttributes;
+
+  /** the attribute values, feature-major. */
+  protected double[] m_Values;
+
+  /** the class label of every slot. */
+  protected int[] m_ClassLabels;
+
+  /** the original instances, needed by whoever has to undo an instance. */
+  protected Instance[] m_Instances;
+
+  /** the slot of the oldest instance. */
+  protected int m_Start;
+
+  /** the number of instances in the window. */
+  protected int m_Size;
+
+  /** the ranges of the attributes over the window. */
+  protected SlidingWindowRanges m_Ranges;
+
+  /**
+   * Creates an empty window.
+   *
+   * @param header	the header of the data to store
+   * @param capacity	the maximum number of instances
+   */
+  public ColumnarWindow(Instances header, int capacity) {
+    m_Header = new Instances(header, 0);
+    m_Header.setClassIndex(header.classIndex());
+    m_Capacity = capacity;
+    m_NumAttributes = header.numAttributes();
+    m_Values = new double[m_NumAttributes * capacity];
+    m_ClassLabels = new int[capacity];
+    m_Instances = new Instance[capacity];
+    m_Ranges = new SlidingWindowRanges(m_NumAttributes);
+    clear();
+  }
+
+  /**
+   * Removes all instances from the window.
+   */
+  public void clear() {
+    for (int i = 0; i < m_Size; i++)
+      m_Instances[i] = null;
+    m_Start = 0;
+    m_Size = 0;
+    m_Ranges.clear();
+  }
+
+  /**
+   * Returns the header of the data.
+   *
+   * @return		the header, without instances
+   */
+  public Instances getHeader() {
+    return m_Header;
+  }
+
+  /**
+   * Returns the class index of the data.
+   *
+   * @return		the class index
+   */
+  public int classIndex() {
+    return m_Header.classIndex();
+  }
+
+  /**
+   * Returns the number of attributes, including the class.
+   *
+   * @return		the number of attributes
+   */
+  public int numAttributes() {
+    return m_NumAttributes;
+  }
+
+  /**
+   * Returns the maximum number of instances.
+   *
+   * @return		the capacity
+   */
+  public int capacity() {
+    return m_Capacity;
+  }
+
+  /**
+   * Returns the number of instances currently in the window.
+   *
+   * @return		the number of instances
+   */
+  public int numInstances() {
+    return m_Size;
+  }
+
+  /**
+   * Returns a rough estimate of the memory used by the window: the columns
+   * plus the values of the instances it holds on to.
+   *
+   * @return		the estimated size in bytes
+   */
+  public long estimateByteSize() {
+    return 8L * m_Values.length + 4L * m_ClassLabels.length
+      + 8L * m_Instances.length + m_Size * (8L * m_NumAttributes + 48);
+  }
+
+  /**
+   * Returns whether the next added instance evicts the oldest one.
+   *
+   * @return		true if the window is full
+   */
+  public boolean isFull() {
+    return m_Size == m_Capacity;
+  }
+
+  /**
+   * Returns the slot of the i-th instance in arrival order.
+   *
+   * @param i		the position in arrival order, 0 is the oldest
+   * @return		the slot
+   */
+  public int slot(int i) {
+    int slot = m_Start + i;
+    return (slot >= m_Capacity) ? slot - m_Capacity : slot;
+  }
+
+  /**
+   * Returns the instance stored in a slot.
+   *
+   * @param slot	the slot
+   * @return		the instance
+   */
+  public Instance instance(int slot) {
+    return m_Instances[slot];
+  }
+
+  /**
+   * Returns the oldest instance, i.e. the one the next add evicts once the
+   * window is full.
+   *
+   * @return		the oldest instance, null if the window is empty
+   */
+  public Instance oldest() {
+    return (m_Size == 0) ? null : m_Instances[m_Start];
+  }
+
+  /**
+   * Returns the backing array of attribute values. Must not be modified.
+   *
+   * @return		the values, feature-major
+   * @see		#columnOffset(int)
+   */
+  public double[] values() {
+    return m_Values;
+  }
+
+  /**
+   * Returns the offset of the column of an attribute in {@link #values()}.
+   *
+   * @param attribute	the attribute index
+   * @return		the offset of slot 0 of the attribute
+   */
+  public int columnOffset(int attribute) {
+    return attribute * m_Capacity;
+  }
+
+  /**
+   * Returns the value of an attribute in a slot.
+   *
+   * @param slot	the slot
+   * @param attribute	the attribute index
+   * @return		the value, NaN if missing
+   */
+  public double value(int slot, int attribute) {
+    return m_Values[attribute * m_Capacity + slot];
+  }
+
+  /**
+   * Returns the backing array of class labels, indexed by slot. Must not be
+   * modified.
+   *
+   * @return		the class labels
+   */
+  public int[] classLabels() {
+    return m_ClassLabels;
+  }
+
+  /**
+   * Returns the class label of a slot.
+   *
+   * @param slot	the slot
+   * @return		the class label
+   */
+  public int classLabel(int slot) {
+    return m_ClassLabels[slot];
+  }
+
+  /**
+   * Adds an instance, evicting the oldest one if the window is full.
+   *
+   * @param inst	the instance to add
+   * @return		the slot the instance was stored in
+   */
+  public int add(Instance inst) {
+    int slot;
+    if (m_Size < m_Capacity) {
+      slot = slot(m_Size);
+      m_Size++;
+    }
+    else {
+      slot = m_Start;
+      m_Start = (m_Start + 1 == m_Capacity) ? 0 : m_Start + 1;
+      m_Ranges.removeOldest();
+    }
+
+    for (int j = 0, offset = slot; j < m_NumAttributes; j++, offset += m_Capacity)
+      m_Values[offset] = inst.value(j);
+    m_Ranges.add(inst);
+    m_ClassLabels[slot] = (int) inst.classValue();
+    m_Instances[slot] = inst;
+
+    return slot;
+  }
+
+  /**
+   * Returns the ranges of all attributes over the instances in the window,
+   * identical to the ones {@link NormalizableDistance#initializeRanges()}
+   * computes for the same instances. The returned array is updated in place
+   * as instances are added.
+   *
+   * @return		the ranges (min, max, width) per attribute
+   */
+  public double[][] getRanges() {
+    return m_Ranges.getRanges();
+  }
+
+  /**
+   * Copies the window into an Instances object, oldest instance first.
+   * Only meant for code that still needs Instances, e.g. the KDTree.
+   *
+   * @return		the instances in arrival order
+   */
+  public Instances toInstances() {
+    Instances result = new Instances(m_Header, m_Size);
+    result.setClassIndex(m_Header.classIndex());
+    for (int i = 0; i < m_Size; i++)
+      result.add(m_Instances[slot(i)]);
+    return result;
+  }
+}
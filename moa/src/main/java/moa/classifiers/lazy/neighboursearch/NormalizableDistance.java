@@ -235,6 +235,25 @@ public abstract class NormalizableDistance
     invalidate();
   }
 
+  /**
+   * Sets the header of the data together with ranges that are maintained
+   * elsewhere, e.g., by a {@link ColumnarWindow}. Unlike
+   * setInstances(Instances) this does not scan any instances, the header is
+   * only used for the attribute information. The ranges array is used as is,
+   * later changes to it are picked up by the distance function.
+   *
+   * @param header	the header of the data
+   * @param ranges	the ranges (min, max, width) of all attributes
+   */
+  public void setRanges(Instances header, double[][] ranges) {
+    if ((m_Data != header) || (m_ActiveIndices == null)) {
+      m_Data = header;
+      initializeAttributeIndices();
+    }
+    m_Ranges = ranges;
+    m_Validated = true;
+  }
+
   /**
    * returns the instances currently set.
    * 
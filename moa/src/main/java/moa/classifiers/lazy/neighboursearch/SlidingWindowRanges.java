@@ -0,0 +1,287 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    SlidingWindowRanges.java
+ */
+
+package moa.classifiers.lazy.neighboursearch;
+
+import java.io.Serializable;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+/**
+ * Keeps the ranges of all attributes over a first-in first-out window of
+ * instances, in the format used by {@link NormalizableDistance}. <p/>
+ *
+ * Every attribute has a monotonic deque of candidate minima and one of
+ * candidate maxima: a value is dropped as soon as a newer value is at least
+ * as small (large), and the front is dropped when its instance leaves the
+ * window. Adding and removing an instance is amortized O(1) per attribute and
+ * the ranges are always up to date, so distance functions can use them
+ * through {@link NormalizableDistance#setRanges} without scanning the window.
+ * The deques grow on demand and stay short for most data. <p/>
+ *
+ * Instances have to be removed in the order they were added, see
+ * {@link #removeOldest()}. Missing values are ignored, like in
+ * {@link NormalizableDistance#initializeRanges()}.
+ *
+ * @version $Revision: 1 $
+ */
+public class SlidingWindowRanges
+  implements Serializable {
+
+  /** for serialization. */
+  private static final long serialVersionUID = -5290385936372517843L;
+
+  /** the number of attributes, including the class. */
+  protected int m_NumAttributes;
+
+  /** the candidate minima of every attribute. */
+  protected MonotonicDeque[] m_Minima;
+
+  /** the candidate maxima of every attribute. */
+  protected MonotonicDeque[] m_Maxima;
+
+  /** the ranges of the attributes (min, max, width). */
+  protected double[][] m_Ranges;
+
+  /** the sequence number of the oldest instance in the window. */
+  protected int m_Oldest;
+
+  /** the sequence number of the next instance added. */
+  protected int m_Next;
+
+  /**
+   * Creates ranges for an empty window.
+   *
+   * @param numAttributes	the number of attributes, including the class
+   */
+  public SlidingWindowRanges(int numAttributes) {
+    m_NumAttributes = numAttributes;
+    m_Minima = new MonotonicDeque[numAttributes];
+    m_Maxima = new MonotonicDeque[numAttributes];
+    m_Ranges = new double[numAttributes][3];
+    for (int j = 0; j < numAttributes; j++) {
+      m_Minima[j] = new MonotonicDeque(false);
+      m_Maxima[j] = new MonotonicDeque(true);
+    }
+    clear();
+  }
+
+  /**
+   * Removes all instances.
+   */
+  public void clear() {
+    for (int j = 0; j < m_NumAttributes; j++) {
+      m_Minima[j].clear();
+      m_Maxima[j].clear();
+      updateRange(j);
+    }
+    m_Oldest = 0;
+    m_Next = 0;
+  }
+
+  /**
+   * Returns the number of instances in the window.
+   *
+   * @return		the number of instances
+   */
+  public int numInstances() {
+    return m_Next - m_Oldest;
+  }
+
+  /**
+   * Adds an instance as the newest one of the window.
+   *
+   * @param inst	the instance
+   */
+  public void add(Instance inst) {
+    for (int j = 0; j < m_NumAttributes; j++) {
+      double value = inst.value(j);
+      if (!Double.isNaN(value)) {
+        m_Minima[j].add(m_Next, value);
+        m_Maxima[j].add(m_Next, value);
+        updateRange(j);
+      }
+    }
+    m_Next++;
+  }
+
+  /**
+   * Removes the oldest instance of the window.
+   */
+  public void removeOldest() {
+    if (numInstances() == 0)
+      return;
+    for (int j = 0; j < m_NumAttributes; j++) {
+      boolean changed = m_Minima[j].evict(m_Oldest);
+      changed |= m_Maxima[j].evict(m_Oldest);
+      if (changed)
+        updateRange(j);
+    }
+    m_Oldest++;
+  }
+
+  /**
+   * Returns the ranges of all attributes over the instances in the window,
+   * identical to the ones {@link NormalizableDistance#initializeRanges()}
+   * computes for the same instances. The returned array is updated in place
+   * as instances are added and removed.
+   *
+   * @return		the ranges (min, max, width) per attribute
+   */
+  public double[][] getRanges() {
+    return m_Ranges;
+  }
+
+  /**
+   * Copies the fronts of the deques of an attribute into its range.
+   *
+   * @param attribute	the attribute index
+   */
+  protected void updateRange(int attribute) {
+    double[] range = m_Ranges[attribute];
+    if (m_Minima[attribute].isEmpty()) {
+      range[NormalizableDistance.R_MIN] = Double.POSITIVE_INFINITY;
+      range[NormalizableDistance.R_MAX] = -Double.POSITIVE_INFINITY;
+      range[NormalizableDistance.R_WIDTH] = Double.POSITIVE_INFINITY;
+    }
+    else {
+      range[NormalizableDistance.R_MIN] = m_Minima[attribute].first();
+      range[NormalizableDistance.R_MAX] = m_Maxima[attribute].first();
+      range[NormalizableDistance.R_WIDTH] = range[NormalizableDistance.R_MAX] - range[NormalizableDistance.R_MIN];
+    }
+  }
+
+  /**
+   * Deque of values in arrival order that are strictly decreasing (maxima)
+   * or strictly increasing (minima) from the front, stored in a growable ring
+   * buffer.
+   */
+  protected static class MonotonicDeque
+    implements Serializable {
+
+    /** for serialization. */
+    private static final long serialVersionUID = 4071398273455624162L;
+
+    /** whether the front is the maximum, otherwise the minimum. */
+    protected boolean m_Max;
+
+    /** the sequence numbers of the instances of the values. */
+    protected int[] m_Sequence = new int[4];
+
+    /** the values. */
+    protected double[] m_Values = new double[4];
+
+    /** the position of the front in the ring buffer. */
+    protected int m_Head;
+
+    /** the number of values. */
+    protected int m_Size;
+
+    /**
+     * Creates an empty deque.
+     *
+     * @param max	true for maxima, false for minima
+     */
+    public MonotonicDeque(boolean max) {
+      m_Max = max;
+    }
+
+    /**
+     * Removes all values.
+     */
+    public void clear() {
+      m_Head = 0;
+      m_Size = 0;
+    }
+
+    /**
+     * Returns whether the deque is empty.
+     *
+     * @return		true if there are no values
+     */
+    public boolean isEmpty() {
+      return m_Size == 0;
+    }
+
+    /**
+     * Returns the minimum or maximum of the values.
+     *
+     * @return		the value at the front
+     */
+    public double first() {
+      return m_Values[m_Head];
+    }
+
+    /**
+     * Adds the value of the newest instance, dropping the values it makes
+     * irrelevant.
+     *
+     * @param sequence	the sequence number of the instance
+     * @param value	the value
+     */
+    public void add(int sequence, double value) {
+      int mask = m_Values.length - 1;
+      while (m_Size > 0) {
+        double last = m_Values[(m_Head + m_Size - 1) & mask];
+        if (m_Max ? last > value : last < value)
+          break;
+        m_Size--;
+      }
+      if (m_Size == m_Values.length) {
+        grow();
+        mask = m_Values.length - 1;
+      }
+      int tail = (m_Head + m_Size) & mask;
+      m_Sequence[tail] = sequence;
+      m_Values[tail] = value;
+      m_Size++;
+    }
+
+    /**
+     * Removes the front if it belongs to the instance that leaves the window.
+     *
+     * @param sequence	the sequence number of the oldest instance
+     * @return		true if the front was removed
+     */
+    public boolean evict(int sequence) {
+      if (m_Size > 0 && m_Sequence[m_Head] == sequence) {
+        m_Head = (m_Head + 1) & (m_Values.length - 1);
+        m_Size--;
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * Doubles the capacity, keeping the power of two size the ring relies on.
+     */
+    protected void grow() {
+      int[] sequence = new int[m_Values.length * 2];
+      double[] values = new double[m_Values.length * 2];
+      for (int i = 0; i < m_Size; i++) {
+        int from = (m_Head + i) & (m_Values.length - 1);
+        sequence[i] = m_Sequence[from];
+        values[i] = m_Values[from];
+      }
+      m_Sequence = sequence;
+      m_Values = values;
+      m_Head = 0;
+    }
+  }
+}
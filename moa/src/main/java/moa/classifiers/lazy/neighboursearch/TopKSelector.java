@@ -0,0 +1,205 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ *    TopKSelector.java
+ */
+
+package moa.classifiers.lazy.neighboursearch;
+
+import java.io.Serializable;
+
+/**
+ * Selects the k nearest neighbours from a list of candidate distances with a
+ * bounded max-heap, in O(n log k) and without allocating once its buffers
+ * have grown to the largest number of candidates seen. <p/>
+ *
+ * The neighbours are all candidates whose distance is at most the k-th
+ * smallest distance, like in {@link LinearNNSearch}, so candidates tied with
+ * the k-th nearest neighbour are all selected. They are returned in the
+ * order the candidates were given in, which makes the selection independent
+ * of the heap layout. <p/>
+ *
+ * Distances can also be offered one at a time, see {@link #reset(int)},
+ * {@link #offer(double)} and {@link #kthSmallest()}.
+ *
+ * @version $Revision: 1 $
+ */
+public class TopKSelector
+  implements Serializable {
+
+  /** for serialization. */
+  private static final long serialVersionUID = -3390413538260376271L;
+
+  /** the max-heap of the k smallest distances offered so far. */
+  protected double[] m_Heap = new double[0];
+
+  /** the number of distances in the heap. */
+  protected int m_HeapSize;
+
+  /** the number of neighbours to select. */
+  protected int m_K;
+
+  /** the indices of the selected candidates. */
+  protected int[] m_Indices = new int[0];
+
+  /** the class labels of the selected candidates. */
+  protected int[] m_Labels = new int[0];
+
+  /** the number of selected candidates. */
+  protected int m_NumSelected;
+
+  /**
+   * Starts a new selection of the k smallest distances.
+   *
+   * @param k		the number of neighbours
+   */
+  public void reset(int k) {
+    if (m_Heap.length < k)
+      m_Heap = new double[k];
+    m_K = k;
+    m_HeapSize = 0;
+  }
+
+  /**
+   * Offers a distance to the current selection.
+   *
+   * @param distance	the distance
+   */
+  public void offer(double distance) {
+    if (m_HeapSize < m_K) {
+      // sift up
+      int i = m_HeapSize++;
+      while (i > 0) {
+        int parent = (i - 1) >>> 1;
+        if (m_Heap[parent] >= distance)
+          break;
+        m_Heap[i] = m_Heap[parent];
+        i = parent;
+      }
+      m_Heap[i] = distance;
+    }
+    else if (m_K > 0 && distance < m_Heap[0]) {
+      // replace the largest and sift down
+      int i = 0;
+      int half = m_HeapSize >>> 1;
+      while (i < half) {
+        int child = 2 * i + 1;
+        if (child + 1 < m_HeapSize && m_Heap[child + 1] > m_Heap[child])
+          child++;
+        if (m_Heap[child] <= distance)
+          break;
+        m_Heap[i] = m_Heap[child];
+        i = child;
+      }
+      m_Heap[i] = distance;
+    }
+  }
+
+  /**
+   * Returns the k-th smallest distance offered since the last reset.
+   *
+   * @return		the k-th smallest distance, positive infinity if
+   * 			fewer than k distances have been offered
+   */
+  public double kthSmallest() {
+    if (m_HeapSize < m_K || m_K == 0)
+      return Double.POSITIVE_INFINITY;
+    return m_Heap[0];
+  }
+
+  /**
+   * Selects the nearest neighbours among the given candidates. The selected
+   * candidates are available through {@link #selectedIndices()} and
+   * {@link #selectedLabels()}.
+   *
+   * @param distances	the distances of the candidates
+   * @param indices	the index (e.g. window slot) of every candidate
+   * @param classLabels	the class labels, indexed by candidate index, null
+   * 			if not needed
+   * @param from	the first candidate, inclusive
+   * @param to		the last candidate, exclusive
+   * @param k		the number of neighbours
+   * @return		the number of selected candidates, at least
+   * 			min(k, to - from)
+   */
+  public int select(double[] distances, int[] indices, int[] classLabels, int from, int to, int k) {
+    reset(k);
+    for (int i = from; i < to; i++)
+      offer(distances[i]);
+    return collect(distances, indices, classLabels, from, to, kthSmallest());
+  }
+
+  /**
+   * Selects the candidates whose distance is at most the given bound, in
+   * candidate order.
+   *
+   * @param distances	the distances of the candidates
+   * @param indices	the index (e.g. window slot) of every candidate
+   * @param classLabels	the class labels, indexed by candidate index, null
+   * 			if not needed
+   * @param from	the first candidate, inclusive
+   * @param to		the last candidate, exclusive
+   * @param bound	the largest distance to select
+   * @return		the number of selected candidates
+   */
+  public int collect(double[] distances, int[] indices, int[] classLabels, int from, int to, double bound) {
+    if (m_Indices.length < to - from) {
+      m_Indices = new int[to - from];
+      m_Labels = new int[to - from];
+    }
+    m_NumSelected = 0;
+    for (int i = from; i < to; i++) {
+      if (distances[i] <= bound) {
+        m_Indices[m_NumSelected] = indices[i];
+        if (classLabels != null)
+          m_Labels[m_NumSelected] = classLabels[indices[i]];
+        m_NumSelected++;
+      }
+    }
+    return m_NumSelected;
+  }
+
+  /**
+   * Returns the number of candidates selected by the last selection.
+   *
+   * @return		the number of selected candidates
+   */
+  public int numSelected() {
+    return m_NumSelected;
+  }
+
+  /**
+   * Returns the indices of the selected candidates, only the first
+   * {@link #numSelected()} entries are valid. Overwritten by the next
+   * selection.
+   *
+   * @return		the indices
+   */
+  public int[] selectedIndices() {
+    return m_Indices;
+  }
+
+  /**
+   * Returns the class labels of the selected candidates, only the first
+   * {@link #numSelected()} entries are valid. Overwritten by the next
+   * selection.
+   *
+   * @return		the class labels
+   */
+  public int[] selectedLabels() {
+    return m_Labels;
+  }
+}
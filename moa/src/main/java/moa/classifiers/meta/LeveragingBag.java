@@ -29,6 +29,7 @@ import moa.classifiers.AbstractClassifier;
 import moa.classifiers.Classifier;
 import com.yahoo.labs.samoa.instances.Instance;
 
+import moa.core.ByteSizeEstimator;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.MiscUtils;
@@ -45,7 +46,7 @@ import moa.options.*;
  * @author Albert Bifet (abifet at cs dot waikato dot ac dot nz)
  * @version $Revision: 7 $
  */
-public class LeveragingBag extends AbstractClassifier {
+public class LeveragingBag extends AbstractClassifier implements ByteSizeEstimator {
 
     private static final long serialVersionUID = 1L;
 
@@ -268,5 +269,10 @@ public class LeveragingBag extends AbstractClassifier {
     public Classifier[] getSubClassifiers() {
         return this.ensemble.clone();
     }
+
+    @Override
+    public int estimateByteSize() {
+        return estimateSubClassifiersByteSize();
+    }
 }
 
@@ -23,6 +23,7 @@ import moa.classifiers.AbstractClassifier;
 import moa.classifiers.Classifier;
 import com.yahoo.labs.samoa.instances.Instance;
 
+import moa.core.ByteSizeEstimator;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.MiscUtils;
@@ -49,7 +50,7 @@ import com.github.javacliparser.IntOption;
  * @author Richard Kirkby (rkirkby@cs.waikato.ac.nz)
  * @version $Revision: 7 $
  */
-public class OzaBag extends AbstractClassifier {
+public class OzaBag extends AbstractClassifier implements ByteSizeEstimator {
 
     @Override
     public String getPurposeString() {
@@ -121,4 +122,9 @@ public class OzaBag extends AbstractClassifier {
     public Classifier[] getSubClassifiers() {
         return this.ensemble.clone();
     }
+
+    @Override
+    public int estimateByteSize() {
+        return estimateSubClassifiersByteSize();
+    }
 }
@@ -22,6 +22,7 @@ package moa.classifiers.meta;
 import moa.options.ClassOption;
 import moa.classifiers.Classifier;
 import moa.classifiers.trees.ASHoeffdingTree;
+import moa.core.ByteSizeEstimator;
 import moa.core.DoubleVector;
 import moa.core.MiscUtils;
 import com.github.javacliparser.IntOption;
@@ -85,7 +86,7 @@ import moa.core.Utils;
  * @author Albert Bifet (abifet at cs dot waikato dot ac dot nz)
  * @version $Revision: 7 $
  */
-public class OzaBagASHT extends AbstractClassifier {
+public class OzaBagASHT extends AbstractClassifier implements ByteSizeEstimator {
 
     private static final long serialVersionUID = 1L;
 
@@ -187,4 +188,9 @@ public class OzaBagASHT extends AbstractClassifier {
     public Classifier[] getSubClassifiers() {
         return this.ensemble.clone();
     }
+
+    @Override
+    public int estimateByteSize() {
+        return estimateSubClassifiersByteSize();
+    }
 }
@@ -24,6 +24,7 @@ import moa.classifiers.AbstractClassifier;
 import moa.classifiers.Classifier;
 import com.yahoo.labs.samoa.instances.Instance;
 
+import moa.core.ByteSizeEstimator;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.MiscUtils;
@@ -79,7 +80,7 @@ import com.github.javacliparser.IntOption;
  * @author Albert Bifet (abifet at cs dot waikato dot ac dot nz)
  * @version $Revision: 7 $
  */
-public class OzaBagAdwin extends AbstractClassifier {
+public class OzaBagAdwin extends AbstractClassifier implements ByteSizeEstimator {
 
     private static final long serialVersionUID = 1L;
 
@@ -180,4 +181,9 @@ public class OzaBagAdwin extends AbstractClassifier {
     public Classifier[] getSubClassifiers() {
         return this.ensemble.clone();
     }
+
+    @Override
+    public int estimateByteSize() {
+        return estimateSubClassifiersByteSize();
+    }
 }
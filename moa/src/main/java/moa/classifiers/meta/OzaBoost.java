@@ -23,6 +23,7 @@ import moa.classifiers.AbstractClassifier;
 import moa.classifiers.Classifier;
 import com.yahoo.labs.samoa.instances.Instance;
 
+import moa.core.ByteSizeEstimator;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.MiscUtils;
@@ -51,7 +52,7 @@ import com.github.javacliparser.IntOption;
  * @author Richard Kirkby (rkirkby@cs.waikato.ac.nz)
  * @version $Revision: 7 $
  */
-public class OzaBoost extends AbstractClassifier {
+public class OzaBoost extends AbstractClassifier implements ByteSizeEstimator {
 
     private static final long serialVersionUID = 1L;
 
@@ -153,4 +154,9 @@ public class OzaBoost extends AbstractClassifier {
     public Classifier[] getSubClassifiers() {
         return this.ensemble.clone();
     }
+
+    @Override
+    public int estimateByteSize() {
+        return estimateSubClassifiersByteSize();
+    }
 }
@@ -21,6 +21,7 @@ package moa.classifiers.meta;
 
 import moa.classifiers.AbstractClassifier;
 import moa.classifiers.Classifier;
+import moa.core.ByteSizeEstimator;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.ObjectRepository;
@@ -39,7 +40,7 @@ import moa.core.Utils;
  * @author Richard Kirkby (rkirkby@cs.waikato.ac.nz)
  * @version $Revision: 7 $
  */
-public class WeightedMajorityAlgorithm extends AbstractClassifier {
+public class WeightedMajorityAlgorithm extends AbstractClassifier implements ByteSizeEstimator {
 
     private static final long serialVersionUID = 1L;
     
@@ -180,6 +181,11 @@ public class WeightedMajorityAlgorithm extends AbstractClassifier {
         return this.ensemble.clone();
     }
 
+    @Override
+    public int estimateByteSize() {
+        return estimateSubClassifiersByteSize();
+    }
+
     public void discardModel(int index) {
         Classifier[] newEnsemble = new Classifier[this.ensemble.length - 1];
         double[] newEnsembleWeights = new double[newEnsemble.length];
@@ -921,7 +921,7 @@ public void printAnomaliesSupervised(StringBuilder out, int indent) { // Get Mod
 	            this.saveBestValGlobalEntropy.add(attribBest);
 	            this.saveBestGlobalEntropy.setValue(z, this.saveBestEntropyNominalAttrib.getValue(1));
 	            } else {
-	            	this.root=((BinaryTreeNumericAttributeClassObserver)observersParameter.get(z)).root;
+	            	this.root=((BinaryTreeNumericAttributeClassObserver)observersParameter.get(z)).getRoot();
 					mainFindBestValEntropy(this.root);		// The best value (lowest entropy) of a numeric attribute.
 		            attribBest.add(this.saveBestEntropy.getValue(0));
 		            attribBest.add(this.saveBestEntropy.getValue(1));
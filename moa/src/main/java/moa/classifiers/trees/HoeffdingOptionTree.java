@@ -45,6 +45,7 @@ import moa.classifiers.core.conditionaltests.InstanceConditionalTest;
 import moa.classifiers.core.conditionaltests.NumericAttributeBinaryTest;
 import moa.classifiers.core.splitcriteria.SplitCriterion;
 import moa.core.AutoExpandVector;
+import moa.core.ByteSizeEstimator;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.SizeOf;
@@ -93,7 +94,7 @@ import com.yahoo.labs.samoa.instances.Instance;
  * @author Richard Kirkby (rkirkby@cs.waikato.ac.nz)
  * @version $Revision: 7 $
  */
-public class HoeffdingOptionTree extends AbstractClassifier {
+public class HoeffdingOptionTree extends AbstractClassifier implements ByteSizeEstimator {
 
     private static final long serialVersionUID = 1L;
 
@@ -169,6 +170,10 @@ public class HoeffdingOptionTree extends AbstractClassifier {
     public FlagOption noPrePruneOption = new FlagOption("noPrePrune", 'p',
             "Disable pre-pruning.");
 
+    public FlagOption parallelSplitEvaluationOption = new FlagOption(
+            "parallelSplitEvaluation", 'x',
+            "Evaluate the splits of the attributes in parallel, on a pool shared by all trees.");
+
     public FileOption dumpFileOption = new FileOption("dumpFile", 'f',
             "File to append option table to.", null, "csv", true);
 
@@ -577,6 +582,16 @@ public class HoeffdingOptionTree extends AbstractClassifier {
                         preSplitDist,
                         new double[][]{preSplitDist})));
             }
+            if (ht.parallelSplitEvaluationOption.isSet()) {
+                // in the order of the attributes, as evaluated one after another
+                for (AttributeSplitSuggestion bestSuggestion : HoeffdingTree.getBestSplitSuggestionsInParallel(
+                        this.attributeObservers, criterion, preSplitDist, ht.binarySplitsOption.isSet())) {
+                    if (bestSuggestion != null) {
+                        bestSuggestions.add(bestSuggestion);
+                    }
+                }
+                return bestSuggestions.toArray(new AttributeSplitSuggestion[bestSuggestions.size()]);
+            }
             for (int i = 0; i < this.attributeObservers.size(); i++) {
                 AttributeClassObserver obs = this.attributeObservers.get(i);
                 if (obs != null) {
@@ -625,6 +640,23 @@ public class HoeffdingOptionTree extends AbstractClassifier {
         return calcByteSize();
     }
 
+    /**
+     * Estimates the size of the tree from its leaf counts, with the leaf
+     * sizes and overhead of the last {@link #estimateModelByteSizes}, which
+     * runs every memoryEstimatePeriod instances.
+     *
+     * @return the estimated size, or -1 before the first memory estimate
+     */
+    @Override
+    public int estimateByteSize() {
+        if (this.activeLeafByteSizeEstimate <= 0.0 && this.inactiveLeafByteSizeEstimate <= 0.0) {
+            return -1;
+        }
+        return (int) ((this.activeLeafNodeCount * this.activeLeafByteSizeEstimate
+                + this.inactiveLeafNodeCount * this.inactiveLeafByteSizeEstimate)
+                * this.byteSizeEstimateOverheadFraction);
+    }
+
     @Override
     public void resetLearningImpl() {
         this.treeRoot = null;
@@ -25,6 +25,8 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.IntOption;
@@ -40,6 +42,7 @@ import moa.classifiers.core.attributeclassobservers.NumericAttributeClassObserve
 import moa.classifiers.core.conditionaltests.InstanceConditionalTest;
 import moa.classifiers.core.splitcriteria.SplitCriterion;
 import moa.core.AutoExpandVector;
+import moa.core.ByteSizeEstimator;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.SizeOf;
@@ -83,6 +86,7 @@ import com.yahoo.labs.samoa.instances.Instance;
  * ties</li> <li> -b : Only allow binary splits</li> <li> -z : Stop growing as
  * soon as memory limit is hit</li> <li> -r : Disable poor attributes</li> <li>
  * -p : Disable pre-pruning</li> 
+ *  <li> -x : Evaluate the splits of the attributes in parallel</li>
  *  <li> -l : Leaf prediction to use: MajorityClass (MC), Naive Bayes (NB) or NaiveBayes
  * adaptive (NBAdaptive).</li>
  *  <li> -q : The number of instances a leaf should observe before
@@ -92,7 +96,7 @@ import com.yahoo.labs.samoa.instances.Instance;
  * @author Richard Kirkby (rkirkby@cs.waikato.ac.nz)
  * @version $Revision: 7 $
  */
-public class HoeffdingTree extends AbstractClassifier {
+public class HoeffdingTree extends AbstractClassifier implements ByteSizeEstimator {
 
     private static final long serialVersionUID = 1L;
 
@@ -162,6 +166,10 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
     public FlagOption noPrePruneOption = new FlagOption("noPrePrune", 'p',
             "Disable pre-pruning.");
 
+    public FlagOption parallelSplitEvaluationOption = new FlagOption(
+            "parallelSplitEvaluation", 'x',
+            "Evaluate the splits of the attributes in parallel, on a pool shared by all trees.");
+
     public static class FoundNode {
 
         public Node node;
@@ -444,6 +452,16 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
                         preSplitDist,
                         new double[][]{preSplitDist})));
             }
+            if (ht.parallelSplitEvaluationOption.isSet()) {
+                // in the order of the attributes, as evaluated one after another
+                for (AttributeSplitSuggestion bestSuggestion : getBestSplitSuggestionsInParallel(
+                        this.attributeObservers, criterion, preSplitDist, ht.binarySplitsOption.isSet())) {
+                    if (bestSuggestion != null) {
+                        bestSuggestions.add(bestSuggestion);
+                    }
+                }
+                return bestSuggestions.toArray(new AttributeSplitSuggestion[bestSuggestions.size()]);
+            }
             for (int i = 0; i < this.attributeObservers.size(); i++) {
                 AttributeClassObserver obs = this.attributeObservers.get(i);
                 if (obs != null) {
@@ -463,6 +481,96 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
         }
     }
 
+    /**
+     * The number of attributes below which a split evaluation task evaluates
+     * its attributes itself instead of forking.
+     */
+    protected static final int SPLIT_EVALUATION_GRAIN = 4;
+
+    protected static ForkJoinPool splitEvaluationPool;
+
+    /**
+     * Gets the pool the splits of the attributes are evaluated on, shared by
+     * all trees.
+     *
+     * @return the pool
+     */
+    protected static synchronized ForkJoinPool getSplitEvaluationPool() {
+        if (splitEvaluationPool == null) {
+            splitEvaluationPool = new ForkJoinPool();
+        }
+        return splitEvaluationPool;
+    }
+
+    /**
+     * Gets the best split suggestion of every attribute observer, evaluating
+     * the observers in parallel on the shared pool.
+     *
+     * @param observers the attribute observers
+     * @param criterion the split criterion
+     * @param preSplitDist the class distribution before the split
+     * @param binaryOnly whether to only allow binary splits
+     * @return the suggestions by attribute, null for attributes without one
+     */
+    public static AttributeSplitSuggestion[] getBestSplitSuggestionsInParallel(
+            AutoExpandVector<AttributeClassObserver> observers,
+            SplitCriterion criterion, double[] preSplitDist, boolean binaryOnly) {
+        AttributeSplitSuggestion[] suggestions = new AttributeSplitSuggestion[observers.size()];
+        getSplitEvaluationPool().invoke(new SplitEvaluationTask(observers,
+                criterion, preSplitDist, binaryOnly, suggestions, 0, suggestions.length));
+        return suggestions;
+    }
+
+    protected static class SplitEvaluationTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        protected AutoExpandVector<AttributeClassObserver> observers;
+
+        protected SplitCriterion criterion;
+
+        protected double[] preSplitDist;
+
+        protected boolean binaryOnly;
+
+        protected AttributeSplitSuggestion[] suggestions;
+
+        protected int from;
+
+        protected int to;
+
+        public SplitEvaluationTask(AutoExpandVector<AttributeClassObserver> observers,
+                SplitCriterion criterion, double[] preSplitDist, boolean binaryOnly,
+                AttributeSplitSuggestion[] suggestions, int from, int to) {
+            this.observers = observers;
+            this.criterion = criterion;
+            this.preSplitDist = preSplitDist;
+            this.binaryOnly = binaryOnly;
+            this.suggestions = suggestions;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= SPLIT_EVALUATION_GRAIN) {
+                for (int i = this.from; i < this.to; i++) {
+                    AttributeClassObserver obs = this.observers.get(i);
+                    if (obs != null) {
+                        this.suggestions[i] = obs.getBestEvaluatedSplitSuggestion(
+                                this.criterion, this.preSplitDist, i, this.binaryOnly);
+                    }
+                }
+            } else {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new SplitEvaluationTask(this.observers, this.criterion,
+                        this.preSplitDist, this.binaryOnly, this.suggestions, this.from, middle),
+                        new SplitEvaluationTask(this.observers, this.criterion,
+                        this.preSplitDist, this.binaryOnly, this.suggestions, middle, this.to));
+            }
+        }
+    }
+
     protected Node treeRoot;
 
     protected int decisionNodeCount;
@@ -492,6 +600,23 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
         return calcByteSize();
     }
 
+    /**
+     * Estimates the size of the tree from its leaf counts, with the leaf
+     * sizes and overhead of the last {@link #estimateModelByteSizes}, which
+     * runs every memoryEstimatePeriod instances.
+     *
+     * @return the estimated size, or -1 before the first memory estimate
+     */
+    @Override
+    public int estimateByteSize() {
+        if (this.activeLeafByteSizeEstimate <= 0.0 && this.inactiveLeafByteSizeEstimate <= 0.0) {
+            return -1;
+        }
+        return (int) ((this.activeLeafNodeCount * this.activeLeafByteSizeEstimate
+                + this.inactiveLeafNodeCount * this.inactiveLeafByteSizeEstimate)
+                * this.byteSizeEstimateOverheadFraction);
+    }
+
     @Override
     public void resetLearningImpl() {
         this.treeRoot = null;
@@ -0,0 +1,205 @@
+/*
+ *    AsyncPredictionWriter.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.core;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes predictions to a csv file on a background thread, one
+ * "predicted,true" line per prediction as the evaluation tasks print them.
+ * Predictions are collected in blocks of primitive arrays that the background
+ * thread formats and writes, the blocks are then handed back for reuse.
+ *
+ * @version $Revision: 1 $
+ */
+public class AsyncPredictionWriter {
+
+    protected static final int BLOCK_SIZE = 4096;
+
+    protected static final int NUM_BLOCKS = 4;
+
+    protected static class Block {
+
+        protected int[] predicted = new int[BLOCK_SIZE];
+
+        protected int[] actual = new int[BLOCK_SIZE];
+
+        protected boolean[] missing = new boolean[BLOCK_SIZE];
+
+        protected int size = 0;
+    }
+
+    // marks the end of the predictions
+    protected static final Block END = new Block();
+
+    protected Writer out;
+
+    protected BlockingQueue<Block> written = new ArrayBlockingQueue<Block>(NUM_BLOCKS + 1);
+
+    protected BlockingQueue<Block> free = new ArrayBlockingQueue<Block>(NUM_BLOCKS);
+
+    protected Block block;
+
+    protected Thread thread;
+
+    protected volatile IOException error;
+
+    /**
+     * Opens a prediction file and starts the thread writing to it.
+     *
+     * @param file the file to write to
+     * @param append whether to append to an existing file
+     * @throws IOException if the file cannot be opened
+     */
+    public AsyncPredictionWriter(File file, boolean append) throws IOException {
+        this.out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file, append)), 1 << 16);
+        for (int i = 1; i < NUM_BLOCKS; i++) {
+            this.free.add(new Block());
+        }
+        this.block = new Block();
+        this.thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                writeBlocks();
+            }
+        }, "Prediction writer");
+        // never keep the JVM alive for the predictions of an aborted task
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Adds a prediction.
+     *
+     * @param predictedClass the predicted class
+     * @param trueClass the true class
+     * @param classIsMissing whether the true class is missing
+     */
+    public void write(int predictedClass, int trueClass, boolean classIsMissing) {
+        Block current = this.block;
+        current.predicted[current.size] = predictedClass;
+        current.actual[current.size] = trueClass;
+        current.missing[current.size] = classIsMissing;
+        if (++current.size == BLOCK_SIZE) {
+            hand(current);
+            this.block = take();
+        }
+    }
+
+    /**
+     * Writes the remaining predictions and closes the file.
+     *
+     * @throws IOException if writing the predictions failed
+     */
+    public void close() throws IOException {
+        if (this.block == null) {
+            return;
+        }
+        if (this.block.size > 0) {
+            hand(this.block);
+        }
+        this.block = null;
+        hand(END);
+        try {
+            this.thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        if (this.error != null) {
+            throw this.error;
+        }
+    }
+
+    protected void hand(Block full) {
+        if (this.error != null) {
+            throw new RuntimeException("Unable to write predictions", this.error);
+        }
+        try {
+            this.written.put(full);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected Block take() {
+        try {
+            return this.free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected void writeBlocks() {
+        StringBuilder sb = new StringBuilder();
+        String newLine = System.getProperty("line.separator");
+        Block full = null;
+        try {
+            try {
+                while ((full = this.written.take()) != END) {
+                    sb.setLength(0);
+                    for (int i = 0; i < full.size; i++) {
+                        sb.append(full.predicted[i]).append(',');
+                        if (full.missing[i]) {
+                            sb.append(" ? ");
+                        } else {
+                            sb.append(full.actual[i]);
+                        }
+                        sb.append(newLine);
+                    }
+                    this.out.append(sb);
+                    full.size = 0;
+                    this.free.put(full);
+                }
+                this.out.flush();
+            } catch (IOException e) {
+                this.error = e;
+                // keep taking blocks so the evaluation is not blocked
+                if (full != END) {
+                    full.size = 0;
+                    this.free.put(full);
+                }
+                while (full != END && (full = this.written.take()) != END) {
+                    full.size = 0;
+                    this.free.put(full);
+                }
+            } finally {
+                try {
+                    this.out.close();
+                } catch (IOException e) {
+                    if (this.error == null) {
+                        this.error = e;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ *    ByteSizeEstimator.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *    
+ */
+package moa.core;
+
+/**
+ * Interface implemented by models that keep an estimate of their memory size,
+ * cheap enough to be taken at every sample of an evaluation, unlike
+ * <code>measureByteSize</code> that walks the whole model.
+ * The estimate only has to grow and shrink with the model, it may be off by a
+ * roughly constant factor, which <code>ModelByteSizeTracker</code> calibrates
+ * away with occasional exact measurements.
+ *
+ * @version $Revision: 1 $
+ */
+public interface ByteSizeEstimator {
+
+    /**
+     * Gets an estimate of the memory size of this object.
+     *
+     * @return the estimated memory size in bytes, or -1 if there is no
+     * estimate yet
+     */
+    public int estimateByteSize();
+}
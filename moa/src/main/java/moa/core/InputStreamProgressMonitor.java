@@ -24,7 +24,8 @@ import java.io.IOException;
 import java.io.InputStream;
 
 /**
- * Class for monitoring the progress of reading an input stream.
+ * Class for monitoring the progress of reading an input stream. The progress
+ * can be read from another thread than the one reading the stream.
  *
  * @author Richard Kirkby (rkirkby@cs.waikato.ac.nz)
  * @version $Revision: 7 $
@@ -32,10 +33,10 @@ import java.io.InputStream;
 public class InputStreamProgressMonitor extends FilterInputStream {
 
 	/** The number of bytes to read in total */
-	protected int inputByteSize;
+	protected volatile int inputByteSize;
 
 	/** The number of bytes read so far */
-	protected int inputBytesRead;
+	protected volatile int inputBytesRead;
 
 	public InputStreamProgressMonitor(InputStream in) {
 		super(in);
@@ -0,0 +1,102 @@
+/*
+ *    ModelByteSizeTracker.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *    
+ */
+package moa.core;
+
+import moa.AbstractMOAObject;
+import moa.MOAObject;
+
+/**
+ * Keeps track of the memory size of a model during an evaluation.
+ * By default every sample measures the model exactly. When estimating, only
+ * every few samples measure the model exactly, the samples in between scale
+ * the last exact size by how much the estimate of the model has changed since,
+ * see {@link ByteSizeEstimator}. Models without an estimate keep the size of
+ * their last exact measurement in between.
+ *
+ * @version $Revision: 1 $
+ */
+public class ModelByteSizeTracker {
+
+    protected boolean estimate;
+
+    protected int exactFrequency;
+
+    protected long samples = 0;
+
+    // size at the last exact measurement and the estimate of the model then
+    protected int exactByteSize = -1;
+
+    protected int estimateAtExact = -1;
+
+    protected int lastByteSize = -1;
+
+    /**
+     * Creates a tracker that measures the model at every sample.
+     */
+    public ModelByteSizeTracker() {
+        this(false, 1);
+    }
+
+    /**
+     * Creates a tracker.
+     *
+     * @param estimate whether to estimate the size between exact measurements
+     * @param exactFrequency how many samples between exact measurements when
+     * estimating
+     */
+    public ModelByteSizeTracker(boolean estimate, int exactFrequency) {
+        this.estimate = estimate;
+        this.exactFrequency = exactFrequency;
+    }
+
+    /**
+     * Gets the memory size of the model at a sample.
+     *
+     * @param model the model
+     * @return the memory size of the model in bytes
+     */
+    public int byteSize(MOAObject model) {
+        this.lastByteSize = track(model);
+        return this.lastByteSize;
+    }
+
+    /**
+     * Gets the memory size of the model at the last sample.
+     *
+     * @return the memory size in bytes, or -1 before the first sample
+     */
+    public int getLastByteSize() {
+        return this.lastByteSize;
+    }
+
+    protected int track(MOAObject model) {
+        if (!this.estimate) {
+            return model.measureByteSize();
+        }
+        int estimated = AbstractMOAObject.estimateByteSize(model);
+        if (this.samples++ % this.exactFrequency == 0 || this.exactByteSize < 0) {
+            this.exactByteSize = model.measureByteSize();
+            this.estimateAtExact = estimated;
+            return this.exactByteSize;
+        }
+        if (estimated < 0 || this.estimateAtExact <= 0) {
+            return this.exactByteSize;
+        }
+        return (int) Math.round((double) estimated * this.exactByteSize / this.estimateAtExact);
+    }
+}
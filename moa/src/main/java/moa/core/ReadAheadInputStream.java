@@ -0,0 +1,241 @@
+/*
+ *    ReadAheadInputStream.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.core;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Input stream that reads its source ahead on a background thread, so
+ * reading the source, for instance decompressing it, overlaps with using the
+ * data. The source is read in blocks, of which one is being read from while
+ * the next ones are filled.
+ *
+ * @version $Revision: 1 $
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    protected static final int BLOCK_SIZE = 1 << 16;
+
+    protected static final int NUM_BLOCKS = 3;
+
+    protected static final byte[] GZIP_MAGIC = {(byte) 0x1f, (byte) 0x8b};
+
+    protected static final byte[] ZSTD_MAGIC = {(byte) 0x28, (byte) 0xb5, (byte) 0x2f, (byte) 0xfd};
+
+    protected static class Block {
+
+        protected byte[] data;
+
+        protected int length = 0;
+
+        protected Block(int size) {
+            this.data = new byte[size];
+        }
+    }
+
+    // marks the end of the source
+    protected static final Block END = new Block(0);
+
+    protected InputStream in;
+
+    protected BlockingQueue<Block> filled = new ArrayBlockingQueue<Block>(NUM_BLOCKS + 1);
+
+    protected BlockingQueue<Block> free = new ArrayBlockingQueue<Block>(NUM_BLOCKS);
+
+    protected Block block;
+
+    protected int position;
+
+    protected Thread thread;
+
+    protected volatile IOException error;
+
+    protected volatile boolean closed;
+
+    /**
+     * Starts reading a stream ahead.
+     *
+     * @param in the source, which is closed when this stream is closed
+     */
+    public ReadAheadInputStream(InputStream in) {
+        this.in = in;
+        for (int i = 0; i < NUM_BLOCKS; i++) {
+            this.free.add(new Block(BLOCK_SIZE));
+        }
+        this.thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                readBlocks();
+            }
+        }, "Read-ahead");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Gets the data of a file, decompressed on a read-ahead thread if the file
+     * is gzip compressed, which is detected from its first bytes or a .gz
+     * extension.
+     *
+     * @param in the stream of the file
+     * @param fileName the name of the file
+     * @return the stream of the data
+     * @throws IOException if reading the stream fails or the file is
+     * compressed with an unsupported format
+     */
+    public static InputStream uncompressed(InputStream in, String fileName) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BLOCK_SIZE);
+        byte[] magic = new byte[ZSTD_MAGIC.length];
+        buffered.mark(magic.length);
+        int numRead = 0;
+        int read;
+        while (numRead < magic.length && (read = buffered.read(magic, numRead, magic.length - numRead)) >= 0) {
+            numRead += read;
+        }
+        buffered.reset();
+        if (startsWith(magic, numRead, ZSTD_MAGIC)) {
+            throw new IOException("Zstandard compressed files are not supported: " + fileName);
+        }
+        if (startsWith(magic, numRead, GZIP_MAGIC) || fileName.toLowerCase().endsWith(".gz")) {
+            return new ReadAheadInputStream(new GZIPInputStream(buffered, BLOCK_SIZE));
+        }
+        return buffered;
+    }
+
+    protected static boolean startsWith(byte[] bytes, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextBlockIfRead()) {
+            return -1;
+        }
+        return this.block.data[this.position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextBlockIfRead()) {
+            return -1;
+        }
+        int numRead = Math.min(len, this.block.length - this.position);
+        System.arraycopy(this.block.data, this.position, b, off, numRead);
+        this.position += numRead;
+        return numRead;
+    }
+
+    @Override
+    public int available() {
+        return this.block == null ? 0 : this.block.length - this.position;
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+        this.block = END;
+        this.position = 0;
+        this.thread.interrupt();
+    }
+
+    /**
+     * Moves to the next filled block once the current one is read.
+     *
+     * @return false at the end of the source
+     * @throws IOException if reading the source failed
+     */
+    protected boolean nextBlockIfRead() throws IOException {
+        if (this.block != null && this.position < this.block.length) {
+            return true;
+        }
+        if (this.block == END) {
+            return false;
+        }
+        if (this.block != null) {
+            this.block.length = 0;
+            this.free.add(this.block);
+        }
+        try {
+            this.block = this.filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        this.position = 0;
+        if (this.block == END) {
+            if (this.error != null) {
+                throw this.error;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    protected void readBlocks() {
+        try {
+            try {
+                boolean endOfSource = false;
+                while (!endOfSource) {
+                    Block empty = this.free.take();
+                    int numRead;
+                    while (empty.length < empty.data.length
+                            && (numRead = this.in.read(empty.data, empty.length, empty.data.length - empty.length)) >= 0) {
+                        empty.length += numRead;
+                    }
+                    endOfSource = empty.length < empty.data.length;
+                    if (empty.length > 0) {
+                        this.filled.put(empty);
+                    }
+                }
+            } catch (IOException e) {
+                if (!this.closed) {
+                    this.error = e;
+                }
+            } finally {
+                try {
+                    this.in.close();
+                } catch (IOException e) {
+                    if (this.error == null && !this.closed) {
+                        this.error = e;
+                    }
+                }
+            }
+            this.filled.put(END);
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+}
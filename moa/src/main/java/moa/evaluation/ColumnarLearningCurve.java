@@ -0,0 +1,205 @@
+/*
+ *    ColumnarLearningCurve.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.evaluation;
+
+import java.util.Arrays;
+
+import moa.core.Measurement;
+import moa.learners.Learner;
+
+/**
+ * Learning curve that keeps each measurement in a primitive column. Entries
+ * can be added straight from the evaluator and the learner, without building
+ * a LearningEvaluation first, and entries with the same measurements as the
+ * last one skip the lookups of the measurement names.
+ *
+ * @version $Revision: 1 $
+ */
+public class ColumnarLearningCurve extends LearningCurve {
+
+    private static final long serialVersionUID = 1L;
+
+    protected static final int INITIAL_CAPACITY = 16;
+
+    // values of each measurement, NaN for entries without it
+    protected double[][] columns = new double[][]{newColumn(INITIAL_CAPACITY)};
+
+    protected int numEntries = 0;
+
+    // names of the measurements of the last entry in order and their columns
+    protected String[] lastNames = new String[0];
+
+    protected int[] lastColumns = new int[0];
+
+    public ColumnarLearningCurve(String orderingMeasurementName) {
+        super(orderingMeasurementName);
+    }
+
+    @Override
+    public void insertEntry(LearningEvaluation learningEvaluation) {
+        Measurement[] measurements = learningEvaluation.getMeasurements();
+        if (Measurement.getMeasurementNamed(getOrderingMeasurementName(), measurements) == null) {
+            throw new IllegalArgumentException();
+        }
+        int entry = addEntry();
+        for (int i = 0; i < measurements.length; i++) {
+            setValue(entry, i, measurements[i]);
+        }
+        sortEntry(entry);
+    }
+
+    /**
+     * Adds an entry with the given measurements followed by those of the
+     * evaluator and the learner, as a LearningEvaluation built from them
+     * would.
+     *
+     * @param names the names of the measurements, including the ordering
+     * measurement
+     * @param values the values of the measurements
+     * @param evaluator the evaluator
+     * @param model the learner
+     */
+    public void insertEntry(String[] names, double[] values,
+            LearningPerformanceEvaluator evaluator, Learner model) {
+        int orderIndex = Arrays.asList(names).indexOf(getOrderingMeasurementName());
+        if (orderIndex < 0) {
+            throw new IllegalArgumentException();
+        }
+        int entry = addEntry();
+        for (int i = 0; i < names.length; i++) {
+            int column = column(i, names[i]);
+            this.columns[column][entry] = values[i];
+        }
+        int position = names.length;
+        for (Measurement measurement : evaluator.getPerformanceMeasurements()) {
+            setValue(entry, position++, measurement);
+        }
+        for (Measurement measurement : model.getModelMeasurements()) {
+            setValue(entry, position++, measurement);
+        }
+        sortEntry(entry);
+    }
+
+    @Override
+    public int numEntries() {
+        return this.numEntries;
+    }
+
+    @Override
+    public String entryToString(int entryIndex) {
+        if (entryIndex >= this.numEntries) {
+            throw new IndexOutOfBoundsException("Entry: " + entryIndex);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < this.measurementNames.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            double value = this.columns[i][entryIndex];
+            if (Double.isNaN(value)) {
+                sb.append('?');
+            } else {
+                sb.append(Double.toString(value));
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public double getMeasurement(int entryIndex, int measurementIndex) {
+        if (entryIndex >= this.numEntries) {
+            throw new IndexOutOfBoundsException("Entry: " + entryIndex);
+        }
+        return this.columns[measurementIndex][entryIndex];
+    }
+
+    protected void setValue(int entry, int position, Measurement measurement) {
+        int column = column(position, measurement.getName());
+        this.columns[column][entry] = measurement.getValue();
+    }
+
+    /**
+     * Gets the column of a measurement, adding one for new measurements.
+     *
+     * @param position the position of the measurement in the entry
+     * @param name the name of the measurement
+     * @return the column
+     */
+    protected int column(int position, String name) {
+        if (position < this.lastNames.length && name.equals(this.lastNames[position])) {
+            return this.lastColumns[position];
+        }
+        int column = addMeasurementName(name);
+        if (column == this.columns.length) {
+            this.columns = Arrays.copyOf(this.columns, column + 1);
+            this.columns[column] = newColumn(this.columns[0].length);
+        }
+        if (position >= this.lastNames.length) {
+            this.lastNames = Arrays.copyOf(this.lastNames, position + 1);
+            this.lastColumns = Arrays.copyOf(this.lastColumns, position + 1);
+        }
+        this.lastNames[position] = name;
+        this.lastColumns[position] = column;
+        return column;
+    }
+
+    /**
+     * Adds an entry without values at the end.
+     *
+     * @return the index of the entry
+     */
+    protected int addEntry() {
+        if (this.numEntries == this.columns[0].length) {
+            for (int i = 0; i < this.columns.length; i++) {
+                double[] grown = Arrays.copyOf(this.columns[i], 2 * this.numEntries);
+                Arrays.fill(grown, this.numEntries, grown.length, Double.NaN);
+                this.columns[i] = grown;
+            }
+        }
+        return this.numEntries++;
+    }
+
+    /**
+     * Moves the last entry before the entries it does not come after, like
+     * LearningCurve inserts entries.
+     *
+     * @param entry the index of the last entry
+     */
+    protected void sortEntry(int entry) {
+        double[] order = this.columns[0];
+        double orderVal = order[entry];
+        int index = entry;
+        while (index > 0 && !(orderVal > order[index - 1])) {
+            index--;
+        }
+        if (index == entry) {
+            return;
+        }
+        for (double[] column : this.columns) {
+            double value = column[entry];
+            System.arraycopy(column, index, column, index + 1, entry - index);
+            column[index] = value;
+        }
+    }
+
+    protected static double[] newColumn(int capacity) {
+        double[] column = new double[capacity];
+        Arrays.fill(column, Double.NaN);
+        return column;
+    }
+}
@@ -24,6 +24,7 @@ import com.github.javacliparser.IntOption;
 import com.yahoo.labs.samoa.instances.Instances;
 import com.yahoo.labs.samoa.instances.InstancesHeader;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -31,12 +32,14 @@ import java.io.InputStreamReader;
 import java.io.Reader; 
 import moa.core.InputStreamProgressMonitor;
 import moa.core.InstanceExample;
+import moa.core.ReadAheadInputStream;
 import moa.core.ObjectRepository;
 import moa.options.AbstractOptionHandler;
 import moa.tasks.TaskMonitor;
 
 /**
- * Stream reader of ARFF files.
+ * Stream reader of ARFF files. Gzip compressed files are decompressed while
+ * reading, on a read-ahead thread.
  *
  * @author Richard Kirkby (rkirkby@cs.waikato.ac.nz)
  * @version $Revision: 7 $
@@ -60,6 +63,12 @@ public class ArffFileStream extends AbstractOptionHandler implements
             "Class index of data. 0 for none or -1 for last attribute in file.",
             -1, -1, Integer.MAX_VALUE);
 
+    public IntOption parseThreadsOption = new IntOption(
+            "parseThreads",
+            'p',
+            "Number of threads parsing the file, 0 to parse it on the thread reading the instances.",
+            0, 0, Integer.MAX_VALUE);
+
     protected Instances instances;
 
     protected Reader fileReader;
@@ -121,14 +130,18 @@ public class ArffFileStream extends AbstractOptionHandler implements
     @Override
     public void restart() {
         try {
+            if (this.instances != null) {
+                this.instances.closeReader();
+            }
             if (this.fileReader != null) {
                 this.fileReader.close();
             }
-            InputStream fileStream = new FileInputStream(this.arffFileOption.getFile());
+            File file = this.arffFileOption.getFile();
+            InputStream fileStream = new FileInputStream(file);
             this.fileProgressMonitor = new InputStreamProgressMonitor(
                     fileStream);
             this.fileReader = new BufferedReader(new InputStreamReader(
-                    this.fileProgressMonitor));
+                    ReadAheadInputStream.uncompressed(this.fileProgressMonitor, file.getName())));
             int classIndex = this.classIndexOption.getValue();
             this.instances = new Instances(this.fileReader, 1, classIndex);
             if (classIndex < 0) {
@@ -136,6 +149,7 @@ public class ArffFileStream extends AbstractOptionHandler implements
             } else if (this.classIndexOption.getValue() > 0) {
                 this.instances.setClassIndex(this.classIndexOption.getValue() - 1);
 				}
+            this.instances.setParseThreads(this.parseThreadsOption.getValue());
             this.numInstancesRead = 0;
             this.lastInstanceRead = null;
             this.hitEndOfFile = !readNextInstanceFromFile();
@@ -0,0 +1,307 @@
+/*
+ *    BinaryInstanceFileStream.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.streams;
+
+import com.github.javacliparser.FileOption;
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+import com.yahoo.labs.samoa.instances.InstancesHeader;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import moa.core.InstanceExample;
+import moa.core.ObjectRepository;
+import moa.core.StringUtils;
+import moa.options.AbstractOptionHandler;
+import moa.tasks.TaskMonitor;
+
+/**
+ * Stream reader of binary instance files, as written by
+ * WriteStreamToBinaryFile. The file is memory mapped, so reading an instance
+ * only copies its values out of the mapping, and restarting or seeking to an
+ * instance is O(1).
+ *
+ * <p>The file starts with the magic number and version, the class index, the
+ * ARFF header in UTF-8 and the type of every attribute. Every instance is then
+ * a fixed size record of its weight followed by its values: a double for
+ * numeric attributes, NaN when missing, and an int for nominal attributes,
+ * -1 when missing. All numbers are big-endian.</p>
+ *
+ * @version $Revision: 1 $
+ */
+public class BinaryInstanceFileStream extends AbstractOptionHandler implements
+        InstanceStream {
+
+    @Override
+    public String getPurposeString() {
+        return "A stream read from a binary instance file.";
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int MAGIC = 0x4D4F4142; // "MOAB"
+
+    public static final int VERSION = 1;
+
+    public static final byte NUMERIC = 0;
+
+    public static final byte NOMINAL = 1;
+
+    public FileOption binaryFileOption = new FileOption("binaryFile", 'f',
+            "Binary instance file to load.", null, "bin", false);
+
+    protected InstancesHeader header;
+
+    protected byte[] types;
+
+    protected int recordSize;
+
+    protected long dataOffset;
+
+    protected long numInstances;
+
+    protected long position;
+
+    // the records are mapped in segments of whole records, as a mapping is limited to 2GB
+    protected int recordsPerSegment;
+
+    protected transient ByteBuffer[] segments;
+
+    public BinaryInstanceFileStream() {
+    }
+
+    public BinaryInstanceFileStream(String binaryFileName) {
+        this.binaryFileOption.setValue(binaryFileName);
+        restart();
+    }
+
+    @Override
+    public void prepareForUseImpl(TaskMonitor monitor,
+            ObjectRepository repository) {
+        this.segments = null;
+        restart();
+    }
+
+    @Override
+    public InstancesHeader getHeader() {
+        return this.header;
+    }
+
+    @Override
+    public long estimatedRemainingInstances() {
+        return this.numInstances - this.position;
+    }
+
+    @Override
+    public boolean hasMoreInstances() {
+        return this.position < this.numInstances;
+    }
+
+    @Override
+    public InstanceExample nextInstance() {
+        if (this.segments == null) {
+            open();
+        }
+        ByteBuffer segment = this.segments[(int) (this.position / this.recordsPerSegment)];
+        int offset = (int) (this.position % this.recordsPerSegment) * this.recordSize;
+        double weight = segment.getDouble(offset);
+        offset += 8;
+        double[] values = new double[this.types.length];
+        for (int i = 0; i < values.length; i++) {
+            if (this.types[i] == NOMINAL) {
+                int value = segment.getInt(offset);
+                values[i] = value < 0 ? Double.NaN : value;
+                offset += 4;
+            } else {
+                values[i] = segment.getDouble(offset);
+                offset += 8;
+            }
+        }
+        this.position++;
+        Instance inst = new DenseInstance(weight, values);
+        inst.setDataset(this.header);
+        return new InstanceExample(inst);
+    }
+
+    /**
+     * Gets the number of instances in the file.
+     *
+     * @return the number of instances
+     */
+    public long numInstances() {
+        return this.numInstances;
+    }
+
+    /**
+     * Moves to an instance, the next instance returned is the one at the
+     * given index.
+     *
+     * @param index the index of the instance
+     */
+    public void seek(long index) {
+        if (index < 0 || index > this.numInstances) {
+            throw new IndexOutOfBoundsException("Instance: " + index);
+        }
+        this.position = index;
+    }
+
+    @Override
+    public boolean isRestartable() {
+        return true;
+    }
+
+    @Override
+    public void restart() {
+        if (this.segments == null) {
+            open();
+        }
+        this.position = 0;
+    }
+
+    /**
+     * Reads the header of the file and maps its records.
+     */
+    protected void open() {
+        File file = this.binaryFileOption.getFile();
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                if (raf.readInt() != MAGIC) {
+                    throw new IOException("Not a binary instance file: " + file);
+                }
+                int version = raf.readInt();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported binary instance file version " + version + ": " + file);
+                }
+                int classIndex = raf.readInt();
+                byte[] arffHeader = new byte[raf.readInt()];
+                raf.readFully(arffHeader);
+                Instances instances = new Instances(new StringReader(new String(arffHeader, "UTF-8")), 1, 0);
+                if (classIndex >= 0) {
+                    instances.setClassIndex(classIndex);
+                }
+                this.types = new byte[raf.readInt()];
+                raf.readFully(this.types);
+                if (this.types.length != instances.numAttributes()) {
+                    throw new IOException("Attribute types do not match the header: " + file);
+                }
+                this.header = new InstancesHeader(instances);
+                this.recordSize = recordSize(this.types);
+                this.dataOffset = raf.getFilePointer();
+                this.numInstances = (raf.length() - this.dataOffset) / this.recordSize;
+                this.recordsPerSegment = Math.max(1, Integer.MAX_VALUE / this.recordSize);
+                long segmentSize = (long) this.recordsPerSegment * this.recordSize;
+                int numSegments = (int) ((this.numInstances + this.recordsPerSegment - 1) / this.recordsPerSegment);
+                ByteBuffer[] mapped = new ByteBuffer[numSegments];
+                FileChannel channel = raf.getChannel();
+                for (int i = 0; i < numSegments; i++) {
+                    long start = this.dataOffset + i * segmentSize;
+                    long end = Math.min(start + segmentSize, this.dataOffset + this.numInstances * this.recordSize);
+                    mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                }
+                // the mappings stay valid once the file is closed
+                this.segments = mapped;
+            } finally {
+                raf.close();
+            }
+        } catch (IOException ioe) {
+            throw new RuntimeException("BinaryInstanceFileStream restart failed.", ioe);
+        }
+    }
+
+    /**
+     * Gets the type every attribute is stored as.
+     *
+     * @param header the header of the instances
+     * @return the types of the attributes
+     */
+    public static byte[] attributeTypes(InstancesHeader header) {
+        byte[] types = new byte[header.numAttributes()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = header.attribute(i).isNominal() ? NOMINAL : NUMERIC;
+        }
+        return types;
+    }
+
+    /**
+     * Gets the size of an instance record.
+     *
+     * @param types the types of the attributes
+     * @return the size in bytes
+     */
+    public static int recordSize(byte[] types) {
+        int size = 8;
+        for (byte type : types) {
+            size += type == NOMINAL ? 4 : 8;
+        }
+        return size;
+    }
+
+    /**
+     * Writes the header of a binary instance file.
+     *
+     * @param out the output
+     * @param header the header of the instances
+     * @param types the types of the attributes
+     * @throws IOException if writing fails
+     */
+    public static void writeHeader(DataOutput out, InstancesHeader header,
+            byte[] types) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(header.classIndex());
+        byte[] arffHeader = header.toString().getBytes("UTF-8");
+        out.writeInt(arffHeader.length);
+        out.write(arffHeader);
+        out.writeInt(types.length);
+        out.write(types);
+    }
+
+    /**
+     * Writes an instance record.
+     *
+     * @param out the output
+     * @param inst the instance
+     * @param types the types of the attributes
+     * @throws IOException if writing fails
+     */
+    public static void writeInstance(DataOutput out, Instance inst,
+            byte[] types) throws IOException {
+        out.writeDouble(inst.weight());
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] == NOMINAL) {
+                out.writeInt(inst.isMissing(i) ? -1 : (int) inst.value(i));
+            } else {
+                out.writeDouble(inst.isMissing(i) ? Double.NaN : inst.value(i));
+            }
+        }
+    }
+
+    @Override
+    public void getDescription(StringBuilder sb, int indent) {
+        StringUtils.appendIndented(sb, indent, "Binary instance file: ");
+        sb.append(this.binaryFileOption.getFile());
+        StringUtils.appendNewlineIndented(sb, indent, "Instances: ");
+        sb.append(this.numInstances);
+    }
+}
@@ -23,6 +23,7 @@ import com.github.javacliparser.FileOption;
 import com.yahoo.labs.samoa.instances.Instances;
 import com.yahoo.labs.samoa.instances.InstancesHeader;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -31,12 +32,14 @@ import java.io.Reader;
 import com.github.javacliparser.RangeOption;  // jesse
 import moa.core.InputStreamProgressMonitor;
 import moa.core.InstanceExample;
+import moa.core.ReadAheadInputStream;
 import moa.core.ObjectRepository;
 import moa.options.AbstractOptionHandler;
 import moa.tasks.TaskMonitor;
 
 /**
- * Stream reader of ARFF files.
+ * Stream reader of ARFF files. Gzip compressed files are decompressed while
+ * reading, on a read-ahead thread.
  *
  * @author Richard Kirkby (rkirkby@cs.waikato.ac.nz)
  * @version $Revision: 7 $
@@ -130,14 +133,18 @@ public class MultiTargetArffFileStream extends AbstractOptionHandler implements
     @Override
     public void restart() {
         try {
+            if (this.instances != null) {
+                this.instances.closeReader();
+            }
             if (this.fileReader != null) {
                 this.fileReader.close();
             }
-            InputStream fileStream = new FileInputStream(this.arffFileOption.getFile());
+            File file = this.arffFileOption.getFile();
+            InputStream fileStream = new FileInputStream(file);
             this.fileProgressMonitor = new InputStreamProgressMonitor(
                     fileStream);
             this.fileReader = new BufferedReader(new InputStreamReader(
-                    this.fileProgressMonitor));
+                    ReadAheadInputStream.uncompressed(this.fileProgressMonitor, file.getName())));
 			// jesse -----
 			/*int cs[] = this.outputAttributesOption.getRange(); 
 			if (cs.length == 1) {
@@ -27,6 +27,7 @@ import com.yahoo.labs.samoa.instances.DenseInstance;
 import com.yahoo.labs.samoa.instances.Instance;
 import com.yahoo.labs.samoa.instances.Instances;
 import com.yahoo.labs.samoa.instances.InstancesHeader;
+import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Random;
 import moa.core.FastVector;
@@ -132,7 +133,7 @@ public class AssetNegotiationGenerator
     /*
      * Labeling functions
      */
-    protected interface ClassFunction {
+    protected interface ClassFunction extends Serializable {
 
 	public int determineClass(String color,
 		String price,
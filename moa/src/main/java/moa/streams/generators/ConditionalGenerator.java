@@ -31,6 +31,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Serializable;
 import java.util.*;
 import java.util.stream.Stream;
 
@@ -64,7 +65,7 @@ public class ConditionalGenerator extends AbstractOptionHandler implements Insta
      * contains class data structures
      *
      */
-    protected class StreamConcept
+    protected class StreamConcept implements Serializable
     {
         ClassificationClass[] classArray;
         int[] relevantNomAttributeIndices;
@@ -78,7 +79,7 @@ public class ConditionalGenerator extends AbstractOptionHandler implements Insta
     /**
      * class data structure
      */
-    protected class ClassificationClass
+    protected class ClassificationClass implements Serializable
     {
         int relevantNum  = 0;
         int relevantNom  = 0;
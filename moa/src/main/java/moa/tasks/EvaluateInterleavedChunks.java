@@ -22,10 +22,13 @@ package moa.tasks;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
+import moa.classifiers.AbstractClassifier;
+import moa.classifiers.BlockClassifier;
 import moa.classifiers.Classifier;
 import moa.core.Example;
 import moa.core.InstanceExample;
 import moa.core.Measurement;
+import moa.core.ModelByteSizeTracker;
 import moa.core.ObjectRepository;
 import moa.core.TimingUtils;
 import moa.evaluation.LearningCurve;
@@ -34,6 +37,7 @@ import moa.evaluation.LearningPerformanceEvaluator;
 import moa.learners.Learner;
 import moa.options.ClassOption;
 import com.github.javacliparser.FileOption;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.IntOption;
 import moa.streams.ExampleStream;
 import moa.streams.InstanceStream;
@@ -120,6 +124,19 @@ public class EvaluateInterleavedChunks extends MainTask {
 	public FileOption dumpFileOption = new FileOption("dumpFile", 'd',
 			"File to append intermediate csv reslts to.", null, "csv", true);
 
+	/**
+	 * Allows to estimate the memory of the learner between exact measurements.
+	 */
+	public FlagOption estimateMemoryOption = new FlagOption("estimateMemory", 'm',
+			"Use the memory estimate of learners that keep one for RAM-Hours and model size, measuring exactly only every exactMemoryFrequency samples.");
+
+	/**
+	 * Defines how often the memory of the learner is measured exactly when estimating it.
+	 */
+	public IntOption exactMemoryFrequencyOption = new IntOption("exactMemoryFrequency", 'x',
+			"How many samples between exact memory measurements of the learner when estimating memory.",
+			10, 1, Integer.MAX_VALUE);
+
 	/**
 	 * Defines the task's result type.
 	 */
@@ -133,6 +150,11 @@ public class EvaluateInterleavedChunks extends MainTask {
 		ExampleStream stream = (ExampleStream) getPreparedClassOption(this.streamOption);
 		LearningPerformanceEvaluator evaluator = (LearningPerformanceEvaluator) getPreparedClassOption(this.evaluatorOption);
 		learner.setModelContext(stream.getHeader());
+		ModelByteSizeTracker byteSizeTracker = new ModelByteSizeTracker(
+				this.estimateMemoryOption.isSet(), this.exactMemoryFrequencyOption.getValue());
+		if (this.estimateMemoryOption.isSet() && learner instanceof AbstractClassifier) {
+			((AbstractClassifier) learner).setByteSizeTracker(byteSizeTracker);
+		}
 		int maxInstances = this.instanceLimitOption.getValue();
 		int chunkSize = this.chunkSizeOption.getValue();
 		long instancesProcessed = 0;
@@ -164,6 +186,9 @@ public class EvaluateInterleavedChunks extends MainTask {
 		long evaluateStartTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
 		long sampleTestTime =0, sampleTrainTime = 0;
 		double RAMHours = 0.0;
+		// classifiers test and train on each chunk as one block
+		BlockClassifier blockLearner = learner instanceof BlockClassifier ? (BlockClassifier) learner : null;
+		Instance[] blockInstances = blockLearner != null ? new Instance[chunkSize] : null;
 		
 		while (stream.hasMoreInstances()
 				&& ((maxInstances < 0) || (instancesProcessed < maxInstances))
@@ -192,9 +217,23 @@ public class EvaluateInterleavedChunks extends MainTask {
 				}
 			}		
 			
+			int numChunkInstances = chunkInstances.numInstances();
+			if (blockLearner != null) {
+				for (int i=0; i< numChunkInstances; i++) {
+					blockInstances[i] = chunkInstances.instance(i);
+				}
+			}
+			
 			////Testing
 			long testStartTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
-			if(!firstChunk)
+			if(!firstChunk && blockLearner != null)
+			{
+				double[][] predictions = blockLearner.getVotesForInstances(blockInstances, 0, numChunkInstances);
+				for (int i=0; i< numChunkInstances; i++) {
+					evaluator.addResult(new InstanceExample(blockInstances[i]), predictions[i]);
+				}
+			}
+			else if(!firstChunk)
 			{
 				for (int i=0; i< chunkInstances.numInstances(); i++) {
 					Example testInst = new InstanceExample((Instance) chunkInstances.instance(i));
@@ -213,17 +252,23 @@ public class EvaluateInterleavedChunks extends MainTask {
 			////Training
 			long trainStartTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
 			
-			for (int i=0; i< chunkInstances.numInstances(); i++) {
-				learner.trainOnInstance(new InstanceExample(chunkInstances.instance(i)));
-				instancesProcessed++;
-		    }
+			if (blockLearner != null) {
+				blockLearner.trainOnInstances(blockInstances, 0, numChunkInstances);
+				instancesProcessed += numChunkInstances;
+			}
+			else {
+				for (int i=0; i< chunkInstances.numInstances(); i++) {
+					learner.trainOnInstance(new InstanceExample(chunkInstances.instance(i)));
+					instancesProcessed++;
+			    }
+			}
 			
 			sampleTrainTime += TimingUtils.getNanoCPUTimeOfCurrentThread() - trainStartTime;
 			
 			////Result output
 			if (instancesProcessed % this.sampleFrequencyOption.getValue() == 0) {
 				
-				double RAMHoursIncrement = learner.measureByteSize() / (1024.0 * 1024.0 * 1024.0); //GBs
+				double RAMHoursIncrement = byteSizeTracker.byteSize(learner) / (1024.0 * 1024.0 * 1024.0); //GBs
                 RAMHoursIncrement *= (TimingUtils.nanoTimeToSeconds(sampleTrainTime + sampleTestTime) / 3600.0); //Hours
                 RAMHours += RAMHoursIncrement;
 				
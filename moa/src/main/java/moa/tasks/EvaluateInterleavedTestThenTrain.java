@@ -23,9 +23,11 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
 
+import moa.classifiers.AbstractClassifier;
 import moa.classifiers.Classifier;
 import moa.core.Example;
 import moa.core.Measurement;
+import moa.core.ModelByteSizeTracker;
 import moa.core.ObjectRepository;
 import moa.core.TimingUtils;
 import moa.evaluation.LearningCurve;
@@ -34,6 +36,7 @@ import moa.evaluation.LearningPerformanceEvaluator;
 import moa.learners.Learner;
 import moa.options.ClassOption;
 import com.github.javacliparser.FileOption;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.IntOption;
 import moa.streams.ExampleStream;
 import moa.streams.InstanceStream;
@@ -91,6 +94,13 @@ public class EvaluateInterleavedTestThenTrain extends MainTask {
     public FileOption dumpFileOption = new FileOption("dumpFile", 'd',
             "File to append intermediate csv reslts to.", null, "csv", true);
 
+    public FlagOption estimateMemoryOption = new FlagOption("estimateMemory", 'm',
+            "Use the memory estimate of learners that keep one for RAM-Hours and model size, measuring exactly only every exactMemoryFrequency samples.");
+
+    public IntOption exactMemoryFrequencyOption = new IntOption("exactMemoryFrequency", 'x',
+            "How many samples between exact memory measurements of the learner when estimating memory.",
+            10, 1, Integer.MAX_VALUE);
+
     @Override
     public Class<?> getTaskResultType() {
         return LearningCurve.class;
@@ -113,6 +123,11 @@ public class EvaluateInterleavedTestThenTrain extends MainTask {
         
         LearningPerformanceEvaluator evaluator = (LearningPerformanceEvaluator) getPreparedClassOption(this.evaluatorOption);
         learner.setModelContext(stream.getHeader());
+        ModelByteSizeTracker byteSizeTracker = new ModelByteSizeTracker(
+                this.estimateMemoryOption.isSet(), this.exactMemoryFrequencyOption.getValue());
+        if (this.estimateMemoryOption.isSet() && learner instanceof AbstractClassifier) {
+            ((AbstractClassifier) learner).setByteSizeTracker(byteSizeTracker);
+        }
         int maxInstances = this.instanceLimitOption.getValue();
         long instancesProcessed = 0;
         int maxSeconds = this.timeLimitOption.getValue();
@@ -159,7 +174,7 @@ public class EvaluateInterleavedTestThenTrain extends MainTask {
                 long evaluateTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
                 double time = TimingUtils.nanoTimeToSeconds(evaluateTime - evaluateStartTime);
                 double timeIncrement = TimingUtils.nanoTimeToSeconds(evaluateTime - lastEvaluateStartTime);
-                double RAMHoursIncrement = learner.measureByteSize() / (1024.0 * 1024.0 * 1024.0); //GBs
+                double RAMHoursIncrement = byteSizeTracker.byteSize(learner) / (1024.0 * 1024.0 * 1024.0); //GBs
                 RAMHoursIncrement *= (timeIncrement / 3600.0); //Hours
                 RAMHours += RAMHoursIncrement;
                 lastEvaluateStartTime = evaluateTime;
@@ -21,10 +21,12 @@
 package moa.tasks;
 
 import com.github.javacliparser.FileOption;
+import com.github.javacliparser.FlagOption;
 import com.github.javacliparser.FloatOption;
 import com.github.javacliparser.IntOption;
 import com.github.javacliparser.MultiChoiceOption;
 import com.yahoo.labs.samoa.instances.Instance;
+import moa.classifiers.AbstractClassifier;
 import moa.classifiers.Classifier;
 import moa.core.*;
 import moa.evaluation.*;
@@ -108,6 +110,13 @@ public class EvaluatePrequentialCV extends MainTask {
     public IntOption randomSeedOption = new IntOption("randomSeed", 'r',
             "Seed for random behaviour of the task.", 1);
 
+    public FlagOption estimateMemoryOption = new FlagOption("estimateMemory", 'm',
+            "Use the memory estimate of learners that keep one for RAM-Hours and model size, measuring exactly only every exactMemoryFrequency samples.");
+
+    public IntOption exactMemoryFrequencyOption = new IntOption("exactMemoryFrequency", 'x',
+            "How many samples between exact memory measurements of the learners when estimating memory.",
+            10, 1, Integer.MAX_VALUE);
+
 
     @Override
     public Class<?> getTaskResultType() {
@@ -126,9 +135,15 @@ public class EvaluatePrequentialCV extends MainTask {
 
         LearningPerformanceEvaluator[] evaluators = new LearningPerformanceEvaluator[this.ensembleSizeOption.getValue()];
         LearningPerformanceEvaluator baseEvaluator = (LearningPerformanceEvaluator) getPreparedClassOption(this.evaluatorOption);
+        ModelByteSizeTracker[] byteSizeTrackers = new ModelByteSizeTracker[learners.length];
         for (int i = 0; i < learners.length; i++) {
             learners[i] = (Learner) baseLearner.copy();
             learners[i].setModelContext(stream.getHeader());
+            byteSizeTrackers[i] = new ModelByteSizeTracker(
+                    this.estimateMemoryOption.isSet(), this.exactMemoryFrequencyOption.getValue());
+            if (this.estimateMemoryOption.isSet() && learners[i] instanceof AbstractClassifier) {
+                ((AbstractClassifier) learners[i]).setByteSizeTracker(byteSizeTrackers[i]);
+            }
             evaluators[i] = (LearningPerformanceEvaluator) baseEvaluator.copy();
         }
 
@@ -201,7 +216,7 @@ public class EvaluatePrequentialCV extends MainTask {
                 double timeIncrement = TimingUtils.nanoTimeToSeconds(evaluateTime - lastEvaluateStartTime);
 
                 for (int i = 0; i < learners.length; i++) {
-                    double RAMHoursIncrement = learners[i].measureByteSize() / (1024.0 * 1024.0 * 1024.0); //GBs
+                    double RAMHoursIncrement = byteSizeTrackers[i].byteSize(learners[i]) / (1024.0 * 1024.0 * 1024.0); //GBs
                     RAMHoursIncrement *= (timeIncrement / 3600.0); //Hours
                     RAMHours += RAMHoursIncrement;
                 }
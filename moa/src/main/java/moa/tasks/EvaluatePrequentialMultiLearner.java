@@ -0,0 +1,498 @@
+/*
+ *    EvaluatePrequentialMultiLearner.java
+ *
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 3 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package moa.tasks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import moa.classifiers.AbstractClassifier;
+import moa.classifiers.Classifier;
+import moa.classifiers.iss.ranking.SharedRanking;
+import moa.classifiers.iss.ranking.SharedRankingLearner;
+import moa.core.Example;
+import moa.core.Measurement;
+import moa.core.ModelByteSizeTracker;
+import moa.core.ObjectRepository;
+import moa.core.TimingUtils;
+import moa.core.Utils;
+import moa.evaluation.LearningCurve;
+import moa.evaluation.LearningEvaluation;
+import moa.evaluation.LearningPerformanceEvaluator;
+import moa.learners.Learner;
+import moa.options.ClassOption;
+import moa.options.OptionHandler;
+import moa.streams.ExampleStream;
+
+import com.github.javacliparser.FileOption;
+import com.github.javacliparser.FlagOption;
+import com.github.javacliparser.IntOption;
+import com.github.javacliparser.ListOption;
+import com.github.javacliparser.Option;
+import com.yahoo.labs.samoa.instances.Instance;
+
+/**
+ * Task for evaluating several classifiers on one stream by testing then training with each example in sequence.
+ * Every example is only generated once and given to all learners, each learner gets its own evaluator, learning
+ * curve, dump file and prediction file, the same as running EvaluatePrequential for every learner on its own.
+ * The evaluation time of every learner is the time spent in the learner and its evaluator plus the time spent
+ * generating the stream, so it compares to separate runs. ISS learners given the same shared ranking key share
+ * their ranking window and statistics within the run. On their own threads such learners can rank with a window
+ * that is up to the queue size ahead of them, see {@link SharedRanking}.
+ * <p>
+ * By default the learners test and train on each example in turn. They can also run on their own threads, fed
+ * through bounded queues. In both modes the learners and their evaluators are given the same example objects, so
+ * a learner that modifies the examples it is given, e.g. their weights, class or values, changes what the others
+ * see. Such learners need the copyExamples option, which gives every learner its own copy of each example.
+ *
+ * @version $Revision: 1 $
+ */
+public class EvaluatePrequentialMultiLearner extends MainTask {
+
+    @Override
+    public String getPurposeString() {
+        return "Evaluates several classifiers on a stream by testing then training with each example in sequence, generating the stream once.";
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    public ListOption learnersOption = new ListOption("learners", 'l',
+            "Learners to train.",
+            new ClassOption("learner", ' ', "", Classifier.class, "bayes.NaiveBayes"),
+            new Option[]{
+                new ClassOption("", ' ', "", Classifier.class, "bayes.NaiveBayes"),
+                new ClassOption("", ' ', "", Classifier.class, "trees.HoeffdingTree")},
+            ',');
+
+    public ClassOption streamOption = new ClassOption("stream", 's',
+            "Stream to learn from.", ExampleStream.class,
+            "generators.RandomTreeGenerator");
+
+    public ClassOption evaluatorOption = new ClassOption("evaluator", 'e',
+            "Classification performance evaluation method, copied for every learner.",
+            LearningPerformanceEvaluator.class,
+            "WindowClassificationPerformanceEvaluator");
+
+    public IntOption instanceLimitOption = new IntOption("instanceLimit", 'i',
+            "Maximum number of instances to test/train on  (-1 = no limit).",
+            100000000, -1, Integer.MAX_VALUE);
+
+    public IntOption sampleFrequencyOption = new IntOption("sampleFrequency",
+            'f',
+            "How many instances between samples of the learning performance.",
+            100000, 0, Integer.MAX_VALUE);
+
+    public ListOption dumpFilesOption = new ListOption("dumpFiles", 'd',
+            "Files to append intermediate csv results to, one per learner in the same order, or none.",
+            new FileOption("dumpFile", ' ', "", null, "csv", true),
+            new Option[0], ',');
+
+    public ListOption outputPredictionFilesOption = new ListOption("outputPredictionFiles", 'o',
+            "Files to append output predictions to, one per learner in the same order, or none.",
+            new FileOption("outputPredictionFile", ' ', "", null, "pred", true),
+            new Option[0], ',');
+
+    public FlagOption threadedOption = new FlagOption("threaded", 'p',
+            "Run every learner on its own thread instead of in turn.");
+
+    public IntOption queueSizeOption = new IntOption("queueSize", 'b',
+            "How many examples a learner running on its own thread can fall behind the stream.",
+            1000, 1, Integer.MAX_VALUE);
+
+    public FlagOption copyExamplesOption = new FlagOption("copyExamples", 'c',
+            "Give every learner its own copy of each example, for learners that modify the examples they are given.");
+
+    public FlagOption estimateMemoryOption = new FlagOption("estimateMemory", 'm',
+            "Use the memory estimate of learners that keep one for RAM-Hours and model size, measuring exactly only every exactMemoryFrequency samples.");
+
+    public IntOption exactMemoryFrequencyOption = new IntOption("exactMemoryFrequency", 'x',
+            "How many samples between exact memory measurements of the learner when estimating memory.",
+            10, 1, Integer.MAX_VALUE);
+
+    @Override
+    public Class<?> getTaskResultType() {
+        return LearningCurve[].class;
+    }
+
+    @Override
+    protected Object doMainTask(TaskMonitor monitor, ObjectRepository repository) {
+        ExampleStream stream = (ExampleStream) getPreparedClassOption(this.streamOption);
+        LearningPerformanceEvaluator evaluator = (LearningPerformanceEvaluator) getPreparedClassOption(this.evaluatorOption);
+        Option[] learnerOptions = this.learnersOption.getList();
+        Option[] dumpFileOptions = this.dumpFilesOption.getList();
+        Option[] predictionFileOptions = this.outputPredictionFilesOption.getList();
+        if (dumpFileOptions.length > 0 && dumpFileOptions.length != learnerOptions.length) {
+            throw new IllegalArgumentException("Expected one dump file per learner.");
+        }
+        if (predictionFileOptions.length > 0 && predictionFileOptions.length != learnerOptions.length) {
+            throw new IllegalArgumentException("Expected one prediction file per learner.");
+        }
+
+        // learners of this run share their rankings with each other only
+        SharedRanking.Scope sharedRankings = new SharedRanking.Scope();
+        LearnerRun[] runs = new LearnerRun[learnerOptions.length];
+        for (int i = 0; i < runs.length; i++) {
+            monitor.setCurrentActivity("Materializing learner " + (i + 1) + "...", -1.0);
+            Learner learner = (Learner) ((ClassOption) learnerOptions[i]).materializeObject(monitor, repository);
+            if (learner instanceof OptionHandler) {
+                ((OptionHandler) learner).prepareForUse(monitor, repository);
+            }
+            if (monitor.taskShouldAbort()) {
+                return null;
+            }
+            learner.setModelContext(stream.getHeader());
+            if (learner instanceof SharedRankingLearner) {
+                ((SharedRankingLearner) learner).setSharedRankingScope(sharedRankings);
+            }
+            runs[i] = new LearnerRun(learner,
+                    (LearningPerformanceEvaluator) evaluator.copy(),
+                    dumpFileOptions.length > 0 ? ((FileOption) dumpFileOptions[i]).getFile() : null,
+                    predictionFileOptions.length > 0 ? ((FileOption) predictionFileOptions[i]).getFile() : null);
+        }
+
+        monitor.setCurrentActivity("Evaluating learners...", -1.0);
+        try {
+            boolean completed = this.threadedOption.isSet()
+                    ? evaluateThreaded(monitor, stream, runs)
+                    : evaluateInTurn(monitor, stream, runs);
+            if (!completed) {
+                return null;
+            }
+        } finally {
+            sharedRankings.release();
+            for (LearnerRun run : runs) {
+                run.close();
+            }
+        }
+        LearningCurve[] learningCurves = new LearningCurve[runs.length];
+        for (int i = 0; i < runs.length; i++) {
+            learningCurves[i] = runs[i].learningCurve;
+        }
+        return learningCurves;
+    }
+
+    /**
+     * Gives every example to the learners in turn.
+     *
+     * @return false if the task was aborted
+     */
+    protected boolean evaluateInTurn(TaskMonitor monitor, ExampleStream stream, LearnerRun[] runs) {
+        int maxInstances = this.instanceLimitOption.getValue();
+        long instancesProcessed = 0;
+        long streamTime = 0;
+        while (stream.hasMoreInstances()
+                && ((maxInstances < 0) || (instancesProcessed < maxInstances))) {
+            long start = TimingUtils.getNanoCPUTimeOfCurrentThread();
+            Example example = stream.nextInstance();
+            boolean last = !stream.hasMoreInstances();
+            streamTime += TimingUtils.getNanoCPUTimeOfCurrentThread() - start;
+            for (int i = 0; i < runs.length; i++) {
+                runs[i].process(exampleFor(example, i, runs.length), streamTime, last);
+            }
+            instancesProcessed++;
+            if (instancesProcessed % INSTANCES_BETWEEN_MONITOR_UPDATES == 0) {
+                if (!updateMonitor(monitor, stream, instancesProcessed)) {
+                    return false;
+                }
+                if (monitor.resultPreviewRequested() && runs.length > 0) {
+                    monitor.setLatestResultPreview(runs[0].learningCurve.copy());
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gives every example to the learners through their queues, each learner
+     * running on its own thread.
+     *
+     * @return false if the task was aborted
+     */
+    protected boolean evaluateThreaded(TaskMonitor monitor, ExampleStream stream, LearnerRun[] runs) {
+        Thread[] threads = new Thread[runs.length];
+        for (int i = 0; i < runs.length; i++) {
+            final LearnerRun run = runs[i];
+            run.queue = new ArrayBlockingQueue<QueuedExample>(this.queueSizeOption.getValue());
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    run.processQueue();
+                }
+            }, "Prequential learner " + (i + 1));
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+
+        boolean completed = true;
+        try {
+            int maxInstances = this.instanceLimitOption.getValue();
+            long instancesProcessed = 0;
+            long streamTime = 0;
+            while (stream.hasMoreInstances()
+                    && ((maxInstances < 0) || (instancesProcessed < maxInstances))) {
+                long start = TimingUtils.getNanoCPUTimeOfCurrentThread();
+                Example example = stream.nextInstance();
+                boolean last = !stream.hasMoreInstances();
+                streamTime += TimingUtils.getNanoCPUTimeOfCurrentThread() - start;
+                QueuedExample queued = new QueuedExample(example, streamTime, last);
+                for (int i = 0; i < runs.length; i++) {
+                    Example runExample = exampleFor(example, i, runs.length);
+                    runs[i].queue.put(runExample == example ? queued
+                            : new QueuedExample(runExample, streamTime, last));
+                }
+                instancesProcessed++;
+                if (instancesProcessed % INSTANCES_BETWEEN_MONITOR_UPDATES == 0
+                        && !updateMonitor(monitor, stream, instancesProcessed)) {
+                    completed = false;
+                    break;
+                }
+            }
+            for (LearnerRun run : runs) {
+                if (!completed) {
+                    run.queue.clear();
+                }
+                run.queue.put(QueuedExample.END);
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+            throw new RuntimeException(e);
+        }
+        for (LearnerRun run : runs) {
+            if (run.failure != null) {
+                throw new RuntimeException("Learner failed: " + run.failure, run.failure);
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * Gets the example to give a learner, a copy if every learner gets its
+     * own. The last learner gets the example itself, as the copies of the
+     * others are made before it.
+     */
+    protected Example exampleFor(Example example, int learner, int numLearners) {
+        if (this.copyExamplesOption.isSet() && learner < numLearners - 1) {
+            return example.copy();
+        }
+        return example;
+    }
+
+    /**
+     * Reports progress, returns false if the task should abort.
+     */
+    protected boolean updateMonitor(TaskMonitor monitor, ExampleStream stream, long instancesProcessed) {
+        if (monitor.taskShouldAbort()) {
+            return false;
+        }
+        int maxInstances = this.instanceLimitOption.getValue();
+        long estimatedRemainingInstances = stream.estimatedRemainingInstances();
+        if (maxInstances > 0) {
+            long maxRemaining = maxInstances - instancesProcessed;
+            if ((estimatedRemainingInstances < 0)
+                    || (maxRemaining < estimatedRemainingInstances)) {
+                estimatedRemainingInstances = maxRemaining;
+            }
+        }
+        monitor.setCurrentActivityFractionComplete(estimatedRemainingInstances < 0 ? -1.0
+                : (double) instancesProcessed
+                / (double) (instancesProcessed + estimatedRemainingInstances));
+        return true;
+    }
+
+    /**
+     * An example on the queue of a learner, with the time spent generating
+     * the stream up to it.
+     */
+    protected static class QueuedExample {
+
+        /** marks the end of the stream */
+        protected static final QueuedExample END = new QueuedExample(null, 0, true);
+
+        protected final Example example;
+
+        protected final long streamTime;
+
+        protected final boolean last;
+
+        protected QueuedExample(Example example, long streamTime, boolean last) {
+            this.example = example;
+            this.streamTime = streamTime;
+            this.last = last;
+        }
+    }
+
+    /**
+     * The prequential evaluation of one learner.
+     */
+    protected class LearnerRun {
+
+        protected final Learner learner;
+
+        protected final LearningPerformanceEvaluator evaluator;
+
+        protected final LearningCurve learningCurve = new LearningCurve(
+                "learning evaluation instances");
+
+        protected final boolean preciseCPUTiming = TimingUtils.enablePreciseTiming();
+
+        protected PrintStream immediateResultStream;
+
+        protected PrintStream outputPredictionResultStream;
+
+        protected boolean firstDump = true;
+
+        protected long instancesProcessed = 0;
+
+        // time spent in the learner and the evaluator, and at the last sample including the stream
+        protected long learnerTime = 0;
+
+        protected long lastEvaluateTime = 0;
+
+        protected double RAMHours = 0.0;
+
+        protected final ModelByteSizeTracker byteSizeTracker = new ModelByteSizeTracker(
+                estimateMemoryOption.isSet(), exactMemoryFrequencyOption.getValue());
+
+        protected BlockingQueue<QueuedExample> queue;
+
+        protected volatile Throwable failure;
+
+        protected LearnerRun(Learner learner, LearningPerformanceEvaluator evaluator,
+                File dumpFile, File outputPredictionFile) {
+            this.learner = learner;
+            this.evaluator = evaluator;
+            if (estimateMemoryOption.isSet() && learner instanceof AbstractClassifier) {
+                ((AbstractClassifier) learner).setByteSizeTracker(this.byteSizeTracker);
+            }
+            this.immediateResultStream = openStream(dumpFile, "immediate result");
+            this.outputPredictionResultStream = openStream(outputPredictionFile, "prediction result");
+        }
+
+        /**
+         * Tests then trains on an example and samples the learning performance when due.
+         *
+         * @param example the example
+         * @param streamTime the time spent generating the stream up to this example
+         * @param last whether the stream has no more examples
+         */
+        protected void process(Example example, long streamTime, boolean last) {
+            long start = TimingUtils.getNanoCPUTimeOfCurrentThread();
+            double[] prediction = this.learner.getVotesForInstance(example);
+            // Output prediction
+            if (this.outputPredictionResultStream != null) {
+                Instance inst = (Instance) example.getData();
+                this.outputPredictionResultStream.println(Utils.maxIndex(prediction) + "," + (
+                        inst.classIsMissing() == true ? " ? " : (int) inst.classValue()));
+            }
+            this.evaluator.addResult(example, prediction);
+            this.learner.trainOnInstance(example);
+            this.instancesProcessed++;
+            if (this.instancesProcessed % sampleFrequencyOption.getValue() == 0 || last) {
+                long evaluateTime = this.learnerTime + TimingUtils.getNanoCPUTimeOfCurrentThread() - start + streamTime;
+                double time = TimingUtils.nanoTimeToSeconds(evaluateTime);
+                double timeIncrement = TimingUtils.nanoTimeToSeconds(evaluateTime - this.lastEvaluateTime);
+                double RAMHoursIncrement = this.byteSizeTracker.byteSize(this.learner) / (1024.0 * 1024.0 * 1024.0); //GBs
+                RAMHoursIncrement *= (timeIncrement / 3600.0); //Hours
+                this.RAMHours += RAMHoursIncrement;
+                this.lastEvaluateTime = evaluateTime;
+                this.learningCurve.insertEntry(new LearningEvaluation(
+                        new Measurement[]{
+                            new Measurement(
+                            "learning evaluation instances",
+                            this.instancesProcessed),
+                            new Measurement(
+                            "evaluation time ("
+                            + (this.preciseCPUTiming ? "cpu "
+                            : "") + "seconds)",
+                            time),
+                            new Measurement(
+                            "model cost (RAM-Hours)",
+                            this.RAMHours)
+                        },
+                        this.evaluator, this.learner));
+
+                if (this.immediateResultStream != null) {
+                    if (this.firstDump) {
+                        this.immediateResultStream.println(this.learningCurve.headerToString());
+                        this.firstDump = false;
+                    }
+                    this.immediateResultStream.println(this.learningCurve.entryToString(this.learningCurve.numEntries() - 1));
+                    this.immediateResultStream.flush();
+                }
+            }
+            this.learnerTime += TimingUtils.getNanoCPUTimeOfCurrentThread() - start;
+        }
+
+        /**
+         * Processes the examples on the queue until the end of the stream.
+         * After a failure the remaining examples are only taken off the
+         * queue, so the stream is never blocked.
+         */
+        protected void processQueue() {
+            try {
+                while (true) {
+                    QueuedExample queued = this.queue.take();
+                    if (queued == QueuedExample.END) {
+                        return;
+                    }
+                    if (this.failure == null) {
+                        try {
+                            process(queued.example, queued.streamTime, queued.last);
+                        } catch (Throwable t) {
+                            this.failure = t;
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        protected void close() {
+            if (this.immediateResultStream != null) {
+                this.immediateResultStream.close();
+            }
+            if (this.outputPredictionResultStream != null) {
+                this.outputPredictionResultStream.close();
+            }
+        }
+    }
+
+    /**
+     * Opens a file to append to, or returns null if there is no file.
+     */
+    protected static PrintStream openStream(File file, String description) {
+        if (file == null) {
+            return null;
+        }
+        try {
+            return new PrintStream(new FileOutputStream(file, file.exists()), true);
+        } catch (Exception ex) {
+            throw new RuntimeException(
+                    "Unable to open " + description + " file: " + file, ex);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.yahoo.labs.samoa.instances;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ArffLoaderTest {
+
+	private static final String ARFF = "% comment\n"
+			+ "@relation test\n"
+			+ "@attribute a numeric\n"
+			+ "@attribute b {x,'y z',q}\n"
+			+ "@attribute class {p,n}\n"
+			+ "@data\n"
+			+ "% comment\n"
+			+ "1.5,x,p\n"
+			+ "\n"
+			+ "  -2e3 , \"y z\" , n % comment\r\n"
+			+ "?,?,p\r\n"
+			+ "{0 2.5,1 q}\n"
+			+ "3,q,n";
+
+	@Test
+	public void testReadInstances() {
+		ArffLoader loader = new ArffLoader(new StringReader(ARFF), 0, -1);
+		assertEquals(3, loader.getStructure().numAttributes());
+		assertEquals(2, loader.getStructure().classIndex());
+		assertValues(loader.readInstance(), 1.5, 0, 0);
+		assertValues(loader.readInstance(), -2000, 1, 1);
+		assertValues(loader.readInstance(), Double.NaN, Double.NaN, 0);
+		Instance sparse = loader.readInstance();
+		assertTrue(sparse instanceof SparseInstance);
+		assertEquals(2.5, sparse.valueSparse(0), 0);
+		assertEquals(2, sparse.valueSparse(1), 0);
+		assertValues(loader.readInstance(), 3, 2, 1);
+		assertNull(loader.readInstance());
+	}
+
+	@Test
+	public void testParseThreads() {
+		StringBuilder arff = new StringBuilder("@relation test\n@attribute a numeric\n@attribute class {p,n}\n@data\n");
+		Random random = new Random(1);
+		for (int i = 0; i < 100000; i++) {
+			arff.append(random.nextGaussian()).append(',').append(random.nextBoolean() ? 'p' : 'n').append('\n');
+		}
+		ArffLoader sequential = new ArffLoader(new StringReader(arff.toString()), 0, -1);
+		ArffLoader parallel = new ArffLoader(new StringReader(arff.toString()), 0, -1);
+		// the first instances are read before the parsing threads start
+		Instance inst = sequential.readInstance();
+		assertValues(parallel.readInstance(), inst.value(0), inst.value(1));
+		parallel.setParseThreads(3);
+		while ((inst = sequential.readInstance()) != null) {
+			assertValues(parallel.readInstance(), inst.value(0), inst.value(1));
+		}
+		assertNull(parallel.readInstance());
+		parallel.close();
+	}
+
+	@Test
+	public void testParseThreadsStopWhenIdle() throws Exception {
+		StringBuilder arff = new StringBuilder("@relation test\n@attribute a numeric\n@attribute class {p,n}\n@data\n");
+		Random random = new Random(1);
+		for (int i = 0; i < 100000; i++) {
+			arff.append(random.nextGaussian()).append(',').append(random.nextBoolean() ? 'p' : 'n').append('\n');
+		}
+		ArffLoader sequential = new ArffLoader(new StringReader(arff.toString()), 0, -1);
+		ArffLoader parallel = new ArffLoader(new StringReader(arff.toString()), 0, -1);
+		parallel.idleTimeoutMillis = 50;
+		parallel.setParseThreads(2);
+		Instance inst;
+		for (int i = 0; i < 1000; i++) {
+			inst = sequential.readInstance();
+			assertValues(parallel.readInstance(), inst.value(0), inst.value(1));
+		}
+		// the threads stop while nothing is read, and start again when reading goes on
+		parallel.readerThread.join(10000);
+		assertFalse(parallel.readerThread.isAlive());
+		assertTrue(parallel.parseExecutor.awaitTermination(10, TimeUnit.SECONDS));
+		while ((inst = sequential.readInstance()) != null) {
+			assertValues(parallel.readInstance(), inst.value(0), inst.value(1));
+		}
+		assertNull(parallel.readInstance());
+	}
+
+	@Test
+	public void testParseDouble() {
+		String[] numbers = {"0", "-0", "+1", "1.", ".5", "0.001", "1e5", "1E-5", "-2.5e+3",
+				"123456789012345", "1234567890123456789", "0.1", "0.30000000000000004",
+				"1e-300", "4.9e-324", "1.7976931348623157e308", "1e400", "1.0d", "NaN", "-Infinity"};
+		for (String number : numbers) {
+			assertEquals(number, Double.parseDouble(number),
+					ArffDataParser.parseDouble(number.toCharArray(), 0, number.length()), 0);
+		}
+		Random random = new Random(1);
+		for (int i = 0; i < 100000; i++) {
+			String number = Double.toString(random.nextGaussian() * Math.pow(10, random.nextInt(40) - 20));
+			assertEquals(number, Double.doubleToLongBits(Double.parseDouble(number)),
+					Double.doubleToLongBits(ArffDataParser.parseDouble(number.toCharArray(), 0, number.length())));
+			number = String.format(Locale.US, "%." + random.nextInt(10) + "f", random.nextDouble() * 1000);
+			assertEquals(number, Double.doubleToLongBits(Double.parseDouble(number)),
+					Double.doubleToLongBits(ArffDataParser.parseDouble(number.toCharArray(), 0, number.length())));
+		}
+	}
+
+	private static void assertValues(Instance inst, double... values) {
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(values[i], inst.value(i), 0);
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package moa.classifiers;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.classifiers.bayes.NaiveBayes;
+import moa.classifiers.functions.AdaGrad;
+import moa.classifiers.functions.Perceptron;
+import moa.classifiers.functions.SGD;
+import moa.streams.generators.WaveformGenerator;
+
+public class BlockTrainingTest {
+
+	@Test
+	public void testBlocksMatchInstances() {
+		WaveformGenerator stream = new WaveformGenerator();
+		stream.prepareForUse();
+		Instance[] insts = new Instance[3000];
+		for (int i = 0; i < insts.length; i++) {
+			insts[i] = stream.nextInstance().getData();
+		}
+		BlockClassifier[] blocks = new BlockClassifier[] {new NaiveBayes(), new SGD(), new AdaGrad(), new Perceptron()};
+		Classifier[] single = new Classifier[] {new NaiveBayes(), new SGD(), new AdaGrad(), new Perceptron()};
+		for (int l = 0; l < blocks.length; l++) {
+			blocks[l].prepareForUse();
+			blocks[l].setModelContext(stream.getHeader());
+			single[l].prepareForUse();
+			single[l].setModelContext(stream.getHeader());
+		}
+		// blocks of varying size, each predicted with the same model and then trained on
+		int from = 0;
+		for (int size = 1; from < insts.length; size = size % 50 + 7) {
+			int to = Math.min(insts.length, from + size);
+			for (int l = 0; l < blocks.length; l++) {
+				double[][] votes = blocks[l].getVotesForInstances(insts, from, to);
+				for (int i = from; i < to; i++) {
+					assertArrayEquals(single[l].getVotesForInstance(insts[i]), votes[i - from], 0);
+				}
+				blocks[l].trainOnInstances(insts, from, to);
+				for (int i = from; i < to; i++) {
+					single[l].trainOnInstance(insts[i]);
+				}
+			}
+			from = to;
+		}
+	}
+}
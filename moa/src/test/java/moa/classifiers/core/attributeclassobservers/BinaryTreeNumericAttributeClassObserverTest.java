@@ -0,0 +1,64 @@
+package moa.classifiers.core.attributeclassobservers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import moa.classifiers.core.AttributeSplitSuggestion;
+import moa.classifiers.core.splitcriteria.InfoGainSplitCriterion;
+import moa.classifiers.core.splitcriteria.SplitCriterion;
+
+public class BinaryTreeNumericAttributeClassObserverTest {
+
+	@Test
+	public void testBestSplit() {
+		BinaryTreeNumericAttributeClassObserver observer = new BinaryTreeNumericAttributeClassObserver();
+		observer.prepareForUse();
+		BinaryTreeNumericAttributeClassObserver balanced = new BinaryTreeNumericAttributeClassObserver();
+		balanced.balancedOption.set();
+		balanced.prepareForUse();
+		TreeMap<Double, double[]> counts = new TreeMap<Double, double[]>();
+		double[] preSplitDist = new double[3];
+		Random random = new Random(1);
+		for (int i = 0; i < 5000; i++) {
+			// increasing values with repeats, as values arriving in order
+			double value = Math.floor(i / 3) + (random.nextInt(10) == 0 ? Double.NaN : 0);
+			int label = random.nextInt(3);
+			double weight = 1 + random.nextInt(3);
+			observer.observeAttributeClass(value, label, weight);
+			balanced.observeAttributeClass(value, label, weight);
+			if (!Double.isNaN(value)) {
+				if (!counts.containsKey(value)) {
+					counts.put(value, new double[3]);
+				}
+				counts.get(value)[label] += weight;
+				preSplitDist[label] += weight;
+			}
+		}
+		SplitCriterion criterion = new InfoGainSplitCriterion();
+		double bestMerit = Double.NEGATIVE_INFINITY;
+		double[] left = new double[3];
+		for (double[] valueCounts : counts.values()) {
+			double[] right = new double[3];
+			for (int i = 0; i < 3; i++) {
+				left[i] += valueCounts[i];
+				right[i] = preSplitDist[i] - left[i];
+			}
+			bestMerit = Math.max(bestMerit, criterion.getMeritOfSplit(preSplitDist, new double[][]{left, right}));
+		}
+		AttributeSplitSuggestion suggestion = observer.getBestEvaluatedSplitSuggestion(criterion, preSplitDist, 0, true);
+		AttributeSplitSuggestion balancedSuggestion = balanced.getBestEvaluatedSplitSuggestion(criterion, preSplitDist, 0, true);
+		assertEquals(bestMerit, suggestion.merit, 1e-12);
+		assertEquals(bestMerit, balancedSuggestion.merit, 1e-12);
+
+		BinaryTreeNumericAttributeClassObserver.Node root = balanced.getRoot();
+		double totalWeight = 0;
+		for (double weight : preSplitDist) {
+			totalWeight += weight;
+		}
+		assertEquals(totalWeight, root.classCountsLeft.sumOfValues() + root.classCountsRight.sumOfValues(), 0);
+	}
+}
@@ -0,0 +1,64 @@
+package moa.classifiers.iss.ranking;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.InstancesHeader;
+
+import moa.streams.generators.RandomTreeGenerator;
+
+public class BackgroundRankingTest {
+
+	@Test
+	public void testFixedLagMatchesSynchronous() {
+		RandomTreeGenerator stream = new RandomTreeGenerator();
+		stream.prepareForUse();
+		InstancesHeader header = stream.getHeader();
+		int numFeatures = header.numAttributes() - 1;
+		int lag = 3;
+
+		RankingFunction synchronous = new InfoGainRanking();
+		synchronous.initialise(numFeatures, header.classIndex());
+		BackgroundRanking background = new BackgroundRanking(new InfoGainRanking(), lag);
+		background.initialise(numFeatures, header.classIndex());
+
+		int[] ranking = new int[numFeatures];
+		int[] expected = null;
+		int polls = 0;
+		ArrayDeque<Instance> window = new ArrayDeque<Instance>();
+		for (int i = 0; i < 3000; i++) {
+			Instance inst = stream.nextInstance().getData();
+			if (window.size() == 200) {
+				Instance old = window.removeFirst();
+				synchronous.removeInstance(old);
+				background.removeInstance(old);
+			}
+			window.addLast(inst);
+			synchronous.addInstance(inst);
+			background.addInstance(inst);
+
+			if (i % 100 == 99) {
+				expected = synchronous.rankFeatures(header, ranking);
+				background.submit(header, ranking);
+				polls = 0;
+			}
+			int[] ranked = background.poll();
+			if (expected != null && polls++ == lag) {
+				assertArrayEquals(expected, ranked);
+				ranking = ranked;
+			} else {
+				assertNull(ranked);
+			}
+		}
+		// the background thread stops by itself when idle, without a shutdown
+		assertTrue(((ThreadPoolExecutor) background.executor).allowsCoreThreadTimeOut());
+		background.shutdown();
+	}
+}
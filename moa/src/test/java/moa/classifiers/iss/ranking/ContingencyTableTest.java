@@ -0,0 +1,136 @@
+package moa.classifiers.iss.ranking;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ContingencyTableTest {
+	private static double EPS = 1e-9;
+
+	/** entropy of the class given the attribute, computed from the counts */
+	private static double conditionalEntropy(ContingencyTable table, int a) {
+		double entropy = 0;
+		if (table.instCount(a) == 0)
+			return 0;
+		for (int v = 0; v < table.numValues(a); v++) {
+			for (int c = 0; c < table.numClasses(); c++) {
+				entropy += ((double) table.valueCount(a, v) / table.instCount(a))
+						* RankingUtils.computeEntropyNominal(table.count(a, v, c), table.valueCount(a, v));
+			}
+		}
+		return entropy;
+	}
+
+	private static double classEntropy(ContingencyTable table, int a) {
+		double entropy = 0;
+		for (int c = 0; c < table.numClasses(); c++) {
+			entropy += RankingUtils.computeEntropyNominal(table.classCount(a, c), table.instCount(a));
+		}
+		return entropy;
+	}
+
+	private static double valueEntropy(ContingencyTable table, int a) {
+		double entropy = 0;
+		for (int v = 0; v < table.numValues(a); v++) {
+			entropy += RankingUtils.computeEntropyNominal(table.valueCount(a, v), table.instCount(a));
+		}
+		return entropy;
+	}
+
+	@Test
+	public void testRunningEntropies() {
+		Random random = new Random(7);
+		int[] maxValues = new int[] {3, 0, 7, 2};
+		ContingencyTable table = new ContingencyTable(maxValues, 4);
+		List<int[]> window = new ArrayList<int[]>();
+		for (int i = 0; i < 20000; i++) {
+			if (window.size() > 500 || (window.size() > 0 && random.nextInt(3) == 0)) {
+				int[] old = window.remove(random.nextInt(window.size()));
+				for (int a = 0; a < maxValues.length; a++) {
+					if (maxValues[a] > 0)
+						table.add(a, old[a], old[maxValues.length], -1);
+				}
+			} else {
+				int[] inst = new int[maxValues.length + 1];
+				inst[maxValues.length] = random.nextInt(4);
+				for (int a = 0; a < maxValues.length; a++) {
+					if (maxValues[a] > 0) {
+						inst[a] = random.nextInt(maxValues[a]);
+						table.add(a, inst[a], inst[maxValues.length], 1);
+					}
+				}
+				window.add(inst);
+			}
+			for (int a = 0; a < maxValues.length; a++) {
+				assertEquals(classEntropy(table, a), table.classEntropy(a), EPS);
+				assertEquals(conditionalEntropy(table, a), table.conditionalEntropy(a), EPS);
+				assertEquals(valueEntropy(table, a), table.valueEntropy(a), EPS);
+			}
+		}
+	}
+
+	@Test
+	public void testSetCounts() {
+		ContingencyTable table = new ContingencyTable(new int[] {4}, 2);
+		for (int i = 0; i < 10; i++)
+			table.addToClassCount(0, i % 2, 1);
+		table.resetValues(0, 3);
+		table.setCount(0, 0, 0, 4);
+		table.setCount(0, 1, 1, 3);
+		table.setCount(0, 2, 0, 1);
+		table.setCount(0, 2, 1, 1);
+		assertEquals(9, table.valueCount(0, 0) + table.valueCount(0, 1) + table.valueCount(0, 2));
+		assertEquals(conditionalEntropy(table, 0), table.conditionalEntropy(0), EPS);
+		assertEquals(valueEntropy(table, 0), table.valueEntropy(0), EPS);
+		assertEquals(1.0, table.classEntropy(0), EPS);
+	}
+
+	@Test
+	public void testSparseInstancesMatchDense() {
+		Random random = new Random(11);
+		int[] maxValues = new int[] {3, 0, 5};
+		ContingencyTable dense = new ContingencyTable(maxValues, 3);
+		ContingencyTable sparse = new ContingencyTable(maxValues, 3);
+		List<int[]> window = new ArrayList<int[]>();
+		for (int i = 0; i < 5000; i++) {
+			boolean add = window.size() < 200 && (window.isEmpty() || random.nextInt(3) != 0);
+			int[] inst;
+			if (add) {
+				inst = new int[maxValues.length + 1];
+				inst[maxValues.length] = random.nextInt(3);
+				for (int a = 0; a < maxValues.length; a++) {
+					if (maxValues[a] > 0 && random.nextInt(4) == 0)
+						inst[a] = 1 + random.nextInt(maxValues[a] - 1);
+				}
+				window.add(inst);
+			} else {
+				inst = window.remove(random.nextInt(window.size()));
+			}
+			int delta = add ? 1 : -1;
+			int c = inst[maxValues.length];
+			sparse.addSparseInstance(c, delta);
+			for (int a = 0; a < maxValues.length; a++) {
+				if (maxValues[a] == 0)
+					continue;
+				dense.add(a, inst[a], c, delta);
+				// only the non zero values are stored
+				if (inst[a] != 0) {
+					sparse.addStored(a, c, delta);
+					sparse.add(a, inst[a], c, delta);
+				}
+			}
+			for (int a = 0; a < maxValues.length; a++) {
+				assertEquals(dense.instCount(a), sparse.instCount(a));
+				if (maxValues[a] > 0)
+					assertEquals(dense.count(a, 0, c), sparse.count(a, 0, c));
+				assertEquals(dense.classEntropy(a), sparse.classEntropy(a), EPS);
+				assertEquals(dense.conditionalEntropy(a), sparse.conditionalEntropy(a), EPS);
+				assertEquals(dense.valueEntropy(a), sparse.valueEntropy(a), EPS);
+			}
+		}
+	}
+}
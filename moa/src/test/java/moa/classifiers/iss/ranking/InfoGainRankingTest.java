@@ -0,0 +1,114 @@
+package moa.classifiers.iss.ranking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Attribute;
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+import com.yahoo.labs.samoa.instances.SparseInstance;
+
+public class InfoGainRankingTest {
+	private static int NUM_NUMERIC = 3;
+
+	private static Instances header() {
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		for (int a = 0; a < NUM_NUMERIC; a++)
+			attributes.add(new Attribute("num" + a));
+		attributes.add(new Attribute("nom", Arrays.asList("x", "y", "z")));
+		attributes.add(new Attribute("class", Arrays.asList("a", "b")));
+		Instances header = new Instances("sparse", attributes, 0);
+		header.setClassIndex(attributes.size() - 1);
+		return header;
+	}
+
+	/** values are mostly zero, the non zero ones depend on the class */
+	private static double[] randomValues(Random random) {
+		double[] values = new double[NUM_NUMERIC + 2];
+		int c = random.nextInt(2);
+		for (int a = 0; a < NUM_NUMERIC; a++) {
+			if (random.nextInt(3) == 0)
+				values[a] = c + random.nextGaussian() * (a + 1);
+		}
+		values[NUM_NUMERIC] = random.nextInt(4) == 0 ? 1 + (c + random.nextInt(2)) % 2 : 0;
+		values[NUM_NUMERIC + 1] = c;
+		return values;
+	}
+
+	private static Instance sparseCopy(double[] values, Instances header) {
+		int numStored = 0;
+		for (int a = 0; a < values.length; a++) {
+			if (values[a] != 0)
+				numStored++;
+		}
+		double[] stored = new double[numStored];
+		int[] indices = new int[numStored];
+		int i = 0;
+		for (int a = 0; a < values.length; a++) {
+			if (values[a] != 0) {
+				stored[i] = values[a];
+				indices[i++] = a;
+			}
+		}
+		Instance inst = new SparseInstance(1.0, stored, indices, values.length);
+		inst.setDataset(header);
+		return inst;
+	}
+
+	/**
+	 * The PiD of a numeric attribute only sees the stored values of sparse instances, so its bins can differ
+	 * from the dense run and so can the info gain. The counts of nominal attributes and of the classes match.
+	 */
+	@Test
+	public void testSparseAgainstDense() {
+		Instances header = header();
+		Random random = new Random(5);
+		InfoGainRanking dense = new InfoGainRanking();
+		InfoGainRanking sparse = new InfoGainRanking();
+		dense.initialise(2, header.classIndex());
+		sparse.initialise(2, header.classIndex());
+		ArrayDeque<Instance[]> window = new ArrayDeque<Instance[]>();
+		boolean layoutsDiverged = false;
+		boolean gainsDiffer = false;
+		for (int i = 0; i < 5000; i++) {
+			if (window.size() == 500) {
+				Instance[] old = window.removeFirst();
+				dense.removeInstance(old[0]);
+				sparse.removeInstance(old[1]);
+			}
+			double[] values = randomValues(random);
+			Instance denseInst = new DenseInstance(1.0, values);
+			denseInst.setDataset(header);
+			Instance[] pair = new Instance[] {denseInst, sparseCopy(values, header)};
+			dense.addInstance(pair[0]);
+			sparse.addInstance(pair[1]);
+			window.addLast(pair);
+
+			if (i % 100 != 99)
+				continue;
+			for (int a = 0; a < NUM_NUMERIC; a++) {
+				double denseGain = dense.computeInfoGain(a, header);
+				double sparseGain = sparse.computeInfoGain(a, header);
+				assertEquals(dense.table.instCount(a), sparse.table.instCount(a));
+				assertEquals(dense.table.classEntropy(a), sparse.table.classEntropy(a), 1e-9);
+				if (!dense.piDs[a].toString().equals(sparse.piDs[a].toString()))
+					layoutsDiverged = true;
+				if (Math.abs(denseGain - sparseGain) > 1e-9)
+					gainsDiffer = true;
+			}
+			assertEquals(dense.computeInfoGain(NUM_NUMERIC, header), sparse.computeInfoGain(NUM_NUMERIC, header), 1e-9);
+		}
+		// the data has to make the bins diverge for the numeric attributes to be tested at all
+		assertTrue(layoutsDiverged);
+		assertTrue(gainsDiffer);
+	}
+}
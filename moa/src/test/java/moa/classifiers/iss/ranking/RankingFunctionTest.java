@@ -0,0 +1,102 @@
+package moa.classifiers.iss.ranking;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+public class RankingFunctionTest {
+
+	/** ranking function that only exposes the selection of the top features */
+	private static class SelectionOnly extends RankingFunction {
+		@Override
+		public int[] rankFeatures(Instances window, int[] previousBestFeatures) {
+			return previousBestFeatures;
+		}
+
+		@Override
+		public void addInstance(Instance inst) {
+		}
+
+		@Override
+		public void removeInstance(Instance inst) {
+		}
+	}
+
+	/** the selection by repeated scans the heap based one replaced */
+	private static int[] scanSortFeatureArrayDesc(double[] scores, int numFeatures, int classIndex) {
+		int[] returnArray = new int[numFeatures];
+		for (int i = 0; i < numFeatures; ++i) {
+			returnArray[i] = -1;
+		}
+		for (int i = 0; i < numFeatures; i++) {
+			double largest = Double.NEGATIVE_INFINITY;
+			int largestIndex = -1;
+			for (int z = 0; z < scores.length; z++) {
+				if (z != classIndex) {
+					if (scores[z] > largest && !contains(returnArray, z)) {
+						largest = scores[z];
+						largestIndex = z;
+					}
+				}
+			}
+			returnArray[i] = largestIndex;
+		}
+		return returnArray;
+	}
+
+	private static boolean contains(int[] array, int index) {
+		for (int i = 0; i < array.length; i++) {
+			if (array[i] == index)
+				return true;
+		}
+		return false;
+	}
+
+	private static double randomScore(Random random, boolean fewDistinct) {
+		switch (random.nextInt(20)) {
+		case 0:
+			return Double.NaN;
+		case 1:
+			return Double.NEGATIVE_INFINITY;
+		case 2:
+			return Double.POSITIVE_INFINITY;
+		default:
+			// few distinct values give many ties
+			return fewDistinct ? random.nextInt(5) - 2 : random.nextGaussian();
+		}
+	}
+
+	@Test
+	public void testSameSelectionAsScan() {
+		Random random = new Random(1);
+		for (int run = 0; run < 5000; run++) {
+			int length = random.nextInt(60);
+			boolean fewDistinct = random.nextBoolean();
+			double[] scores = new double[length];
+			for (int i = 0; i < length; i++) {
+				scores[i] = randomScore(random, fewDistinct);
+			}
+			int classIndex = (length == 0 || random.nextInt(4) == 0) ? -1 : random.nextInt(length);
+			int numFeatures = random.nextInt(length + 3);
+
+			SelectionOnly ranking = new SelectionOnly();
+			ranking.initialise(numFeatures, classIndex);
+			assertArrayEquals("run " + run,
+					scanSortFeatureArrayDesc(scores, numFeatures, classIndex),
+					ranking.sortFeatureArrayDesc(scores, numFeatures));
+		}
+	}
+
+	@Test
+	public void testAllFeaturesTied() {
+		double[] scores = new double[] {0.5, 0.5, 0.5, 0.5, 0.5};
+		SelectionOnly ranking = new SelectionOnly();
+		ranking.initialise(3, 1);
+		assertArrayEquals(new int[] {0, 2, 3}, ranking.sortFeatureArrayDesc(scores, 3));
+	}
+}
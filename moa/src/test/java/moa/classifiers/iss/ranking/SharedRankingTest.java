@@ -0,0 +1,165 @@
+package moa.classifiers.iss.ranking;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+import moa.classifiers.AbstractClassifier;
+import moa.classifiers.iss.NaiveBayesISS;
+import moa.classifiers.iss.kNNISS;
+import moa.streams.generators.RandomTreeGenerator;
+
+public class SharedRankingTest {
+
+	/** ranking function that keeps the instances it was given, in order */
+	private static class RecordingRanking extends RankingFunction {
+		private static final long serialVersionUID = 1L;
+
+		ArrayDeque<Instance> window = new ArrayDeque<Instance>();
+
+		@Override
+		public int[] rankFeatures(Instances window, int[] previousBestFeatures) {
+			return previousBestFeatures;
+		}
+
+		@Override
+		public void addInstance(Instance inst) {
+			window.addLast(inst);
+		}
+
+		@Override
+		public void removeInstance(Instance inst) {
+			assertSame(window.removeFirst(), inst);
+		}
+	}
+
+	private static NaiveBayesISS naiveBayesISS(String key, int featureLimit, int windowSize) {
+		NaiveBayesISS learner = new NaiveBayesISS();
+		learner.rankingOption.setChosenIndex(1);
+		learner.rankingWindowSizeOption.setValue(windowSize);
+		learner.reselectionIntervalOption.setValue(100);
+		learner.featureLimitOption.setValue(featureLimit);
+		learner.sharedRankingKeyOption.setValue(key);
+		return learner;
+	}
+
+	private static kNNISS kNNISS(String key, int featureLimit) {
+		kNNISS learner = new kNNISS();
+		learner.rankingOption.setChosenIndex(1);
+		learner.windowSizeOption.setValue(300);
+		learner.reselectionIntervalOption.setValue(100);
+		learner.featureLimitOption.setValue(featureLimit);
+		learner.sharedRankingKeyOption.setValue(key);
+		return learner;
+	}
+
+	@Test
+	public void testSharedMatchesOwnRanking() {
+		RandomTreeGenerator stream = new RandomTreeGenerator();
+		stream.prepareForUse();
+		SharedRanking.Scope scope = new SharedRanking.Scope();
+		// learners sharing a ranking next to the same learners on their own, with different feature limits,
+		// the last one with a different window size
+		AbstractClassifier[] own = new AbstractClassifier[] {naiveBayesISS("", -1, 300), naiveBayesISS("", 5, 300),
+				kNNISS("", 4), naiveBayesISS("", 5, 200)};
+		AbstractClassifier[] shared = new AbstractClassifier[] {naiveBayesISS("tree", -1, 300), naiveBayesISS("tree", 5, 300),
+				kNNISS("tree", 4), naiveBayesISS("tree", 5, 200)};
+		for (int l = 0; l < own.length; l++) {
+			own[l].prepareForUse();
+			own[l].setModelContext(stream.getHeader());
+			shared[l].prepareForUse();
+			shared[l].setModelContext(stream.getHeader());
+			((SharedRankingLearner) shared[l]).setSharedRankingScope(scope);
+		}
+		for (int i = 0; i < 2000; i++) {
+			Instance inst = stream.nextInstance().getData();
+			// each learner tests then trains in turn, so the later ones subscribe after the first has trained
+			for (int l = 0; l < own.length; l++) {
+				assertArrayEquals(own[l].getVotesForInstance(inst), shared[l].getVotesForInstance(inst), 0);
+				own[l].trainOnInstance(inst);
+				shared[l].trainOnInstance(inst);
+			}
+		}
+		// both NaiveBayesISS and the kNNISS rank by information gain over a window of 300 and share one ranking,
+		// the NaiveBayesISS with a window of 200 has its own
+		assertEquals(2, scope.numShared());
+		assertEquals(3, scope.shared.get("tree|300|" + InfoGainRanking.class.getName()).subscribers.size());
+		assertEquals(1, scope.shared.get("tree|200|" + InfoGainRanking.class.getName()).subscribers.size());
+		for (int l = 0; l < own.length; l++) {
+			shared[l].resetLearning();
+		}
+		assertEquals(0, scope.numShared());
+	}
+
+	@Test
+	public void testLagBound() {
+		int windowSize = 100;
+		int maxLag = 30;
+		Instance[] stream = new Instance[5000];
+		for (int i = 0; i < stream.length; i++) {
+			stream[i] = new DenseInstance(1.0, new double[] {i});
+		}
+		SharedRanking.Scope scope = new SharedRanking.Scope();
+		RecordingRanking recording = new RecordingRanking();
+		recording.initialise(1, -1);
+		SharedRanking.Subscription[] subscribers = new SharedRanking.Subscription[3];
+		for (int s = 0; s < subscribers.length; s++) {
+			subscribers[s] = scope.subscribe("stream", windowSize, s == 0 ? recording : new RecordingRanking());
+		}
+		SharedRanking shared = subscribers[0].sharedRanking;
+		// learners on their own threads, interleaved at random, none falling more than maxLag behind the stream
+		Random random = new Random(3);
+		int finished = 0;
+		while (finished < subscribers.length) {
+			SharedRanking.Subscription subscriber = subscribers[random.nextInt(subscribers.length)];
+			long first = Long.MAX_VALUE;
+			long furthest = 0;
+			for (SharedRanking.Subscription other : subscribers) {
+				first = Math.min(first, other.position);
+				furthest = Math.max(furthest, other.position);
+			}
+			if (random.nextInt(10) == 0) {
+				subscriber.rankFeatures(null, null);
+				long end = shared.received - shared.queue.size();
+				// the window holds the instances up to the subscriber and at most up to the one furthest ahead
+				assertTrue(end >= subscriber.position);
+				assertTrue(end <= furthest);
+				assertTrue(end - subscriber.position <= maxLag);
+				assertEquals(Math.min(end, windowSize), recording.window.size());
+				Iterator<Instance> window = recording.window.iterator();
+				for (long i = Math.max(0, end - windowSize); i < end; i++) {
+					assertSame(stream[(int) i], window.next());
+				}
+			} else if (subscriber.position < stream.length && subscriber.position - first < maxLag) {
+				subscriber.addInstance(stream[(int) subscriber.position]);
+				if (subscriber.position == stream.length) {
+					finished++;
+				}
+			}
+		}
+		assertEquals(stream.length, shared.received);
+	}
+
+	@Test
+	public void testReleasedScope() {
+		SharedRanking.Scope scope = new SharedRanking.Scope();
+		scope.release();
+		try {
+			scope.subscribe("tree", 300, new InfoGainRanking());
+			fail("Subscribed to a released scope.");
+		} catch (IllegalStateException e) {
+		}
+	}
+}
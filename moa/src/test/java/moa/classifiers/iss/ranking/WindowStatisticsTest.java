@@ -0,0 +1,57 @@
+package moa.classifiers.iss.ranking;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class WindowStatisticsTest {
+	private static double EPS = 1e-6;
+
+	@Test
+	public void testSlidingWindowMatchesScan() {
+		Random random = new Random(5);
+		int numClasses = 3;
+		WindowStatistics statistics = new WindowStatistics(2, numClasses);
+		List<double[]> window = new ArrayList<double[]>();
+		for (int i = 0; i < 20000; i++) {
+			if (window.size() > 300 || (window.size() > 0 && random.nextInt(3) == 0)) {
+				double[] old = window.remove(0);
+				statistics.remove(0, (int) old[1], old[0]);
+			} else {
+				// values far from 0 so cancellation would show
+				double[] inst = new double[] {1000 + random.nextGaussian() * 5, random.nextInt(numClasses)};
+				window.add(inst);
+				statistics.add(0, (int) inst[1], inst[0]);
+			}
+			double[] sum = new double[numClasses + 1];
+			int[] count = new int[numClasses + 1];
+			for (double[] inst : window) {
+				sum[(int) inst[1]] += inst[0];
+				count[(int) inst[1]]++;
+				sum[numClasses] += inst[0];
+				count[numClasses]++;
+			}
+			double[] m2 = new double[numClasses + 1];
+			for (double[] inst : window) {
+				double diff = inst[0] - sum[(int) inst[1]] / count[(int) inst[1]];
+				m2[(int) inst[1]] += diff * diff;
+				diff = inst[0] - sum[numClasses] / count[numClasses];
+				m2[numClasses] += diff * diff;
+			}
+			for (int c = 0; c < numClasses; c++) {
+				assertEquals(count[c], statistics.count(0, c));
+				if (count[c] > 0) {
+					assertEquals(sum[c] / count[c], statistics.mean(0, c), EPS);
+					assertEquals(m2[c] / count[c], statistics.variance(0, c), EPS);
+				}
+			}
+			if (count[numClasses] > 0) {
+				assertEquals(Math.sqrt(m2[numClasses] / count[numClasses]), RankingUtils.calculateSD(statistics, 0), EPS);
+			}
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package moa.classifiers.lazy;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Attribute;
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+import com.yahoo.labs.samoa.instances.SparseInstance;
+
+import moa.classifiers.lazy.neighboursearch.LinearNNSearch;
+
+public class kNNTest {
+	private static int NUM_NUMERIC = 4;
+
+	private static int NUM_CLASSES = 3;
+
+	private static int LIMIT = 40;
+
+	private static Instances header() {
+		List<Attribute> attributes = new ArrayList<Attribute>();
+		for (int a = 0; a < NUM_NUMERIC; a++)
+			attributes.add(new Attribute("num" + a));
+		attributes.add(new Attribute("nom", Arrays.asList("x", "y", "z")));
+		attributes.add(new Attribute("class", Arrays.asList("a", "b", "c")));
+		Instances header = new Instances("knn", attributes, 0);
+		header.setClassIndex(attributes.size() - 1);
+		return header;
+	}
+
+	/** few distinct values so ties with the k-th neighbour are common, mostly zeros and some missing values */
+	private static double[] randomValues(Random random, boolean sparse) {
+		double[] values = new double[NUM_NUMERIC + 2];
+		for (int a = 0; a < NUM_NUMERIC; a++) {
+			if (random.nextInt(20) == 0)
+				values[a] = Double.NaN;
+			else if (!sparse || random.nextInt(3) == 0)
+				values[a] = random.nextInt(4) - 1;
+		}
+		values[NUM_NUMERIC] = (!sparse || random.nextInt(3) == 0) ? random.nextInt(3) : 0;
+		values[NUM_NUMERIC + 1] = random.nextInt(NUM_CLASSES);
+		return values;
+	}
+
+	private static Instance sparseInstance(double[] values, Instances header) {
+		int numStored = 0;
+		for (int a = 0; a < values.length; a++) {
+			if (values[a] != 0)
+				numStored++;
+		}
+		double[] stored = new double[numStored];
+		int[] indices = new int[numStored];
+		int i = 0;
+		for (int a = 0; a < values.length; a++) {
+			if (values[a] != 0) {
+				stored[i] = values[a];
+				indices[i++] = a;
+			}
+		}
+		Instance inst = new SparseInstance(1.0, stored, indices, values.length);
+		inst.setDataset(header);
+		return inst;
+	}
+
+	/** the votes of the LinearNNSearch on an Instances window, as kNN computed them before the columnar window */
+	private static double[] referenceVotes(ArrayDeque<Instance> window, Instances header, Instance inst, int k,
+			int numVotes) throws Exception {
+		Instances instances = new Instances(header, window.size());
+		for (Instance stored : window)
+			instances.add(stored);
+		double[] votes = new double[numVotes];
+		Instances neighbours = new LinearNNSearch(instances).kNearestNeighbours(inst, Math.min(k, window.size()));
+		for (int i = 0; i < neighbours.numInstances(); i++)
+			votes[(int) neighbours.instance(i).classValue()]++;
+		return votes;
+	}
+
+	private static void assertSameVotesAsLinearNNSearch(boolean sparse) throws Exception {
+		Instances header = header();
+		Random random = new Random(sparse ? 13 : 12);
+		kNN learner = new kNN();
+		learner.limitOption.setValue(LIMIT);
+		learner.kOption.setValue(5);
+		learner.prepareForUse();
+		ArrayDeque<Instance> window = new ArrayDeque<Instance>();
+		for (int i = 0; i < 2000; i++) {
+			double[] values = randomValues(random, sparse);
+			Instance inst;
+			if (sparse) {
+				inst = sparseInstance(values, header);
+			} else {
+				inst = new DenseInstance(1.0, values);
+				inst.setDataset(header);
+			}
+			if (!window.isEmpty()) {
+				double[] votes = learner.getVotesForInstance(inst);
+				assertArrayEquals("instance " + i, referenceVotes(window, header, inst, 5, votes.length), votes, 0);
+			}
+			learner.trainOnInstance(inst);
+			if (window.size() == LIMIT)
+				window.removeFirst();
+			window.addLast(inst);
+		}
+	}
+
+	@Test
+	public void testDenseSameVotesAsLinearNNSearch() throws Exception {
+		assertSameVotesAsLinearNNSearch(false);
+	}
+
+	@Test
+	public void testSparseSameVotesAsLinearNNSearch() throws Exception {
+		assertSameVotesAsLinearNNSearch(true);
+	}
+}
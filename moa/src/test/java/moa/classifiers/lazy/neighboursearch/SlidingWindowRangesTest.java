@@ -0,0 +1,52 @@
+package moa.classifiers.lazy.neighboursearch;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+
+public class SlidingWindowRangesTest {
+
+	@Test
+	public void testRangesMatchScan() {
+		Random random = new Random(3);
+		int numAttributes = 4;
+		SlidingWindowRanges ranges = new SlidingWindowRanges(numAttributes);
+		ArrayDeque<Instance> window = new ArrayDeque<Instance>();
+		for (int i = 0; i < 20000; i++) {
+			if (window.size() > 0 && (window.size() >= 64 || random.nextInt(3) == 0)) {
+				window.removeFirst();
+				ranges.removeOldest();
+			} else {
+				double[] values = new double[numAttributes];
+				for (int j = 0; j < numAttributes; j++) {
+					// few distinct values so ties are common, and some missing values
+					values[j] = (random.nextInt(10) == 0) ? Double.NaN : random.nextInt(j * 5 + 2);
+				}
+				Instance inst = new DenseInstance(1.0, values);
+				window.addLast(inst);
+				ranges.add(inst);
+			}
+			assertEquals(window.size(), ranges.numInstances());
+			for (int j = 0; j < numAttributes; j++) {
+				double min = Double.POSITIVE_INFINITY;
+				double max = -Double.POSITIVE_INFINITY;
+				for (Instance inst : window) {
+					if (!Double.isNaN(inst.value(j))) {
+						min = Math.min(min, inst.value(j));
+						max = Math.max(max, inst.value(j));
+					}
+				}
+				double[] range = ranges.getRanges()[j];
+				assertEquals(min, range[NormalizableDistance.R_MIN], 0);
+				assertEquals(max, range[NormalizableDistance.R_MAX], 0);
+				assertEquals((min > max) ? Double.POSITIVE_INFINITY : max - min, range[NormalizableDistance.R_WIDTH], 0);
+			}
+		}
+	}
+}
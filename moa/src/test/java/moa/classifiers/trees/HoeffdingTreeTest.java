@@ -19,10 +19,15 @@
  */
 package moa.classifiers.trees;
 
+import java.util.Arrays;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import moa.classifiers.AbstractMultipleClassifierTestCase;
 import moa.classifiers.Classifier;
+import moa.streams.generators.RandomRBFGenerator;
 
 /**
  * Tests the HoeffdingTree classifier.
@@ -60,6 +65,31 @@ public class HoeffdingTreeTest
     return result;
   }
   
+  /**
+   * Tests that evaluating the splits in parallel grows the same tree.
+   */
+  public void testParallelSplitEvaluation() {
+    HoeffdingTree sequential = new HoeffdingTree();
+    HoeffdingTree parallel = new HoeffdingTree();
+    parallel.parallelSplitEvaluationOption.set();
+    RandomRBFGenerator stream = new RandomRBFGenerator();
+    stream.numAttsOption.setValue(30);
+    stream.prepareForUse();
+    sequential.setModelContext(stream.getHeader());
+    sequential.prepareForUse();
+    parallel.setModelContext(stream.getHeader());
+    parallel.prepareForUse();
+    for (int i = 0; i < 20000; i++) {
+      Instance inst = stream.nextInstance().getData();
+      assertTrue(Arrays.equals(sequential.getVotesForInstance(inst), parallel.getVotesForInstance(inst)));
+      sequential.trainOnInstance(inst);
+      parallel.trainOnInstance(inst);
+    }
+    assertTrue(sequential.decisionNodeCount > 0);
+    assertEquals(sequential.decisionNodeCount, parallel.decisionNodeCount);
+    assertEquals(sequential.activeLeafNodeCount, parallel.activeLeafNodeCount);
+  }
+
   /**
    * Returns a test suite.
    *
@@ -0,0 +1,59 @@
+package moa.streams;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import moa.tasks.WriteStreamToARFFFile;
+
+public class ArffFileStreamTest {
+
+	@Test
+	public void testReadsCompressedFile() throws Exception {
+		File file = File.createTempFile("stream", ".arff");
+		file.deleteOnExit();
+		WriteStreamToARFFFile task = new WriteStreamToARFFFile();
+		task.streamOption.setValueViaCLIString("generators.RandomTreeGenerator");
+		task.arffFileOption.setValue(file.getPath());
+		task.maxInstancesOption.setValue(100000);
+		task.prepareForUse();
+		task.doTask();
+		File compressed = new File(file.getPath() + ".gz");
+		compressed.deleteOnExit();
+		InputStream in = new FileInputStream(file);
+		OutputStream out = new GZIPOutputStream(new FileOutputStream(compressed));
+		byte[] buffer = new byte[4096];
+		int numRead;
+		while ((numRead = in.read(buffer)) >= 0) {
+			out.write(buffer, 0, numRead);
+		}
+		in.close();
+		out.close();
+
+		ArffFileStream plain = new ArffFileStream(file.getPath(), -1);
+		ArffFileStream stream = new ArffFileStream(compressed.getPath(), -1);
+		assertEquals(plain.getHeader().toString(), stream.getHeader().toString());
+		String first = stream.nextInstance().getData().toString();
+		assertEquals(plain.nextInstance().getData().toString(), first);
+		for (int i = 1; i < 100000; i++) {
+			assertEquals(plain.nextInstance().getData().toString(), stream.nextInstance().getData().toString());
+			if (i == 50000) {
+				// the progress is that of the compressed file
+				long remaining = stream.estimatedRemainingInstances();
+				assertTrue(remaining > 30000 && remaining < 70000);
+			}
+		}
+		assertFalse(stream.hasMoreInstances());
+		stream.restart();
+		assertEquals(first, stream.nextInstance().getData().toString());
+	}
+}
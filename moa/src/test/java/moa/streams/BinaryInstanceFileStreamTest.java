@@ -0,0 +1,47 @@
+package moa.streams;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.streams.generators.RandomTreeGenerator;
+import moa.tasks.WriteStreamToBinaryFile;
+
+public class BinaryInstanceFileStreamTest {
+
+	@Test
+	public void testReadsWrittenStream() throws Exception {
+		File file = File.createTempFile("stream", ".bin");
+		file.deleteOnExit();
+		WriteStreamToBinaryFile task = new WriteStreamToBinaryFile();
+		task.streamOption.setValueViaCLIString("generators.RandomTreeGenerator");
+		task.binaryFileOption.setValue(file.getPath());
+		task.maxInstancesOption.setValue(1000);
+		task.prepareForUse();
+		task.doTask();
+
+		RandomTreeGenerator generator = new RandomTreeGenerator();
+		generator.prepareForUse();
+		BinaryInstanceFileStream stream = new BinaryInstanceFileStream(file.getPath());
+		assertEquals(generator.getHeader().toString(), stream.getHeader().toString());
+		assertEquals(generator.getHeader().classIndex(), stream.getHeader().classIndex());
+		assertEquals(1000, stream.numInstances());
+		String[] written = new String[1000];
+		for (int i = 0; i < written.length; i++) {
+			written[i] = generator.nextInstance().getData().toString();
+			Instance inst = stream.nextInstance().getData();
+			assertEquals(written[i], inst.toString());
+		}
+		assertFalse(stream.hasMoreInstances());
+
+		stream.seek(500);
+		assertEquals(written[500], stream.nextInstance().getData().toString());
+		stream.restart();
+		assertEquals(written[0], stream.nextInstance().getData().toString());
+	}
+}